@@ -0,0 +1,107 @@
+package org.javacc.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.javacc.parser.Context;
+import org.javacc.parser.JavaCCParser;
+import org.javacc.parser.LexGen;
+import org.javacc.parser.Main;
+import org.javacc.parser.Options;
+import org.javacc.parser.Semanticize;
+import org.javacc.parser.TokenizerData;
+
+/**
+ * The bundled grammars the benchmarks run, each with the example sources it
+ * tokenizes. Paths are relative to the root of the repository, which is found
+ * from the "javacc.root" system property or else from the working directory.
+ */
+public enum Grammar {
+
+  JAVA("examples/JavaGrammars/1.5/Java1.5.jj", "examples/JavaGrammars", ".java"),
+  IDL("examples/CORBA-IDL/IDL.jj", "examples/CORBA-IDL", ".idl"),
+  SPL("examples/Interpreter/SPL.jjt", "examples/Interpreter", ".spl");
+
+  private final String grammarPath;
+  private final String corpusDir;
+  private final String corpusSuffix;
+
+  Grammar(String grammarPath, String corpusDir, String corpusSuffix) {
+    this.grammarPath = grammarPath;
+    this.corpusDir = corpusDir;
+    this.corpusSuffix = corpusSuffix;
+  }
+
+  /**
+   * Builds the tokenizer data the way the interpreter does, with the minimal
+   * DFAs of MINIMIZE_DFA if minimizeDfa. This resets the options, so set the
+   * interpreter options after calling it.
+   */
+  public TokenizerData load(boolean minimizeDfa) throws Exception {
+    String grammar = Grammar.read(new File(Grammar.root(), grammarPath));
+    if (grammarPath.endsWith(".jjt")) {
+      // The core has no JJTree code generator. The node annotations do not
+      // change the tokens, so drop them rather than the private labels.
+      grammar = grammar.replaceAll("(?<!<\\s{0,8})#[A-Za-z_]\\w*(\\s*\\([^()]*\\))?", "");
+    }
+    Context context = Main.reInitAll();
+    Options.set(Options.NONUSER_OPTION__INTERPRETER, true);
+    Options.set("STATIC", false);
+    new JavaCCParser(new StringReader(grammar)).javacc_input(context);
+    Options.set(Options.NONUSER_OPTION__INTERPRETER, true);
+    Options.set(Options.USEROPTION__MINIMIZE_DFA, minimizeDfa);
+    Semanticize.start(context);
+    TokenizerData tokenizerData = new LexGen(context).generateTokenizerData(true, false);
+    if (context.errors().get_error_count() != 0) {
+      throw new IllegalStateException("Detected " + context.errors().get_error_count() + " errors in " + grammarPath);
+    }
+    return tokenizerData;
+  }
+
+  /**
+   * The example sources of the grammar, in a fixed order.
+   */
+  public List<String> corpus() throws IOException {
+    List<File> files = new ArrayList<File>();
+    Grammar.collect(new File(Grammar.root(), corpusDir), corpusSuffix, files);
+    Collections.sort(files);
+    List<String> sources = new ArrayList<String>();
+    for (File file : files) {
+      sources.add(Grammar.read(file));
+    }
+    return sources;
+  }
+
+  private static void collect(File dir, String suffix, List<File> files) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        Grammar.collect(child, suffix, files);
+      } else if (child.getName().endsWith(suffix)) {
+        files.add(child);
+      }
+    }
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static File root() {
+    String root = System.getProperty("javacc.root");
+    if (root != null) {
+      return new File(root);
+    }
+    // Run from the root of the repository or from the benchmark module.
+    return new File("examples").isDirectory() ? new File(".") : new File("..");
+  }
+}
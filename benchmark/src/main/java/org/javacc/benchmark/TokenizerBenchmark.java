@@ -0,0 +1,159 @@
+package org.javacc.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.javacc.parser.Options;
+import org.javacc.parser.ParallelTokenizer;
+import org.javacc.parser.TokenSink;
+import org.javacc.parser.Tokenizer;
+import org.javacc.parser.TokenizerData;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizer throughput over a fixed corpus per grammar, and the latency of
+ * tokenizing a single source file. The throughput is reported as MB/s of UTF-8
+ * input and tokens/s next to the ops/s; run with "-prof gc" for the allocation
+ * rate.
+ *
+ * The engine is the lazily built DFA, the plain NFA simulation, the lazy DFA
+ * tokenizing in parallel chunks, the minimal DFAs of MINIMIZE_DFA, or those
+ * DFAs compiled to bytecode with INTERPRETER_COMPILE_DFA.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+  // Chars the sources are repeated up to for the throughput corpus.
+  private static final int CORPUS_SIZE = 4 << 20;
+
+  @Param({ "JAVA", "IDL", "SPL" })
+  public Grammar             grammar;
+
+  @Param({ "lazy-dfa", "nfa", "parallel", "minimal-dfa", "compiled" })
+  public String              engine;
+
+  private List<String>       sources;
+  private String             corpus;
+  private double             corpusMegabytes;
+
+  private Tokenizer          tokenizer;
+  private ParallelTokenizer  parallelTokenizer;
+  private ForkJoinPool       pool;
+
+  // Index of the next source for the latency benchmark.
+  private int                next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    boolean compiled = "compiled".equals(engine);
+    TokenizerData tokenizerData = grammar.load(compiled || "minimal-dfa".equals(engine));
+    Options.set(Options.USEROPTION__INTERPRETER_LAZY_DFA, !"nfa".equals(engine));
+    Options.set(Options.USEROPTION__INTERPRETER_COMPILE_DFA, compiled);
+    tokenizer = new Tokenizer(tokenizerData);
+    if ("parallel".equals(engine)) {
+      pool = new ForkJoinPool();
+      // Small enough chunks to keep every worker busy on the corpus.
+      parallelTokenizer = new ParallelTokenizer(tokenizerData, pool,
+          Math.max(CORPUS_SIZE / (4 * pool.getParallelism()), 1 << 16));
+    }
+
+    sources = grammar.corpus();
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < CORPUS_SIZE) {
+      for (String source : sources) {
+        sb.append(source).append('\n');
+      }
+    }
+    corpus = sb.toString();
+    corpusMegabytes = corpus.getBytes(StandardCharsets.UTF_8).length / 1e6;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Counts the input and the tokens, which JMH reports per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+
+    public double megabytes;
+    public long   tokens;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      megabytes = 0;
+      tokens = 0;
+    }
+  }
+
+  // Counts the matches. It goes on after errors, so all engines do the same
+  // work on inputs that do not tokenize cleanly.
+  private static final class CountingSink implements TokenSink {
+
+    long count;
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      count++;
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      count++;
+      return true;
+    }
+  }
+
+  private long tokenize(CharSequence input) {
+    CountingSink sink = new CountingSink();
+    if (parallelTokenizer != null) {
+      parallelTokenizer.tokenize(input, sink);
+    } else {
+      tokenizer.tokenize(input, sink);
+    }
+    return sink.count;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public long throughput(Counters counters) {
+    long count = tokenize(corpus);
+    counters.megabytes += corpusMegabytes;
+    counters.tokens += count;
+    return count;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long latency() {
+    String source = sources.get(next);
+    next = (next + 1) % sources.size();
+    return tokenize(source);
+  }
+}
@@ -1,24 +1,47 @@
 
+import org.javacc.parser.CharWindow;
 import org.javacc.parser.Context;
 import org.javacc.parser.JavaCCParser;
 import org.javacc.parser.LexGen;
+import org.javacc.parser.LineMap;
 import org.javacc.parser.Main;
 import org.javacc.parser.MetaParseException;
 import org.javacc.parser.Options;
+import org.javacc.parser.ParallelTokenizer;
+import org.javacc.parser.ParseException;
+import org.javacc.parser.ParseListener;
+import org.javacc.parser.ParserData;
+import org.javacc.parser.ParserInterpreter;
 import org.javacc.parser.Semanticize;
+import org.javacc.parser.TokenAssembler;
+import org.javacc.parser.TokenSink;
+import org.javacc.parser.Tokenizer;
 import org.javacc.parser.TokenizerData;
+import org.javacc.parser.TokenizerDataCache;
+import org.javacc.parser.TokenizerMetrics;
+import org.javacc.parser.TokenizerProfile;
+import org.javacc.parser.TokenizerInput;
+import org.javacc.parser.Utf8Input;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 public class JavaCCInterpreter {
 
@@ -36,8 +59,8 @@ public class JavaCCInterpreter {
       Options.setCmdLineOption(args[arg]);
     }
 
-    String input = "";
     String grammar = "";
+    File inputFile = null;
     try {
       File fp = new File(args[args.length - 2]);
       byte[] buf = new byte[(int) fp.length()];
@@ -46,12 +69,10 @@ public class JavaCCInterpreter {
         istream.readFully(buf);
       }
       grammar = new String(buf);
-      File inputFile = new File(args[args.length - 1]);
-      buf = new byte[(int) inputFile.length()];
-      try (DataInputStream istream = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFile)))) {
-        istream.readFully(buf);
+      inputFile = new File(args[args.length - 1]);
+      if (!inputFile.exists()) {
+        throw new FileNotFoundException(inputFile.getPath());
       }
-      input = new String(buf);
     } catch (FileNotFoundException e) {
       e.printStackTrace();
       System.exit(1);
@@ -60,21 +81,129 @@ public class JavaCCInterpreter {
       System.exit(1);
     }
     JavaCCInterpreter interp = new JavaCCInterpreter();
-    interp.runTokenizer(grammar, input, context);
+    if (Options.getInterpreterStartProduction().length() > 0) {
+      interp.runParser(grammar, new String(Files.readAllBytes(inputFile.toPath())), context);
+    } else if (Options.getInterpreterThreads() > 1) {
+      // The chunks are mapped from anywhere in the file as UTF-8.
+      try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+        interp.runTokenizer(grammar, channel, context);
+      }
+    } else if (Options.getInterpreterMmapUtf8()) {
+      try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+        interp.runTokenizer(grammar, new Utf8Input(channel), context);
+      }
+    } else {
+      // The input is streamed, so it does not need to fit in memory.
+      try (Reader input = new InputStreamReader(new FileInputStream(inputFile))) {
+        interp.runTokenizer(grammar, input, context);
+      }
+    }
+  }
+
+  public void runTokenizer(String grammar, final String input, Context context) {
+    if (Options.getInterpreterThreads() <= 1) {
+      runTokenizer(grammar, new CharWindow(input), context);
+      return;
+    }
+    runTokenizer(grammar, context, new Run() {
+      @Override
+      public boolean tokenize(TokenizerData tokenizerData) {
+        return JavaCCInterpreter.tokenizeInParallel(tokenizerData, input, Options.getInterpreterThreads());
+      }
+    });
+  }
+
+  // Tokenizes the UTF-8 file on INTERPRETER_THREADS threads.
+  public void runTokenizer(String grammar, final FileChannel input, Context context) {
+    runTokenizer(grammar, context, new Run() {
+      @Override
+      public boolean tokenize(TokenizerData tokenizerData) throws IOException {
+        return JavaCCInterpreter.tokenizeInParallel(tokenizerData, input, Options.getInterpreterThreads());
+      }
+    });
+  }
+
+  public void runTokenizer(String grammar, Reader input, Context context) {
+    runTokenizer(grammar, new CharWindow(input), context);
   }
 
-  public void runTokenizer(String grammar, String input, Context context) {
+  public void runTokenizer(String grammar, final TokenizerInput input, Context context) {
+    runTokenizer(grammar, context, new Run() {
+      @Override
+      public boolean tokenize(TokenizerData tokenizerData) throws IOException {
+        return JavaCCInterpreter.tokenize(tokenizerData, input);
+      }
+    });
+  }
+
+  // Parses the input with the start production and prints its structure.
+  public void runParser(String grammar, final String input, final Context context) {
+    runTokenizer(grammar, context, new Run() {
+      @Override
+      public boolean tokenize(TokenizerData tokenizerData) {
+        return JavaCCInterpreter.parse(Main.createParserData(context), tokenizerData,
+            Options.getInterpreterStartProduction(), input);
+      }
+    });
+  }
+
+  // Tokenizes the input with the tokenizer data of the grammar.
+  private interface Run {
+    boolean tokenize(TokenizerData tokenizerData) throws IOException;
+  }
+
+  private void runTokenizer(String grammar, Context context, Run run) {
     try {
       JavaCCParser parser = new JavaCCParser(new StringReader(grammar));
       parser.javacc_input(context);
       // Options.init();
       Options.set(Options.NONUSER_OPTION__INTERPRETER, true);
-      Semanticize.start(context);
-      LexGen lg = new LexGen(context);
-      TokenizerData tokenizerData = lg.generateTokenizerData(true, false);
+      // Only the tokenizer on a single thread records the metrics and the
+      // profile.
+      if (Options.getInterpreterMetrics().length() > 0) {
+        if (Options.getInterpreterStartProduction().length() > 0) {
+          System.err.println("Warning: INTERPRETER_METRICS is not recorded with INTERPRETER_START_PRODUCTION; ignored.");
+        } else if (Options.getInterpreterThreads() > 1) {
+          System.err.println("Warning: INTERPRETER_METRICS is not recorded with INTERPRETER_THREADS > 1; ignored.");
+        }
+      }
+      if (Options.getInterpreterProfile().length() > 0) {
+        if (Options.getInterpreterStartProduction().length() > 0) {
+          System.err.println("Warning: INTERPRETER_PROFILE is not recorded with INTERPRETER_START_PRODUCTION; ignored.");
+        } else if (Options.getInterpreterThreads() > 1) {
+          System.err.println("Warning: INTERPRETER_PROFILE is not recorded with INTERPRETER_THREADS > 1; ignored.");
+        }
+      }
+      TokenizerData tokenizerData = null;
+      TokenizerDataCache cache = null;
+      String digest = null;
+      if (Options.getInterpreterTokenizerCache().length() > 0) {
+        cache = new TokenizerDataCache(new File(Options.getInterpreterTokenizerCache()));
+        digest = TokenizerDataCache.digest(context);
+        tokenizerData = cache.get(digest);
+      }
+      // The parser interpreter needs the semantic analysis even if the
+      // tokenizer data is cached.
+      if ((tokenizerData == null) || (Options.getInterpreterStartProduction().length() > 0)) {
+        Semanticize.start(context);
+      }
+      if (tokenizerData == null) {
+        LexGen lg = new LexGen(context);
+        tokenizerData = lg.generateTokenizerData(true, false);
+        if ((cache != null) && (context.errors().get_error_count() == 0)) {
+          try {
+            cache.put(digest, tokenizerData);
+          } catch (IOException e) {
+            // The data is built, only later runs miss the cache.
+            System.err.println("Warning: Could not cache the tokenizer data: " + e);
+          }
+        }
+      }
       if (context.errors().get_error_count() == 0) {
         long l = System.currentTimeMillis();
-        JavaCCInterpreter.tokenize(tokenizerData, input);
+        if (!run.tokenize(tokenizerData)) {
+          System.exit(1);
+        }
         System.err.println("Tokenized in: " + (System.currentTimeMillis() - l));
       }
     } catch (MetaParseException e) {
@@ -90,163 +219,337 @@ public class JavaCCInterpreter {
     }
   }
 
-  static int                   line, col;
-  static boolean               prevCR;
-  static Map<Integer, Integer> lineBoundaries = new TreeMap<>();
-  static int                   maxpos         = -1;
+  // Prints the TOKEN, SPECIAL_TOKEN and SKIP matches with the MORE matches
+  // before them, and the lexical state switches.
+  private abstract static class PrintingSink implements TokenSink {
+
+    private final TokenizerData  tokenizerData;
+    private final TokenAssembler assembler;
+
+    // The kinds whose lexical action has been reported as not run.
+    private final Set<Integer>   warned = new HashSet<Integer>();
+
+    // Whether the last match was a MORE match, and the line and column of the
+    // first of the MORE matches before the next token.
+    private boolean              inMore;
+    private int                  moreLine, moreColumn;
+
+    // The number of errors gone on after with INTERPRETER_ERROR_RECOVERY.
+    private int                  errors;
+
+    PrintingSink(final TokenizerData tokenizerData) {
+      this.tokenizerData = tokenizerData;
+      this.assembler = new TokenAssembler(tokenizerData, new TokenSink() {
+        @Override
+        public void token(int kind, long start, long end, int lexState) {
+          TokenizerData.MatchType matchType = tokenizerData.allMatches.get(kind).matchType;
+          String label = tokenizerData.labels.get(kind);
+          if (label == null) {
+            label = "Token kind: " + kind;
+          }
+          System.out.println((matchType == TokenizerData.MatchType.SKIP ? "SKIPPING: "
+              : matchType == TokenizerData.MatchType.SPECIAL_TOKEN ? "Special token: " : "Token: ") + label
+              + "; image: \"" + getImage(start, end) + "\" at: " + getLine(start) + ":" + getColumn(start));
+        }
+
+        @Override
+        public boolean error(long start, long end, int lexState) {
+          System.err.println("Encountered token error at char: " + getImage(start, end));
+          if (Options.getInterpreterErrorRecovery()) {
+            errors++;
+            return true;
+          }
+          return false;
+        }
+      });
+    }
+
+    abstract CharSequence getImage(long start, long end);
 
-  static int getLine(int pos) {
-    for (int key : JavaCCInterpreter.lineBoundaries.keySet()) {
-      if (pos >= key) {
-        return JavaCCInterpreter.lineBoundaries.get(key);
+    abstract int getLine(long start);
+
+    abstract int getColumn(long start);
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      TokenizerData.MatchInfo matchInfo = tokenizerData.allMatches.get(kind);
+      if ((matchInfo.action != null) && (assembler.getAction(kind) == null) && warned.add(kind)) {
+        System.err.println("Actions not implemented (yet) in intererpreted mode");
+      }
+      if ((matchInfo.matchType == TokenizerData.MatchType.MORE) && !inMore) {
+        moreLine = getLine(start);
+        moreColumn = getColumn(start);
+      }
+      inMore = matchInfo.matchType == TokenizerData.MatchType.MORE;
+      assembler.token(kind, start, end, lexState);
+      if ((matchInfo.newLexState != -1) && (matchInfo.newLexState != lexState)) {
+        System.out.println("Switching to lexical state: " + tokenizerData.lexStateNames[matchInfo.newLexState]);
       }
     }
-    return -1;
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      inMore = false;
+      return assembler.error(start, end, lexState);
+    }
+
+    // Reports input that ends in MORE matches or had errors, returning false
+    // if it does.
+    boolean finish() {
+      if (inMore) {
+        System.err.println("Encountered EOF in a token starting at: " + moreLine + ":" + moreColumn);
+        return false;
+      }
+      if (errors > 0) {
+        System.err.println("Recovered from " + errors + " token errors");
+        return false;
+      }
+      return true;
+    }
   }
 
-  static void updateLineCol(int pos, char c) {
-    if (pos < JavaCCInterpreter.maxpos) {
-      return;
+  public static boolean tokenize(TokenizerData tokenizerData, String input) {
+    try {
+      return JavaCCInterpreter.tokenize(tokenizerData, new CharWindow(input));
+    } catch (IOException e) {
+      throw new Error(); // Should never come here
+    }
+  }
+
+  // Tokenizes the chars read from input, keeping only a window over the
+  // current token and its lookahead in memory.
+  public static boolean tokenize(TokenizerData tokenizerData, Reader input) throws IOException {
+    return JavaCCInterpreter.tokenize(tokenizerData, new CharWindow(input));
+  }
+
+  // Tokenizes the given input and prints the matches. Returns false if it
+  // stopped at a char that no token matches.
+  public static boolean tokenize(TokenizerData tokenizerData, TokenizerInput input) throws IOException {
+    final Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    System.out.println("*** Starting in lexical state: " + tokenizerData.lexStateNames[tokenizerData.defaultLexState]);
+    PrintingSink sink = new PrintingSink(tokenizerData) {
+      @Override
+      CharSequence getImage(long start, long end) {
+        return tokenizer.getImage(start, end);
+      }
+
+      // The matches passed on start at the image start.
+      @Override
+      int getLine(long start) {
+        return tokenizer.getImageLine();
+      }
+
+      @Override
+      int getColumn(long start) {
+        return tokenizer.getImageColumn();
+      }
+    };
+    if (Options.getInterpreterMetrics().length() > 0) {
+      tokenizer.setMetrics(new TokenizerMetrics(tokenizerData));
+    }
+    if (Options.getInterpreterProfile().length() > 0) {
+      tokenizer.setProfile(new TokenizerProfile(tokenizerData));
     }
-    JavaCCInterpreter.maxpos = pos;
-    if ((c == '\r') || ((c == '\n') && !JavaCCInterpreter.prevCR)) {
-      JavaCCInterpreter.line++;
-      JavaCCInterpreter.col = 0;
-      JavaCCInterpreter.prevCR = c == '\r';
-      JavaCCInterpreter.lineBoundaries.put(pos, JavaCCInterpreter.line);
+    boolean done = tokenizer.tokenize(input, sink) && sink.finish();
+    if (tokenizer.getMetrics() != null) {
+      JavaCCInterpreter.writeMetrics(tokenizer.getMetrics(), Options.getInterpreterMetrics());
+    }
+    if (tokenizer.getProfile() != null) {
+      JavaCCInterpreter.writeProfile(tokenizer.getProfile(), new File(Options.getInterpreterProfile()));
+    }
+    if (!done) {
+      return false;
+    }
+    System.err.println("Matched EOF");
+    return true;
+  }
+
+  // Writes the metrics as JSON to the file, or to standard error for "-".
+  private static void writeMetrics(TokenizerMetrics metrics, String file) throws IOException {
+    if (file.equals("-")) {
+      System.err.print(metrics.toJson());
     } else {
-      JavaCCInterpreter.col++;
-    }
-  }
-
-  public static void tokenize(TokenizerData tokenizerData, String input) {
-    // First match the string literals.
-    final int input_size = input.length();
-    int curPos = 0;
-    JavaCCInterpreter.line = 1;
-    JavaCCInterpreter.col = 0;
-    int curLexState = tokenizerData.defaultLexState;
-    Set<Integer> curStates = new HashSet<>();
-    Set<Integer> newStates = new HashSet<>();
-    int tokline, tokcol;
-    System.out.println("*** Starting in lexical state: " + tokenizerData.lexStateNames[curLexState]);
-    while (curPos < input_size) {
-      int beg = curPos;
-      int matchedPos = beg - 1;
-      int matchedKind = Integer.MAX_VALUE;
-      int nfaStartState = tokenizerData.initialStates.get(curLexState);
-
-      char c = input.charAt(curPos);
-      JavaCCInterpreter.updateLineCol(curPos, c);
-      if (Options.getIgnoreCase()) {
-        c = Character.toLowerCase(c);
-      }
-      int key = (curLexState << 16) | c;
-      final List<String> literals = tokenizerData.literalSequence.get(key);
-      tokline = JavaCCInterpreter.getLine(curPos);
-      tokcol = JavaCCInterpreter.col;
-
-      if (literals != null) {
-        // We need to go in order so that the longest match works.
-        for (int litIndex = 0; litIndex < literals.size(); litIndex++) {
-          String s = literals.get(litIndex);
-          int charIndex = 1;
-          // See which literal matches.
-          while ((charIndex < s.length()) && ((curPos + charIndex) < input_size)) {
-            c = input.charAt(curPos + charIndex);
-            JavaCCInterpreter.updateLineCol(curPos + charIndex, c);
-            if (Options.getIgnoreCase()) {
-              c = Character.toLowerCase(c);
-            }
-            if (c != s.charAt(charIndex)) {
-              break;
-            }
-            charIndex++;
-          }
-          if (charIndex == s.length()) {
-            // Found a string literal match.
-            matchedKind = tokenizerData.literalKinds.get(key).get(litIndex);
-            matchedPos = (curPos + charIndex) - 1;
-            nfaStartState = tokenizerData.kindToNfaStartState.get(matchedKind);
-            curPos += charIndex;
-            break;
-          }
+      Files.write(Paths.get(file), metrics.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  // Writes the profile to the file, adding the counts of the profile of the
+  // same grammar already there, if any, so runs over a corpus add up. The
+  // matches are printed, so a profile that can not be written is only
+  // warned about.
+  private static void writeProfile(TokenizerProfile profile, File file) {
+    if (file.exists()) {
+      try {
+        TokenizerProfile previous = TokenizerProfile.read(file);
+        if (profile.matches(previous)) {
+          profile.add(previous);
+        } else {
+          System.err.println("Warning: Overwriting " + file + ", a tokenizer profile of " + previous.getParserName()
+              + " that does not match " + profile.getParserName() + ".");
         }
+      } catch (IOException e) {
+        System.err.println("Warning: Overwriting " + file + ": " + e.getMessage());
       }
+    }
+    try {
+      profile.write(file);
+    } catch (IOException e) {
+      System.err.println("Warning: Could not write the tokenizer profile: " + e);
+    }
+  }
 
-      if (nfaStartState != -1) {
-        // We need to add the composite states first.
-        curStates.add(nfaStartState);
-        if (tokenizerData.nfa.get(nfaStartState).compositeStates != null) {
-          curStates.addAll(tokenizerData.nfa.get(nfaStartState).compositeStates);
+  // Tokenizes the input on the given number of threads and prints the matches.
+  public static boolean tokenizeInParallel(TokenizerData tokenizerData, final String input, int threads) {
+    final LineMap lineMap = LineMap.of(input);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ParallelTokenizer tokenizer = new ParallelTokenizer(tokenizerData, pool, ParallelTokenizer.DEFAULT_CHUNK_SIZE);
+      System.out.println("*** Starting in lexical state: " + tokenizerData.lexStateNames[tokenizerData.defaultLexState]);
+      PrintingSink sink = new PrintingSink(tokenizerData) {
+        @Override
+        CharSequence getImage(long start, long end) {
+          return input.subSequence((int) start, (int) end);
+        }
+
+        @Override
+        int getLine(long start) {
+          return lineMap.getLine(start);
         }
-        do {
-          int kind = Integer.MAX_VALUE;
-          c = input.charAt(curPos);
-          JavaCCInterpreter.updateLineCol(curPos, c);
-          if (Options.getIgnoreCase()) {
-            c = Character.toLowerCase(c);
-          }
 
-          for (int state : curStates) {
-            TokenizerData.NfaState nfaState = tokenizerData.nfa.get(state);
-            if (nfaState != null &&
-                nfaState.characters.contains(c)) {
-              if (kind > nfaState.kind) {
-                kind = nfaState.kind;
-              }
+        @Override
+        int getColumn(long start) {
+          return lineMap.getColumn(start);
+        }
+      };
+      if (!tokenizer.tokenize(input, sink) || !sink.finish()) {
+        return false;
+      }
+    } finally {
+      pool.shutdown();
+    }
+    System.err.println("Matched EOF");
+    return true;
+  }
 
-              newStates.addAll(nfaState.nextStates);
-            }
+  // Tokenizes the UTF-8 file on the given number of threads and prints the
+  // matches. Columns are in chars, as on a single thread.
+  public static boolean tokenizeInParallel(TokenizerData tokenizerData, final FileChannel input, int threads)
+      throws IOException {
+    final LineMap lineMap = new LineMap();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      ParallelTokenizer tokenizer = new ParallelTokenizer(tokenizerData, pool, ParallelTokenizer.DEFAULT_CHUNK_SIZE);
+      tokenizer.setLineMap(lineMap);
+      System.out.println("*** Starting in lexical state: " + tokenizerData.lexStateNames[tokenizerData.defaultLexState]);
+      PrintingSink sink = new PrintingSink(tokenizerData) {
+        @Override
+        CharSequence getImage(long start, long end) {
+          try {
+            return JavaCCInterpreter.readImage(input, start, end);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
           }
+        }
+
+        @Override
+        int getLine(long start) {
+          return lineMap.getLine(start);
+        }
+
+        // The column of the last match, counted on from there for the next
+        // match on the same line.
+        private long columnOffset = -1;
+        private int  column;
 
-          Set<Integer> tmp = newStates;
-          newStates = curStates;
-          curStates = tmp;
-          newStates.clear();
-          if (kind != Integer.MAX_VALUE) {
-            matchedKind = kind;
-            matchedPos = curPos;
+        @Override
+        int getColumn(long start) {
+          long lineStart = lineMap.getLineStart(lineMap.getLine(start));
+          if ((columnOffset < lineStart) || (columnOffset > start)) {
+            columnOffset = lineStart;
+            column = 1;
           }
-        } while (!curStates.isEmpty() && (++curPos < input_size));
+          try {
+            column += JavaCCInterpreter.countChars(input, columnOffset, start);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          columnOffset = start;
+          return column;
+        }
+      };
+      if (!tokenizer.tokenize(input, sink) || !sink.finish()) {
+        return false;
       }
+    } finally {
+      pool.shutdown();
+    }
+    System.err.println("Matched EOF");
+    return true;
+  }
+
+  // Decodes the UTF-8 bytes [start, end) of the file.
+  private static CharSequence readImage(FileChannel channel, long start, long end) throws IOException {
+    return StandardCharsets.UTF_8.decode(JavaCCInterpreter.readBytes(channel, start, end));
+  }
+
+  // Counts the chars of the UTF-8 bytes [start, end) of the file the way the
+  // tokenizer steps over them.
+  private static int countChars(FileChannel channel, long start, long end) throws IOException {
+    Utf8Input chars = new Utf8Input(JavaCCInterpreter.readBytes(channel, start, end));
+    int count = 0;
+    for (int pos = 0; pos < chars.limit(); pos = chars.next(pos)) {
+      count++;
+    }
+    return count;
+  }
 
-      if ((matchedPos == beg) && (matchedKind > tokenizerData.wildcardKind.get(curLexState))) {
-        matchedKind = tokenizerData.wildcardKind.get(curLexState);
+  private static ByteBuffer readBytes(FileChannel channel, long start, long end) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, start + bytes.position()) < 0) {
+        break;
       }
-      if (matchedKind != Integer.MAX_VALUE) {
-        TokenizerData.MatchInfo matchInfo = tokenizerData.allMatches.get(matchedKind);
-        if (matchInfo.action != null) {
-          System.err.println("Actions not implemented (yet) in intererpreted mode");
-        }
-        if (matchInfo.matchType == TokenizerData.MatchType.SKIP) {
-          String label = tokenizerData.labels.get(matchedKind);
-          if (label == null) {
-            label = "Token kind: " + matchedKind;
-          }
-          System.out.println("SKIPPING: " + label + "; image: \"" + input.substring(beg, matchedPos + 1) + "\" at: "
-              + tokline + ":" + tokcol);
+    }
+    bytes.flip();
+    return bytes;
+  }
+
+  // Parses the input and prints the productions and tokens, indented by
+  // depth. Returns false if the input does not parse.
+  public static boolean parse(ParserData parserData, final TokenizerData tokenizerData, String production,
+      final String input) {
+    final LineMap lineMap = LineMap.of(input);
+    try {
+      new ParserInterpreter(parserData, tokenizerData).parse(production, input, new ParseListener() {
+
+        private String indent = "";
+
+        @Override
+        public void enterProduction(String name) {
+          System.out.println(indent + "Production: " + name);
+          indent += "  ";
         }
-        if (matchInfo.matchType == TokenizerData.MatchType.TOKEN) {
-          String label = tokenizerData.labels.get(matchedKind);
+
+        @Override
+        public void token(int kind, long start, long end) {
+          String label = tokenizerData.labels.get(kind);
           if (label == null) {
-            label = "Token kind: " + matchedKind;
+            label = "Token kind: " + kind;
           }
-          System.out.println("Token: " + label + "; image: \"" + input.substring(beg, matchedPos + 1) + "\" at: "
-              + tokline + ":" + tokcol);
+          System.out.println(indent + "Token: " + label + "; image: \"" + input.subSequence((int) start, (int) end)
+              + "\" at: " + lineMap.getLine(start) + ":" + lineMap.getColumn(start));
         }
-        if (matchInfo.newLexState != -1) {
-          if (curLexState != matchInfo.newLexState) {
-            System.out.println("Switching to lexical state: " + tokenizerData.lexStateNames[matchInfo.newLexState]);
-          }
-          curLexState = matchInfo.newLexState;
+
+        @Override
+        public void exitProduction(String name) {
+          indent = indent.substring(2);
         }
-        curPos = matchedPos + 1;
-      } else if (curPos < input_size) {
-        System.err.println("Encountered token error at char: " + input.charAt(curPos));
-        System.exit(1);
-      }
+      });
+    } catch (IllegalArgumentException | ParseException e) {
+      System.err.println(e.getMessage());
+      return false;
     }
-    System.err.println("Matched EOF");
+    System.err.println("Parsed " + production);
+    return true;
   }
 }
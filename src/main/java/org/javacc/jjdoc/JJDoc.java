@@ -31,6 +31,7 @@ import org.javacc.parser.Action;
 import org.javacc.parser.BNFProduction;
 import org.javacc.parser.CharacterRange;
 import org.javacc.parser.Choice;
+import org.javacc.parser.CodePointRange;
 import org.javacc.parser.CppCodeProduction;
 import org.javacc.parser.Expansion;
 import org.javacc.parser.JavaCCGlobals;
@@ -339,6 +340,14 @@ public class JJDoc extends JJDocGlobals {
           s[0] = ((CharacterRange) o).getRight();
           returnString += JavaCCGlobals.add_escapes(new String(s));
           returnString += "\"";
+        } else if (o instanceof CodePointRange) {
+          returnString += "\"";
+          returnString += JavaCCGlobals.add_escapes(new String(Character.toChars(((CodePointRange) o).getLeft())));
+          if (((CodePointRange) o).getRight() != ((CodePointRange) o).getLeft()) {
+            returnString += "\"-\"";
+            returnString += JavaCCGlobals.add_escapes(new String(Character.toChars(((CodePointRange) o).getRight())));
+          }
+          returnString += "\"";
         } else {
           JJDocGlobals.error(context, "Oops: unknown character list element type.");
         }
@@ -0,0 +1,114 @@
+package org.javacc.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Tokenizes many documents concurrently on an executor, such as a fork-join
+ * pool or one that starts a virtual thread per task. All tasks share one
+ * frozen snapshot of the tokenizer data. The scanning state is in the
+ * tokenizers, which are kept in a pool and taken by a task while it runs, so
+ * there are never more of them than tasks running at once and their lazily
+ * built DFAs stay warm across documents.
+ *
+ * The matches of each document are collected in a {@link TokenBuffer}, with
+ * errors as matches of kind {@link TokenBuffer#ERROR} and the document as its
+ * input. The methods can be called from any thread.
+ */
+public final class BatchTokenizer {
+
+  private final TokenizerSnapshot      snapshot;
+  private final ExecutorService        executor;
+
+  // The tokenizer options, read once so the tokenizers can be created on the
+  // executor's threads.
+  private final boolean                lazyDfa;
+  private final long                   dfaCacheBytes;
+  private final boolean                compileDfa;
+
+  // The tokenizers not in use by a task.
+  private final Queue<Tokenizer>       idle = new ConcurrentLinkedQueue<Tokenizer>();
+
+  public BatchTokenizer(TokenizerData tokenizerData, ExecutorService executor) {
+    this(tokenizerData.freeze(), executor);
+  }
+
+  public BatchTokenizer(TokenizerSnapshot snapshot, ExecutorService executor) {
+    this.snapshot = snapshot;
+    this.executor = executor;
+    this.lazyDfa = Options.getInterpreterLazyDfa();
+    this.dfaCacheBytes = Options.getInterpreterDfaCacheSize() * 1024L;
+    this.compileDfa = Options.getInterpreterCompileDfa();
+  }
+
+  public TokenizerSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Submits a document to be tokenized.
+   */
+  public Future<TokenBuffer> submit(final CharSequence document) {
+    return executor.submit(new Callable<TokenBuffer>() {
+      @Override
+      public TokenBuffer call() {
+        return tokenize(document);
+      }
+    });
+  }
+
+  /**
+   * Submits the documents to be tokenized, returning the futures in the same
+   * order.
+   */
+  public List<Future<TokenBuffer>> submitAll(List<? extends CharSequence> documents) {
+    List<Future<TokenBuffer>> futures = new ArrayList<Future<TokenBuffer>>(documents.size());
+    for (CharSequence document : documents) {
+      futures.add(submit(document));
+    }
+    return futures;
+  }
+
+  /**
+   * Tokenizes the documents concurrently and waits for all of them.
+   */
+  public List<TokenBuffer> tokenizeAll(List<? extends CharSequence> documents)
+      throws InterruptedException, ExecutionException {
+    List<Future<TokenBuffer>> futures = submitAll(documents);
+    List<TokenBuffer> results = new ArrayList<TokenBuffer>(futures.size());
+    try {
+      for (Future<TokenBuffer> future : futures) {
+        results.add(future.get());
+      }
+    } finally {
+      for (Future<TokenBuffer> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Tokenizes a document in the calling thread.
+   */
+  public TokenBuffer tokenize(CharSequence document) {
+    Tokenizer tokenizer = idle.poll();
+    if (tokenizer == null) {
+      tokenizer = new Tokenizer(snapshot, lazyDfa, dfaCacheBytes, compileDfa);
+    }
+    try {
+      TokenBuffer matches = new TokenBuffer(snapshot);
+      matches.setInput(document);
+      tokenizer.tokenize(document, matches);
+      return matches;
+    } finally {
+      idle.add(tokenizer);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package org.javacc.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// A window over the chars of a tokenizer input. Either the whole input is
+// known up front (a String or other CharSequence) or the chars are pulled
+// from a Reader into a buffer that slides forward as tokens are consumed, so
+// only the chars of the current token and its lookahead are kept in memory.
+//
+// Positions are char indices.
+public final class CharWindow extends TokenizerInput {
+
+  // Default size of the buffer used for a Reader.
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  private final CharSequence chars;
+  private final int          offset;
+  private final Reader       reader;
+  private char[]             buf;
+  private int                limit;
+  private long               base;
+  private boolean            eof;
+
+  public CharWindow(CharSequence chars) {
+    this(chars, 0);
+  }
+
+  // The chars from start on, with absolute offsets from the start of chars.
+  public CharWindow(CharSequence chars, int start) {
+    this.chars = chars;
+    this.offset = start;
+    this.reader = null;
+    this.limit = chars.length() - start;
+    this.base = start;
+    this.eof = true;
+  }
+
+  public CharWindow(Reader reader) {
+    this(reader, CharWindow.DEFAULT_BUFFER_SIZE);
+  }
+
+  public CharWindow(Reader reader, int bufferSize) {
+    this.chars = null;
+    this.offset = 0;
+    this.reader = reader;
+    this.buf = new char[Math.max(bufferSize, 16)];
+  }
+
+  @Override
+  public long getBase() {
+    return base;
+  }
+
+  @Override
+  public boolean isEof() {
+    return eof;
+  }
+
+  @Override
+  public boolean fill(int keepFrom) throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (keepFrom > 0) {
+      System.arraycopy(buf, keepFrom, buf, 0, limit - keepFrom);
+      limit -= keepFrom;
+      base += keepFrom;
+    }
+    if (limit == buf.length) {
+      // A single token fills the whole buffer, so make room for more.
+      char[] tmp = new char[2 * buf.length];
+      System.arraycopy(buf, 0, tmp, 0, limit);
+      buf = tmp;
+    }
+    int read;
+    do {
+      read = reader.read(buf, limit, buf.length - limit);
+    } while (read == 0);
+    if (read < 0) {
+      eof = true;
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  @Override
+  public int limit() {
+    return limit;
+  }
+
+  @Override
+  public char charAt(int pos) {
+    return (chars != null) ? chars.charAt(offset + pos) : buf[pos];
+  }
+
+  @Override
+  public int next(int pos) {
+    return pos + 1;
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return (chars != null) ? chars.subSequence(offset + start, offset + end) : new String(buf, start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    return subSequence(0, limit).toString();
+  }
+}
@@ -0,0 +1,36 @@
+package org.javacc.parser;
+
+/**
+ * Describes a character list entry with a code point outside the BMP, a
+ * single one or a range. Entries within the BMP are SingleCharacter or
+ * CharacterRange.
+ */
+public class CodePointRange extends Expansion {
+
+  // The left/right most code points in this range.
+  private int left;
+  private int right;
+
+  CodePointRange() {}
+
+  CodePointRange(int l, int r) {
+    setLeft(l);
+    setRight(r);
+  }
+
+  public final int getLeft() {
+    return left;
+  }
+
+  public final int getRight() {
+    return right;
+  }
+
+  public final void setLeft(int left) {
+    this.left = left;
+  }
+
+  public final void setRight(int right) {
+    this.right = right;
+  }
+}
@@ -0,0 +1,197 @@
+package org.javacc.parser;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of code points in 0..0x10FFFF, stored as a sorted table of
+ * disjoint, non adjacent intervals: the start and the end of each interval,
+ * inclusive, one after the other. A set of ranges takes space in the number
+ * of its intervals rather than of its code points, so character lists over
+ * whole planes stay small.
+ *
+ * The lexer tables are built over UTF-16 chars, so a set is matched as its
+ * part in the BMP plus the {@link #getSurrogatePairs surrogate pairs} of its
+ * other code points.
+ */
+public final class CodePointSet {
+
+  public static final CodePointSet EMPTY = new CodePointSet(new int[0]);
+  public static final CodePointSet ALL   = new CodePointSet(new int[] { 0, Character.MAX_CODE_POINT });
+
+  private final int[] ranges;
+
+  private CodePointSet(int[] ranges) {
+    this.ranges = ranges;
+  }
+
+  /**
+   * The set of the ranges given as pairs of a start and an end, inclusive,
+   * in any order and possibly overlapping.
+   *
+   * @throws IllegalArgumentException if a range is empty or out of
+   *         0..0x10FFFF
+   */
+  public static CodePointSet of(int... ranges) {
+    if ((ranges.length % 2) != 0) {
+      throw new IllegalArgumentException("Odd number of range ends: " + ranges.length);
+    }
+    long[] sorted = new long[ranges.length / 2];
+    for (int i = 0; i < sorted.length; i++) {
+      int start = ranges[2 * i];
+      int end = ranges[(2 * i) + 1];
+      if ((start < 0) || (start > end) || (end > Character.MAX_CODE_POINT)) {
+        throw new IllegalArgumentException("Invalid code point range " + start + "-" + end);
+      }
+      sorted[i] = ((long) start << 32) | end;
+    }
+    Arrays.sort(sorted);
+    int[] merged = new int[ranges.length];
+    int length = 0;
+    for (long range : sorted) {
+      int start = (int) (range >>> 32);
+      int end = (int) range;
+      if ((length > 0) && (start <= (merged[length - 1] + 1))) {
+        merged[length - 1] = Math.max(merged[length - 1], end);
+      } else {
+        merged[length++] = start;
+        merged[length++] = end;
+      }
+    }
+    return new CodePointSet(Arrays.copyOf(merged, length));
+  }
+
+  public int getRangeCount() {
+    return ranges.length / 2;
+  }
+
+  public int getStart(int range) {
+    return ranges[2 * range];
+  }
+
+  public int getEnd(int range) {
+    return ranges[(2 * range) + 1];
+  }
+
+  public boolean isEmpty() {
+    return ranges.length == 0;
+  }
+
+  public boolean contains(int codePoint) {
+    int low = 0;
+    int high = getRangeCount() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (getEnd(mid) < codePoint) {
+        low = mid + 1;
+      } else if (getStart(mid) > codePoint) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public CodePointSet union(CodePointSet other) {
+    int[] both = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+    System.arraycopy(other.ranges, 0, both, ranges.length, other.ranges.length);
+    return CodePointSet.of(both);
+  }
+
+  // The code points in 0..0x10FFFF not in this set.
+  public CodePointSet complement() {
+    int[] complement = new int[ranges.length + 2];
+    int length = 0;
+    int next = 0;
+    for (int i = 0; i < ranges.length; i += 2) {
+      if (ranges[i] > next) {
+        complement[length++] = next;
+        complement[length++] = ranges[i] - 1;
+      }
+      next = ranges[i + 1] + 1;
+    }
+    if (next <= Character.MAX_CODE_POINT) {
+      complement[length++] = next;
+      complement[length++] = Character.MAX_CODE_POINT;
+    }
+    return new CodePointSet(Arrays.copyOf(complement, length));
+  }
+
+  // The code points of this set in [start, end].
+  public CodePointSet intersect(int start, int end) {
+    int[] clipped = new int[ranges.length];
+    int length = 0;
+    for (int i = 0; i < ranges.length; i += 2) {
+      if ((ranges[i] <= end) && (ranges[i + 1] >= start)) {
+        clipped[length++] = Math.max(ranges[i], start);
+        clipped[length++] = Math.min(ranges[i + 1], end);
+      }
+    }
+    return new CodePointSet(Arrays.copyOf(clipped, length));
+  }
+
+  /**
+   * The code points of this set outside the BMP as UTF-16 surrogate pairs:
+   * groups of four chars, the first and last high surrogate and the first and
+   * last low surrogate, each group matching the pairs of a high surrogate in
+   * the first range followed by a low surrogate in the second one.
+   */
+  public char[] getSurrogatePairs() {
+    StringBuilder pairs = new StringBuilder();
+    CodePointSet supplementary = intersect(Character.MIN_SUPPLEMENTARY_CODE_POINT, Character.MAX_CODE_POINT);
+    for (int i = 0; i < supplementary.ranges.length; i += 2) {
+      int start = supplementary.ranges[i];
+      int end = supplementary.ranges[i + 1];
+      char startHigh = Character.highSurrogate(start);
+      char startLow = Character.lowSurrogate(start);
+      char endHigh = Character.highSurrogate(end);
+      char endLow = Character.lowSurrogate(end);
+      if (startHigh == endHigh) {
+        pairs.append(startHigh).append(startHigh).append(startLow).append(endLow);
+        continue;
+      }
+      // A partial block of low surrogates at each end, full blocks between.
+      if (startLow != Character.MIN_LOW_SURROGATE) {
+        pairs.append(startHigh).append(startHigh).append(startLow).append(Character.MAX_LOW_SURROGATE);
+        startHigh++;
+      }
+      if (endLow != Character.MAX_LOW_SURROGATE) {
+        endHigh--;
+      }
+      if (startHigh <= endHigh) {
+        pairs.append(startHigh).append(endHigh).append(Character.MIN_LOW_SURROGATE)
+            .append(Character.MAX_LOW_SURROGATE);
+      }
+      if (endLow != Character.MAX_LOW_SURROGATE) {
+        endHigh++;
+        pairs.append(endHigh).append(endHigh).append(Character.MIN_LOW_SURROGATE).append(endLow);
+      }
+    }
+    return pairs.toString().toCharArray();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return (o instanceof CodePointSet) && Arrays.equals(ranges, ((CodePointSet) o).ranges);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(ranges);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < ranges.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(Integer.toHexString(ranges[i]));
+      if (ranges[i + 1] != ranges[i]) {
+        sb.append('-').append(Integer.toHexString(ranges[i + 1]));
+      }
+    }
+    return sb.append(']').toString();
+  }
+}
@@ -0,0 +1,109 @@
+package org.javacc.parser;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A {@link MinimalDfa} compiled to JVM bytecode at runtime, so the JIT turns
+ * it into a lexer specialized to the grammar without generating source or
+ * running javac. The generated run method dispatches on the state with a
+ * switch and decides the moves on ASCII chars with inlined range checks;
+ * other chars go through the char classes and the tables of the DFA. The
+ * results are the same as those of {@link DfaMatcher}.
+ *
+ * The class is defined as a hidden class where the JVM supports them, and in
+ * a class loader of its own otherwise, so it can be unloaded with the DFA. An
+ * instance keeps the result of the last match, so it must not be used by
+ * more than one thread at a time; {@link #compile} makes a new one for each
+ * call, but defines the class only once per DFA.
+ */
+public abstract class CompiledDfa {
+
+  // The constructors of the classes compiled so far, by DFA.
+  private static final Map<MinimalDfa, Constructor<?>> compiled =
+      Collections.synchronizedMap(new WeakHashMap<MinimalDfa, Constructor<?>>());
+
+  private final TokenizerTables tables;
+  private final MinimalDfa      dfa;
+  private final int             lexState;
+
+  // Result of the last match, set by the generated code.
+  protected int                 matchedKind = Integer.MAX_VALUE;
+  protected int                 matchedEnd  = -1;
+  protected int                 scannedEnd  = -1;
+
+  protected CompiledDfa(TokenizerTables tables, MinimalDfa dfa) {
+    this.tables = tables;
+    this.dfa = dfa;
+    this.lexState = dfa.getLexState();
+  }
+
+  /**
+   * A matcher running the DFA of the tables compiled to bytecode, null if its
+   * run method would be too large for the JIT to compile.
+   */
+  public static CompiledDfa compile(TokenizerTables tables, MinimalDfa dfa) {
+    Constructor<?> constructor = compiled.get(dfa);
+    if (constructor == null) {
+      byte[] classFile = DfaCompiler.generate(tables, dfa);
+      if (classFile == null) {
+        return null;
+      }
+      try {
+        constructor = DfaCompiler.define(classFile).getConstructor(TokenizerTables.class, MinimalDfa.class);
+      } catch (NoSuchMethodException e) {
+        throw new IllegalStateException(e);
+      }
+      compiled.put(dfa, constructor);
+    }
+    try {
+      return (CompiledDfa) constructor.newInstance(tables, dfa);
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public MinimalDfa getDfa() {
+    return dfa;
+  }
+
+  // Matches the longest prefix of the input in [pos, limit) accepted by the
+  // DFA started in the state of nfaStartState.
+  public final void match(TokenizerInput input, int pos, int limit, int nfaStartState) {
+    run(input, pos, limit, dfa.getStartState(nfaStartState));
+  }
+
+  // The generated matching loop, from the DFA state.
+  protected abstract void run(TokenizerInput input, int pos, int limit, int state);
+
+  // The char class of a char the generated code has no range checks for.
+  protected final int classOf(char c) {
+    return tables.getCharClass(lexState, c);
+  }
+
+  protected final int kindOf(int state, int charClass) {
+    return dfa.getKind(state, charClass);
+  }
+
+  protected final int nextOf(int state, int charClass) {
+    return dfa.getNext(state, charClass);
+  }
+
+  // Kind of the last match, Integer.MAX_VALUE if nothing matched.
+  public final int getMatchedKind() {
+    return matchedKind;
+  }
+
+  // Position after the last char of the last match, -1 if nothing matched.
+  public final int getMatchedEnd() {
+    return matchedEnd;
+  }
+
+  // Position after the last char read by the last match.
+  public final int getScannedEnd() {
+    return scannedEnd;
+  }
+}
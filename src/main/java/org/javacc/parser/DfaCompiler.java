@@ -0,0 +1,552 @@
+package org.javacc.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Generates and defines the classes of CompiledDfa. The class files are of
+// version 49, which the JVM verifies by type inference instead of with stack
+// map frames, so the code is written in one pass with the branches patched
+// at the end.
+final class DfaCompiler {
+
+  // HotSpot does not JIT compile methods with more bytecode than this.
+  static final int            MAX_CODE_SIZE = 8000;
+
+  private static final String NAME          = "org/javacc/parser/GeneratedDfa";
+  private static final String SUPER         = "org/javacc/parser/CompiledDfa";
+  private static final String INPUT         = "org/javacc/parser/TokenizerInput";
+  private static final String CONSTRUCTOR   = "(Lorg/javacc/parser/TokenizerTables;Lorg/javacc/parser/MinimalDfa;)V";
+  private static final String RUN           = "(Lorg/javacc/parser/TokenizerInput;III)V";
+
+  // The locals of run.
+  private static final int    POS           = 2;
+  private static final int    LIMIT         = 3;
+  private static final int    STATE         = 4;
+  private static final int    KIND          = 5;
+  private static final int    END           = 6;
+  private static final int    CHAR          = 7;
+  private static final int    CLASS         = 8;
+  private static final int    MOVE_KIND     = 9;
+
+  // The opcodes used.
+  private static final int    ICONST_0      = 0x03;
+  private static final int    BIPUSH        = 0x10;
+  private static final int    SIPUSH        = 0x11;
+  private static final int    LDC           = 0x12;
+  private static final int    LDC_W         = 0x13;
+  private static final int    ILOAD         = 0x15;
+  private static final int    ALOAD_0       = 0x2a;
+  private static final int    ALOAD_1       = 0x2b;
+  private static final int    ALOAD_2       = 0x2c;
+  private static final int    ISTORE        = 0x36;
+  private static final int    IFLT          = 0x9b;
+  private static final int    IF_ICMPEQ     = 0x9f;
+  private static final int    IF_ICMPLT     = 0xa1;
+  private static final int    IF_ICMPGE     = 0xa2;
+  private static final int    GOTO          = 0xa7;
+  private static final int    TABLESWITCH   = 0xaa;
+  private static final int    RETURN        = 0xb1;
+  private static final int    PUTFIELD      = 0xb5;
+  private static final int    INVOKEVIRTUAL = 0xb6;
+  private static final int    INVOKESPECIAL = 0xb7;
+
+  private DfaCompiler() {}
+
+  /**
+   * The class file of a CompiledDfa running the DFA, null if its run method
+   * would be larger than MAX_CODE_SIZE.
+   */
+  static byte[] generate(TokenizerTables tables, MinimalDfa dfa) {
+    ConstantPool pool = new ConstantPool();
+    int thisClass = pool.classInfo(DfaCompiler.NAME);
+    int superClass = pool.classInfo(DfaCompiler.SUPER);
+
+    Code init = new Code(pool);
+    init.op(DfaCompiler.ALOAD_0);
+    init.op(DfaCompiler.ALOAD_1);
+    init.op(DfaCompiler.ALOAD_2);
+    init.op(DfaCompiler.INVOKESPECIAL);
+    init.u2(pool.methodRef(DfaCompiler.SUPER, "<init>", DfaCompiler.CONSTRUCTOR));
+    init.op(DfaCompiler.RETURN);
+
+    Code run = DfaCompiler.run(tables, dfa, pool);
+    if (run.size() > DfaCompiler.MAX_CODE_SIZE) {
+      return null;
+    }
+
+    int code = pool.utf8("Code");
+    int[] initNames = { pool.utf8("<init>"), pool.utf8(DfaCompiler.CONSTRUCTOR) };
+    int[] runNames = { pool.utf8("run"), pool.utf8(DfaCompiler.RUN) };
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(49);
+      pool.write(out);
+      // public final super
+      out.writeShort(0x0031);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      // No interfaces or fields.
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(2);
+      DfaCompiler.writeMethod(out, initNames, code, init, 3, 3);
+      DfaCompiler.writeMethod(out, runNames, code, run, 3, 10);
+      // No attributes.
+      out.writeShort(0);
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void writeMethod(DataOutputStream out, int[] names, int code, Code body, int maxStack,
+      int maxLocals) throws IOException {
+    byte[] bytes = body.toByteArray();
+    // public
+    out.writeShort(0x0001);
+    out.writeShort(names[0]);
+    out.writeShort(names[1]);
+    out.writeShort(1);
+    out.writeShort(code);
+    out.writeInt(12 + bytes.length);
+    out.writeShort(maxStack);
+    out.writeShort(maxLocals);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    // No exception table or attributes.
+    out.writeShort(0);
+    out.writeShort(0);
+  }
+
+  // The code of run, as the Java of DfaMatcher.match with a case per state:
+  //
+  //   kind = MAX_VALUE; end = -1;
+  //   while (state >= 0 && pos < limit) {
+  //     c = input.charAt(pos); pos = input.next(pos);
+  //     if (c < 128) switch (state) { case s: range checks on c setting
+  //       kind, end and state; continue; }
+  //     cls = classOf(c); ... kindOf(state, cls) ... state = nextOf(state, cls);
+  //   }
+  //   matchedKind = kind; matchedEnd = end; scannedEnd = pos;
+  //
+  // The moves are shared by all states, so a state only holds the range
+  // checks.
+  private static Code run(TokenizerTables tables, MinimalDfa dfa, ConstantPool pool) {
+    Code c = new Code(pool);
+    Code.Label loop = c.label();
+    Code.Label slow = c.label();
+    Code.Label done = c.label();
+
+    c.push(Integer.MAX_VALUE);
+    c.local(DfaCompiler.ISTORE, DfaCompiler.KIND);
+    c.push(-1);
+    c.local(DfaCompiler.ISTORE, DfaCompiler.END);
+
+    c.place(loop);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.STATE);
+    c.jump(DfaCompiler.IFLT, done);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.POS);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.LIMIT);
+    c.jump(DfaCompiler.IF_ICMPGE, done);
+    c.op(DfaCompiler.ALOAD_1);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.POS);
+    c.op(DfaCompiler.INVOKEVIRTUAL);
+    c.u2(pool.methodRef(DfaCompiler.INPUT, "charAt", "(I)C"));
+    c.local(DfaCompiler.ISTORE, DfaCompiler.CHAR);
+    c.op(DfaCompiler.ALOAD_1);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.POS);
+    c.op(DfaCompiler.INVOKEVIRTUAL);
+    c.u2(pool.methodRef(DfaCompiler.INPUT, "next", "(I)I"));
+    c.local(DfaCompiler.ISTORE, DfaCompiler.POS);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.CHAR);
+    c.push(128);
+    c.jump(DfaCompiler.IF_ICMPGE, slow);
+
+    int stateCount = dfa.getStateCount();
+    Code.Label[] states = new Code.Label[stateCount];
+    for (int s = 0; s < stateCount; s++) {
+      states[s] = c.label();
+    }
+    c.local(DfaCompiler.ILOAD, DfaCompiler.STATE);
+    c.tableswitch(slow, states);
+
+    // The code of each move, keyed by next state and kind.
+    Map<Long, Code.Label> moves = new LinkedHashMap<>();
+    int lexState = dfa.getLexState();
+    for (int s = 0; s < stateCount; s++) {
+      c.place(states[s]);
+      // The ranges of the ASCII chars with the same move.
+      int[] starts = new int[128];
+      Code.Label[] targets = new Code.Label[128];
+      int ranges = 0;
+      long previous = -1;
+      for (char ch = 0; ch < 128; ch++) {
+        int cls = tables.getCharClass(lexState, ch);
+        long move = (((long) dfa.getNext(s, cls)) << 32) | (dfa.getKind(s, cls) & 0xFFFFFFFFL);
+        if ((ranges == 0) || (move != previous)) {
+          Code.Label target = moves.get(move);
+          if (target == null) {
+            target = c.label();
+            moves.put(move, target);
+          }
+          starts[ranges] = ch;
+          targets[ranges++] = target;
+          previous = move;
+        }
+      }
+      DfaCompiler.rangeChecks(c, starts, targets, 0, ranges - 1);
+    }
+
+    for (Map.Entry<Long, Code.Label> move : moves.entrySet()) {
+      int next = (int) (move.getKey() >> 32);
+      int kind = (int) (long) move.getKey();
+      c.place(move.getValue());
+      if (kind != Integer.MAX_VALUE) {
+        c.push(kind);
+        c.local(DfaCompiler.ISTORE, DfaCompiler.KIND);
+        c.local(DfaCompiler.ILOAD, DfaCompiler.POS);
+        c.local(DfaCompiler.ISTORE, DfaCompiler.END);
+      }
+      if (next == MinimalDfa.DEAD) {
+        c.jump(DfaCompiler.GOTO, done);
+      } else {
+        c.push(next);
+        c.local(DfaCompiler.ISTORE, DfaCompiler.STATE);
+        c.jump(DfaCompiler.GOTO, loop);
+      }
+    }
+
+    Code.Label noKind = c.label();
+    c.place(slow);
+    c.op(DfaCompiler.ALOAD_0);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.CHAR);
+    c.op(DfaCompiler.INVOKEVIRTUAL);
+    c.u2(pool.methodRef(DfaCompiler.SUPER, "classOf", "(C)I"));
+    c.local(DfaCompiler.ISTORE, DfaCompiler.CLASS);
+    c.op(DfaCompiler.ALOAD_0);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.STATE);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.CLASS);
+    c.op(DfaCompiler.INVOKEVIRTUAL);
+    c.u2(pool.methodRef(DfaCompiler.SUPER, "kindOf", "(II)I"));
+    c.local(DfaCompiler.ISTORE, DfaCompiler.MOVE_KIND);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.MOVE_KIND);
+    c.push(Integer.MAX_VALUE);
+    c.jump(DfaCompiler.IF_ICMPEQ, noKind);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.MOVE_KIND);
+    c.local(DfaCompiler.ISTORE, DfaCompiler.KIND);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.POS);
+    c.local(DfaCompiler.ISTORE, DfaCompiler.END);
+    c.place(noKind);
+    c.op(DfaCompiler.ALOAD_0);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.STATE);
+    c.local(DfaCompiler.ILOAD, DfaCompiler.CLASS);
+    c.op(DfaCompiler.INVOKEVIRTUAL);
+    c.u2(pool.methodRef(DfaCompiler.SUPER, "nextOf", "(II)I"));
+    c.local(DfaCompiler.ISTORE, DfaCompiler.STATE);
+    c.jump(DfaCompiler.GOTO, loop);
+
+    c.place(done);
+    DfaCompiler.putField(c, pool, "matchedKind", DfaCompiler.KIND);
+    DfaCompiler.putField(c, pool, "matchedEnd", DfaCompiler.END);
+    DfaCompiler.putField(c, pool, "scannedEnd", DfaCompiler.POS);
+    c.op(DfaCompiler.RETURN);
+    c.resolve();
+    return c;
+  }
+
+  // Binary search over the ranges [first, last], jumping to the move of the
+  // range of the char.
+  private static void rangeChecks(Code c, int[] starts, Code.Label[] targets, int first, int last) {
+    if (first == last) {
+      c.jump(DfaCompiler.GOTO, targets[first]);
+      return;
+    }
+    int mid = (first + last + 1) >>> 1;
+    Code.Label below = c.label();
+    c.local(DfaCompiler.ILOAD, DfaCompiler.CHAR);
+    c.push(starts[mid]);
+    c.jump(DfaCompiler.IF_ICMPLT, below);
+    DfaCompiler.rangeChecks(c, starts, targets, mid, last);
+    c.place(below);
+    DfaCompiler.rangeChecks(c, starts, targets, first, mid - 1);
+  }
+
+  private static void putField(Code c, ConstantPool pool, String name, int local) {
+    c.op(DfaCompiler.ALOAD_0);
+    c.local(DfaCompiler.ILOAD, local);
+    c.op(DfaCompiler.PUTFIELD);
+    c.u2(pool.fieldRef(DfaCompiler.SUPER, name, "I"));
+  }
+
+  /**
+   * Defines the class, as a hidden class of this package if the JVM supports
+   * them (Java 15 and later), and in a class loader of its own otherwise.
+   */
+  static Class<?> define(byte[] classFile) {
+    Method defineHiddenClass;
+    Object options;
+    try {
+      options = Array.newInstance(Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption"), 0);
+      defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class,
+          options.getClass());
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      return new Loader(DfaCompiler.class.getClassLoader()).define(classFile);
+    }
+    try {
+      return ((MethodHandles.Lookup) defineHiddenClass.invoke(MethodHandles.lookup(), classFile, true, options))
+          .lookupClass();
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static final class Loader extends ClassLoader {
+
+    Loader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(byte[] classFile) {
+      return defineClass(null, classFile, 0, classFile.length);
+    }
+  }
+
+  // The constant pool of a class file, with each constant added once.
+  private static final class ConstantPool {
+
+    private final ByteArrayOutputStream bytes   = new ByteArrayOutputStream();
+    private final DataOutputStream      out     = new DataOutputStream(bytes);
+    private final Map<String, Integer>  indices = new HashMap<>();
+    private int                         count   = 1;
+
+    // The index of a constant, 0 if it has not been added.
+    private int find(String key) {
+      Integer index = indices.get(key);
+      return (index == null) ? 0 : index;
+    }
+
+    // The index of a constant just written.
+    private int added(String key) {
+      indices.put(key, count);
+      return count++;
+    }
+
+    int utf8(String s) {
+      int index = find("utf8 " + s);
+      if (index == 0) {
+        try {
+          out.writeByte(1);
+          out.writeUTF(s);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        index = added("utf8 " + s);
+      }
+      return index;
+    }
+
+    int integer(int value) {
+      int index = find("int " + value);
+      if (index == 0) {
+        entry(3, value >>> 16, value & 0xFFFF);
+        index = added("int " + value);
+      }
+      return index;
+    }
+
+    int classInfo(String name) {
+      int index = find("class " + name);
+      if (index == 0) {
+        int nameIndex = utf8(name);
+        entry(7, nameIndex);
+        index = added("class " + name);
+      }
+      return index;
+    }
+
+    private int nameAndType(String name, String descriptor) {
+      String key = "nameAndType " + name + " " + descriptor;
+      int index = find(key);
+      if (index == 0) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        entry(12, nameIndex, descriptorIndex);
+        index = added(key);
+      }
+      return index;
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+      return ref(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+      return ref(10, owner, name, descriptor);
+    }
+
+    private int ref(int tag, String owner, String name, String descriptor) {
+      String key = tag + " " + owner + " " + name + " " + descriptor;
+      int index = find(key);
+      if (index == 0) {
+        int ownerIndex = classInfo(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        entry(tag, ownerIndex, nameAndTypeIndex);
+        index = added(key);
+      }
+      return index;
+    }
+
+    // Writes an entry of a tag and u2 values.
+    private void entry(int tag, int... values) {
+      try {
+        out.writeByte(tag);
+        for (int value : values) {
+          out.writeShort(value);
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    void write(DataOutputStream classFile) throws IOException {
+      classFile.writeShort(count);
+      bytes.writeTo(classFile);
+    }
+  }
+
+  // The bytecode of a method, with labels for the branches.
+  private static final class Code {
+
+    // A position in the code, and the branches to it.
+    static final class Label {
+      int             position = -1;
+      final List<int[]> branches = new ArrayList<>();
+    }
+
+    private final ConstantPool pool;
+    private final List<Label>  labels = new ArrayList<>();
+    private byte[]             code   = new byte[256];
+    private int                size;
+
+    Code(ConstantPool pool) {
+      this.pool = pool;
+    }
+
+    int size() {
+      return size;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(code, size);
+    }
+
+    void u1(int b) {
+      if (size == code.length) {
+        code = Arrays.copyOf(code, 2 * size);
+      }
+      code[size++] = (byte) b;
+    }
+
+    void op(int opcode) {
+      u1(opcode);
+    }
+
+    void u2(int value) {
+      u1(value >> 8);
+      u1(value);
+    }
+
+    void u4(int value) {
+      u2(value >> 16);
+      u2(value);
+    }
+
+    void local(int opcode, int local) {
+      op(opcode);
+      u1(local);
+    }
+
+    void push(int value) {
+      if ((value >= -1) && (value <= 5)) {
+        op(DfaCompiler.ICONST_0 + value);
+      } else if (value == (byte) value) {
+        op(DfaCompiler.BIPUSH);
+        u1(value);
+      } else if (value == (short) value) {
+        op(DfaCompiler.SIPUSH);
+        u2(value);
+      } else {
+        int index = pool.integer(value);
+        if (index < 256) {
+          op(DfaCompiler.LDC);
+          u1(index);
+        } else {
+          op(DfaCompiler.LDC_W);
+          u2(index);
+        }
+      }
+    }
+
+    Label label() {
+      Label label = new Label();
+      labels.add(label);
+      return label;
+    }
+
+    void place(Label label) {
+      label.position = size;
+    }
+
+    // A branch with a 16 bit offset.
+    void jump(int opcode, Label target) {
+      int at = size;
+      op(opcode);
+      target.branches.add(new int[] { size, at, 2 });
+      u2(0);
+    }
+
+    void tableswitch(Label otherwise, Label[] cases) {
+      int at = size;
+      op(DfaCompiler.TABLESWITCH);
+      while ((size % 4) != 0) {
+        u1(0);
+      }
+      otherwise.branches.add(new int[] { size, at, 4 });
+      u4(0);
+      u4(0);
+      u4(cases.length - 1);
+      for (Label label : cases) {
+        label.branches.add(new int[] { size, at, 4 });
+        u4(0);
+      }
+    }
+
+    // Patches the branches once all labels are placed.
+    void resolve() {
+      for (Label label : labels) {
+        for (int[] branch : label.branches) {
+          int offset = label.position - branch[1];
+          for (int i = 0; i < branch[2]; i++) {
+            code[branch[0] + i] = (byte) (offset >> (8 * (branch[2] - 1 - i)));
+          }
+        }
+      }
+    }
+  }
+}
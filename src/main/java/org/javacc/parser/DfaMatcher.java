@@ -0,0 +1,55 @@
+package org.javacc.parser;
+
+// Runs the MinimalDfa of a lexical state to find the longest match from an NFA
+// start state, with the results of NfaMatcher. Since the dead state merges the
+// states from which nothing can match anymore, the DFA may stop reading
+// earlier than the NFA, which only makes the scanned end tighter.
+public final class DfaMatcher {
+
+  private final TokenizerTables tables;
+
+  // Result of the last match.
+  private int                   matchedKind = Integer.MAX_VALUE;
+  private int                   matchedEnd  = -1;
+  private int                   scannedEnd  = -1;
+
+  public DfaMatcher(TokenizerTables tables) {
+    this.tables = tables;
+  }
+
+  // Matches the longest prefix of the input in [pos, limit) accepted by the
+  // DFA started in the state of nfaStartState.
+  public void match(MinimalDfa dfa, TokenizerInput input, int pos, int limit, int nfaStartState) {
+    int kind = Integer.MAX_VALUE;
+    int end = -1;
+    int lexState = dfa.getLexState();
+    int state = dfa.getStartState(nfaStartState);
+    while ((state != MinimalDfa.DEAD) && (pos < limit)) {
+      int charClass = tables.getCharClass(lexState, input.charAt(pos));
+      pos = input.next(pos);
+      if (dfa.getKind(state, charClass) != Integer.MAX_VALUE) {
+        kind = dfa.getKind(state, charClass);
+        end = pos;
+      }
+      state = dfa.getNext(state, charClass);
+    }
+    matchedKind = kind;
+    matchedEnd = end;
+    scannedEnd = pos;
+  }
+
+  // Kind of the last match, Integer.MAX_VALUE if nothing matched.
+  public int getMatchedKind() {
+    return matchedKind;
+  }
+
+  // Position after the last char of the last match, -1 if nothing matched.
+  public int getMatchedEnd() {
+    return matchedEnd;
+  }
+
+  // Position after the last char read by the last match.
+  public int getScannedEnd() {
+    return scannedEnd;
+  }
+}
@@ -0,0 +1,270 @@
+package org.javacc.parser;
+
+import java.io.IOException;
+
+/**
+ * Keeps the matches of a document up to date as it is edited. Every match is
+ * kept with the lexical state it was matched in and its lookahead end, the
+ * offset after the last char the tokenizer looked at to decide it. After an
+ * edit, the matches whose lookahead ends before the edit are still valid, so
+ * the document is re-lexed from the first match that looked into the edit, in
+ * its lexical state, until a new match starts after the edit at the same
+ * offset and in the same lexical state as an old one. From there on both
+ * streams are the same, so the work per edit is proportional to the damaged
+ * region.
+ *
+ * The matches are kept in a gap buffer with the gap at the last edit. Offsets
+ * after the gap are kept relative to the end of the document, so they do not
+ * change when an edit changes its length, and the edits only move the matches
+ * between them and the previous edit. Errors are kept as matches of kind -1.
+ *
+ * An instance must not be used by more than one thread at a time.
+ */
+public final class IncrementalTokenizer {
+
+  // Kind of the recorded errors.
+  public static final int ERROR = TokenBuffer.ERROR;
+
+  private final Tokenizer tokenizer;
+  private CharSequence    text = "";
+
+  // Matches [0, gapStart) and [gapEnd, capacity). The offsets of the ones
+  // after the gap are relative to the end of the document.
+  private int             gapStart;
+  private int             gapEnd;
+  private int[]           kinds         = new int[256];
+  private int[]           starts        = new int[256];
+  private int[]           ends          = new int[256];
+  private int[]           lookaheadEnds = new int[256];
+  private int[]           lexStates     = new int[256];
+
+  // Largest lookahead of a match from its start, which bounds how far before
+  // an edit a match can have looked into it.
+  private int             maxLookahead;
+
+  // The matches re-lexed by the last edit, [damageStart, damageEnd).
+  private int             damageStart;
+  private int             damageEnd;
+
+  public IncrementalTokenizer(TokenizerData tokenizerData) {
+    this.tokenizer = new Tokenizer(tokenizerData);
+    gapEnd = kinds.length;
+  }
+
+  /**
+   * Tokenizes the whole text, dropping the matches of the previous one.
+   */
+  public void tokenize(CharSequence text) {
+    gapStart = 0;
+    gapEnd = kinds.length;
+    maxLookahead = 0;
+    this.text = text;
+    relex(0, tokenizer.getSnapshot().getDefaultLexState(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Updates the matches for an edit that replaced [start, oldEnd) of the
+   * previous text with [start, newEnd) of text.
+   */
+  public void edit(CharSequence text, int start, int oldEnd, int newEnd) {
+    if ((start < 0) || (oldEnd < start) || (newEnd < start) || (oldEnd > this.text.length())
+        || ((text.length() - newEnd) != (this.text.length() - oldEnd))) {
+      throw new IllegalArgumentException("Edit [" + start + ", " + oldEnd + ") -> [" + start + ", " + newEnd
+          + ") does not fit the text");
+    }
+    // The first match that looked at or past the start of the edit. Only the
+    // matches starting within maxLookahead before it can have.
+    int first = firstStartingAt(start);
+    for (int i = firstStartingAt(Math.max(start - maxLookahead, 0)); i < first; i++) {
+      if (getLookaheadEnd(i) > start) {
+        first = i;
+        break;
+      }
+    }
+    int from = (first < getMatchCount()) ? getStart(first) : start;
+    int lexState = (first < getMatchCount()) ? getLexState(first)
+        : (first > 0) ? lexStateAfter(first - 1) : tokenizer.getSnapshot().getDefaultLexState();
+
+    // Move the gap before the first damaged match. The matches after it keep
+    // their offsets from the end, which the new text has moved with the edit.
+    moveGap(first);
+    this.text = text;
+    relex(from, lexState, newEnd);
+  }
+
+  // The lexical state after the match.
+  private int lexStateAfter(int i) {
+    int kind = getKind(i);
+    int newLexState = (kind == ERROR) ? -1 : tokenizer.getSnapshot().getMatchInfo(kind).newLexState;
+    return (newLexState != -1) ? newLexState : getLexState(i);
+  }
+
+  // Re-lexes the text from the offset until a match at or after syncFrom meets
+  // one of the matches after the gap, dropping the old matches it passes.
+  private void relex(int from, int lexState, final int syncFrom) {
+    damageStart = gapStart;
+    boolean synced;
+    try {
+      synced = !tokenizer.tokenize(new CharWindow(text, from), lexState, new TokenSink() {
+        @Override
+        public void token(int kind, long start, long end, int lexState) {
+          add(kind, (int) start, (int) end, lexState);
+        }
+
+        @Override
+        public boolean error(long start, long end, int lexState) {
+          add(ERROR, (int) start, (int) end, lexState);
+          return true;
+        }
+
+        private void add(int kind, int start, int end, int lexState) {
+          int length = text.length();
+          while ((gapEnd < kinds.length) && ((starts[gapEnd] + length) < start)) {
+            gapEnd++;
+          }
+          if ((start >= syncFrom) && (gapEnd < kinds.length) && ((starts[gapEnd] + length) == start)
+              && (lexStates[gapEnd] == lexState)) {
+            // The streams meet, the rest of the old matches are still valid.
+            tokenizer.stop();
+            return;
+          }
+          if ((gapEnd < kinds.length) && ((starts[gapEnd] + length) == start)) {
+            gapEnd++;
+          }
+          if (gapStart == gapEnd) {
+            grow();
+          }
+          kinds[gapStart] = kind;
+          starts[gapStart] = start;
+          ends[gapStart] = end;
+          lookaheadEnds[gapStart] = (int) Math.min(tokenizer.getLookaheadEnd(), Integer.MAX_VALUE);
+          lexStates[gapStart] = lexState;
+          maxLookahead = Math.max(maxLookahead, lookaheadEnds[gapStart] - start);
+          gapStart++;
+        }
+      });
+    } catch (IOException e) {
+      throw new Error(); // Should never come here
+    }
+    if (!synced) {
+      // Ended without meeting the old matches, which are all replaced.
+      gapEnd = kinds.length;
+    }
+    damageEnd = gapStart;
+  }
+
+  // Doubles the capacity, keeping the matches after the gap at the end.
+  private void grow() {
+    int capacity = 2 * kinds.length;
+    int after = kinds.length - gapEnd;
+    kinds = IncrementalTokenizer.grow(kinds, capacity, gapStart, after);
+    starts = IncrementalTokenizer.grow(starts, capacity, gapStart, after);
+    ends = IncrementalTokenizer.grow(ends, capacity, gapStart, after);
+    lookaheadEnds = IncrementalTokenizer.grow(lookaheadEnds, capacity, gapStart, after);
+    lexStates = IncrementalTokenizer.grow(lexStates, capacity, gapStart, after);
+    gapEnd = capacity - after;
+  }
+
+  private static int[] grow(int[] a, int capacity, int before, int after) {
+    int[] b = new int[capacity];
+    System.arraycopy(a, 0, b, 0, before);
+    System.arraycopy(a, a.length - after, b, capacity - after, after);
+    return b;
+  }
+
+  // Moves the gap to before match i.
+  private void moveGap(int i) {
+    int length = text.length();
+    while (gapStart > i) {
+      gapStart--;
+      gapEnd--;
+      moveMatch(gapStart, gapEnd, -length);
+    }
+    while (gapStart < i) {
+      moveMatch(gapEnd, gapStart, length);
+      gapStart++;
+      gapEnd++;
+    }
+  }
+
+  private void moveMatch(int from, int to, int shift) {
+    kinds[to] = kinds[from];
+    starts[to] = starts[from] + shift;
+    ends[to] = ends[from] + shift;
+    lookaheadEnds[to] = lookaheadEnds[from] + shift;
+    lexStates[to] = lexStates[from];
+  }
+
+  // Index of the first match that starts at or after the offset.
+  private int firstStartingAt(int offset) {
+    int lo = 0;
+    int hi = getMatchCount();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (getStart(mid) < offset) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // Physical index of match i.
+  private int index(int i) {
+    return (i < gapStart) ? i : (i + (gapEnd - gapStart));
+  }
+
+  // Shift of the offsets of match i.
+  private int shift(int i) {
+    return (i < gapStart) ? 0 : text.length();
+  }
+
+  public CharSequence getText() {
+    return text;
+  }
+
+  public int getMatchCount() {
+    return gapStart + (kinds.length - gapEnd);
+  }
+
+  // Kind of match i, ERROR if it is an error.
+  public int getKind(int i) {
+    return kinds[index(i)];
+  }
+
+  public int getStart(int i) {
+    return starts[index(i)] + shift(i);
+  }
+
+  public int getEnd(int i) {
+    return ends[index(i)] + shift(i);
+  }
+
+  // Lexical state match i was matched in.
+  public int getLexState(int i) {
+    return lexStates[index(i)];
+  }
+
+  // Offset after the last char looked at to decide match i, see
+  // Tokenizer.getLookaheadEnd().
+  public int getLookaheadEnd(int i) {
+    return lookaheadEnds[index(i)] + shift(i);
+  }
+
+  /**
+   * The first of the matches re-lexed by the last edit. The matches before it
+   * are unchanged.
+   */
+  public int getDamageStart() {
+    return damageStart;
+  }
+
+  /**
+   * The end of the matches re-lexed by the last edit. The matches from it on
+   * are the old ones after the edit, moved with it.
+   */
+  public int getDamageEnd() {
+    return damageEnd;
+  }
+}
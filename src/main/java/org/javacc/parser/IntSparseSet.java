@@ -0,0 +1,52 @@
+package org.javacc.parser;
+
+// A set of ints in [0, capacity) with O(1) add, contains and clear, after
+// Briggs and Torczon, "An Efficient Representation for Sparse Sets". The
+// members are kept in insertion order in a dense array, so iterating over them
+// is a plain indexed loop and nothing is allocated once the set is created.
+public final class IntSparseSet {
+
+  private final int[] dense;
+  private final int[] sparse;
+  private int         size;
+
+  public IntSparseSet(int capacity) {
+    dense = new int[capacity];
+    sparse = new int[capacity];
+  }
+
+  public int capacity() {
+    return dense.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // The i-th member in insertion order.
+  public int get(int i) {
+    return dense[i];
+  }
+
+  public boolean contains(int value) {
+    int i = sparse[value];
+    return (i < size) && (dense[i] == value);
+  }
+
+  public void add(int value) {
+    int i = sparse[value];
+    if ((i < size) && (dense[i] == value)) {
+      return;
+    }
+    sparse[value] = size;
+    dense[size++] = value;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+}
@@ -306,25 +306,27 @@ public abstract class JavaCCParserInternals {
     return retval;
   }
 
-  protected char character_descriptor_assign(Token t, String s) {
-    if (s.length() != 1) {
+  // The code point of a string in a character list: a single char, or a
+  // surrogate pair for a code point outside the BMP.
+  protected int character_descriptor_assign(Token t, String s) {
+    if ((s.length() == 0) || (s.codePointCount(0, s.length()) != 1)) {
       context.errors().parse_error(t, "String in character list may contain only one character.");
       return ' ';
     } else {
-      return s.charAt(0);
+      return s.codePointAt(0);
     }
   }
 
-  protected char character_descriptor_assign(Token t, String s, String left) {
-    if (s.length() != 1) {
+  protected int character_descriptor_assign(Token t, String s, String left) {
+    if ((s.length() == 0) || (s.codePointCount(0, s.length()) != 1)) {
       context.errors().parse_error(t, "String in character list may contain only one character.");
       return ' ';
-    } else if ((left.charAt(0)) > (s.charAt(0))) {
+    } else if ((left.length() > 0) && (left.codePointAt(0) > s.codePointAt(0))) {
       context.errors().parse_error(t, "Right end of character range \'" + s
           + "\' has a lower ordinal value than the left end of character range \'" + left + "\'.");
-      return left.charAt(0);
+      return left.codePointAt(0);
     } else {
-      return s.charAt(0);
+      return s.codePointAt(0);
     }
   }
 
@@ -0,0 +1,347 @@
+package org.javacc.parser;
+
+import java.util.Arrays;
+
+// A DFA built lazily by subset construction over the NFA in TokenizerTables.
+// Each DFA state is a set of NFA states and is only created the first time a
+// transition into it is taken. Transitions are taken on the char classes of
+// the lexical state and cached in flat tables, so once the cache is warm a
+// char costs a class lookup and one array lookup whatever its code.
+//
+// The interpreter keeps one instance per lexical state. The cache is bounded
+// by a byte budget: when it is full it is flushed and rebuilt on demand. If it
+// gets flushed again before the states could be reused a few times, the cache
+// is thrashing and match() returns false until retry() is called, so that the
+// caller can fall back to simulating the NFA.
+public final class LazyDfa {
+
+  // Transition not computed yet.
+  private static final int UNKNOWN             = -2;
+
+  // Transition to the empty NFA state set.
+  private static final int DEAD                = -1;
+
+  // Below this many chars scanned per cached state between two flushes the
+  // cache is considered to be thrashing.
+  private static final int MIN_CHARS_PER_STATE = 10;
+
+  private final TokenizerTables tables;
+  private final int             lexState;
+  private final int             classCount;
+  private final long            maxCacheBytes;
+
+  // Approximate fixed cost in bytes of a DFA state: the two transition tables
+  // with an entry per class, the hash slots and the state set array header.
+  private final int             stateBytes;
+
+  // NFA state sets of the DFA states, sorted.
+  private int[][]               stateSets   = new int[16][];
+  // Cached transitions: target DFA state and matched kind at
+  // state * classCount + class.
+  private int[]                 next;
+  private int[]                 kinds;
+  private int                   stateCount;
+  private long                  cacheBytes;
+
+  // Open addressing hash table of DFA state indices keyed by their state sets.
+  private int[]                 hashTable   = new int[32];
+
+  // DFA state to start from for an NFA start state, UNKNOWN if not computed.
+  private final int[]           startStates;
+
+  // Scratch space for computing state sets.
+  private final int[]           mark;
+  private int                   markGeneration;
+  private int[]                 scratch     = new int[16];
+  private int                   scratchSize;
+  private int                   transitionKind;
+
+  private long                  charsSinceFlush;
+  private int                   flushes;
+  private boolean               thrashing;
+
+  // Result of the last match.
+  private int                   matchedKind = Integer.MAX_VALUE;
+  private int                   matchedEnd  = -1;
+  private int                   scannedEnd  = -1;
+
+  public LazyDfa(TokenizerTables tables, int lexState, long maxCacheBytes) {
+    this.tables = tables;
+    this.lexState = lexState;
+    this.classCount = Math.max(tables.getCharClassCount(lexState), 1);
+    this.stateBytes = (2 * classCount * 4) + (2 * 4) + 16;
+    this.next = new int[16 * classCount];
+    this.kinds = new int[16 * classCount];
+    this.maxCacheBytes = maxCacheBytes;
+    this.startStates = new int[tables.getStateCount()];
+    this.mark = new int[tables.getStateCount()];
+    clear();
+  }
+
+  private void clear() {
+    Arrays.fill(startStates, UNKNOWN);
+    Arrays.fill(hashTable, -1);
+    Arrays.fill(stateSets, 0, stateCount, null);
+    stateCount = 0;
+    cacheBytes = 0;
+    charsSinceFlush = 0;
+  }
+
+  private void flush() {
+    if (charsSinceFlush < ((long) MIN_CHARS_PER_STATE * stateCount)) {
+      thrashing = true;
+    }
+    flushes++;
+    clear();
+  }
+
+  // Matches the longest prefix of the input in [pos, limit) accepted by the NFA
+  // started in nfaStartState (and its composite states). Returns false if the
+  // cache is thrashing, in which case nothing was matched and the caller
+  // should simulate the NFA instead.
+  public boolean match(TokenizerInput input, int pos, int limit, int nfaStartState) {
+    int start = pos;
+    int state = begin(pos, nfaStartState);
+    if (thrashing) {
+      return false;
+    }
+    while ((state != DEAD) && (pos < limit)) {
+      state = step(input, pos, state);
+      if (thrashing) {
+        return false;
+      }
+      pos = scannedEnd;
+    }
+    charsSinceFlush += pos - start;
+    return true;
+  }
+
+  // Same, adding the number of active NFA states on each char read to the
+  // histogram. A separate loop, so the one above does not check for metrics
+  // on every char.
+  boolean match(TokenizerInput input, int pos, int limit, int nfaStartState, long[] histogram) {
+    int start = pos;
+    int state = begin(pos, nfaStartState);
+    if (thrashing) {
+      return false;
+    }
+    while ((state != DEAD) && (pos < limit)) {
+      TokenizerMetrics.addActiveStates(histogram, stateSets[state].length);
+      state = step(input, pos, state);
+      if (thrashing) {
+        return false;
+      }
+      pos = scannedEnd;
+    }
+    charsSinceFlush += pos - start;
+    return true;
+  }
+
+  // Starts a match at pos. Returns the DFA state of the NFA start state, or
+  // sets thrashing.
+  private int begin(int pos, int nfaStartState) {
+    matchedKind = Integer.MAX_VALUE;
+    matchedEnd = -1;
+    scannedEnd = pos;
+    if (thrashing) {
+      return DEAD;
+    }
+    int state = startStates[nfaStartState];
+    return (state == UNKNOWN) ? startState(nfaStartState) : state;
+  }
+
+  // Takes the transition of the state on the char at pos, recording a match
+  // if one ends after it, and sets scannedEnd to the position after the char.
+  // Returns the next state, or sets thrashing.
+  private int step(TokenizerInput input, int pos, int state) {
+    int charClass = tables.getCharClass(lexState, input.charAt(pos));
+    int i = (state * classCount) + charClass;
+    int kind;
+    if (next[i] == UNKNOWN) {
+      state = transition(state, charClass);
+      kind = transitionKind;
+    } else {
+      state = next[i];
+      kind = kinds[i];
+    }
+    int end = input.next(pos);
+    if (kind != Integer.MAX_VALUE) {
+      matchedKind = kind;
+      matchedEnd = end;
+    }
+    scannedEnd = end;
+    return state;
+  }
+
+  // Kind of the last match, Integer.MAX_VALUE if nothing matched.
+  public int getMatchedKind() {
+    return matchedKind;
+  }
+
+  // Position after the last char of the last match, -1 if nothing matched.
+  public int getMatchedEnd() {
+    return matchedEnd;
+  }
+
+  // Position after the last char read by the last match.
+  public int getScannedEnd() {
+    return scannedEnd;
+  }
+
+  public int getStateCount() {
+    return stateCount;
+  }
+
+  public int getFlushCount() {
+    return flushes;
+  }
+
+  public boolean isThrashing() {
+    return thrashing;
+  }
+
+  // Lets match() use the cache again after it was thrashing, such as for the
+  // next input, which may well reuse its states.
+  public void retry() {
+    thrashing = false;
+  }
+
+  private int startState(int nfaStartState) {
+    beginSet();
+    addToSet(nfaStartState);
+    for (int i = tables.getCompositeStatesStart(nfaStartState); i < tables.getCompositeStatesEnd(nfaStartState); i++) {
+      addToSet(tables.getCompositeState(i));
+    }
+    int state = intern();
+    if (!thrashing) {
+      startStates[nfaStartState] = state;
+    }
+    return state;
+  }
+
+  // Computes and caches the transition of the DFA state on the char class.
+  // The kind matched by the transition is left in transitionKind.
+  private int transition(int state, int charClass) {
+    int[] set = stateSets[state];
+    int kind = Integer.MAX_VALUE;
+    beginSet();
+    for (int nfaState : set) {
+      if (tables.canMoveOnClass(nfaState, charClass)) {
+        if (kind > tables.getKind(nfaState)) {
+          kind = tables.getKind(nfaState);
+        }
+        for (int i = tables.getNextStatesStart(nfaState); i < tables.getNextStatesEnd(nfaState); i++) {
+          addToSet(tables.getNextState(i));
+        }
+      }
+    }
+    transitionKind = kind;
+
+    int flushesBefore = flushes;
+    int target = intern();
+    // A flush invalidates the source state, so only cache if there was none.
+    if (flushes == flushesBefore) {
+      next[(state * classCount) + charClass] = target;
+      kinds[(state * classCount) + charClass] = kind;
+    }
+    return target;
+  }
+
+  private void beginSet() {
+    scratchSize = 0;
+    if (++markGeneration == 0) {
+      Arrays.fill(mark, 0);
+      markGeneration = 1;
+    }
+  }
+
+  private void addToSet(int nfaState) {
+    if (mark[nfaState] == markGeneration) {
+      return;
+    }
+    mark[nfaState] = markGeneration;
+    if (scratchSize == scratch.length) {
+      scratch = Arrays.copyOf(scratch, 2 * scratch.length);
+    }
+    scratch[scratchSize++] = nfaState;
+  }
+
+  // Returns the DFA state for the set in scratch, adding it if needed.
+  private int intern() {
+    if (scratchSize == 0) {
+      return DEAD;
+    }
+    Arrays.sort(scratch, 0, scratchSize);
+    int hash = hash(scratch, scratchSize);
+    int mask = hashTable.length - 1;
+    for (int i = hash & mask;; i = (i + 1) & mask) {
+      int state = hashTable[i];
+      if (state == -1) {
+        break;
+      }
+      if (sameSet(stateSets[state], scratch, scratchSize)) {
+        return state;
+      }
+    }
+
+    long bytes = stateBytes + (4L * scratchSize);
+    if ((stateCount > 0) && ((cacheBytes + bytes) > maxCacheBytes)) {
+      flush();
+      if (thrashing) {
+        return DEAD;
+      }
+    }
+    return add(hash, bytes);
+  }
+
+  private int add(int hash, long bytes) {
+    int state = stateCount++;
+    if (state == stateSets.length) {
+      stateSets = Arrays.copyOf(stateSets, 2 * state);
+      next = Arrays.copyOf(next, 2 * state * classCount);
+      kinds = Arrays.copyOf(kinds, 2 * state * classCount);
+    }
+    stateSets[state] = Arrays.copyOf(scratch, scratchSize);
+    Arrays.fill(next, state * classCount, (state + 1) * classCount, UNKNOWN);
+    cacheBytes += bytes;
+
+    if ((2 * stateCount) > hashTable.length) {
+      hashTable = new int[2 * hashTable.length];
+      Arrays.fill(hashTable, -1);
+      for (int s = 0; s < state; s++) {
+        insert(hash(stateSets[s], stateSets[s].length), s);
+      }
+    }
+    insert(hash, state);
+    return state;
+  }
+
+  private void insert(int hash, int state) {
+    int mask = hashTable.length - 1;
+    int i = hash & mask;
+    while (hashTable[i] != -1) {
+      i = (i + 1) & mask;
+    }
+    hashTable[i] = state;
+  }
+
+  private static int hash(int[] set, int size) {
+    int h = 1;
+    for (int i = 0; i < size; i++) {
+      h = (31 * h) + set[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean sameSet(int[] set, int[] other, int size) {
+    if (set.length != size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (set[i] != other[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -30,6 +30,7 @@
 
 package org.javacc.parser;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -340,6 +341,7 @@ public class LexGen {
     CheckEmptyStringMatch(lexerContext, tokenizerData);
 
     tokenizerData.setParserName(context.globals().cu_name);
+    lexerContext.profile = ReadProfile();
     NfaState.BuildTokenizerData(tokenizerData, lexerContext);
     RStringLiteral.BuildTokenizerData(tokenizerData, lexerContext);
 
@@ -397,6 +399,10 @@ public class LexGen {
       }
     }
     tokenizerData.setLabelsAndImages(context.globals().names_of_tokens, images);
+    tokenizerData.setCodePoints(Options.getCodePoints());
+    if (Options.getMinimizeDfa()) {
+      MinimalDfa.build(tokenizerData);
+    }
 
     if (generateDataOnly) {
       return tokenizerData;
@@ -409,6 +415,28 @@ public class LexGen {
     return tokenizerData;
   }
 
+  // The tokenizer profile of the TOKENIZER_PROFILE option, null if there is
+  // none or it is of another grammar. The profile only changes the order of
+  // the literals and states, so the data is built without it otherwise.
+  private TokenizerProfile ReadProfile() {
+    if (Options.getTokenizerProfile().length() == 0) {
+      return null;
+    }
+    TokenizerProfile profile;
+    try {
+      profile = TokenizerProfile.read(new File(Options.getTokenizerProfile()));
+    } catch (IOException e) {
+      context.errors().warning("Could not read the tokenizer profile: " + e.getMessage());
+      return null;
+    }
+    if (!profile.getParserName().equals(context.globals().cu_name)) {
+      context.errors().warning("The tokenizer profile is of " + profile.getParserName() + " instead of "
+          + context.globals().cu_name + ", the lexer is built without it.");
+      return null;
+    }
+    return profile;
+  }
+
   private void CheckEmptyStringMatch(LexerContext lexerContext, TokenizerData tokenizerData) {
     int i, j, k, len;
     boolean[] seen = new boolean[maxLexStates];
@@ -77,6 +77,11 @@ class LexerContext {
   final Map<Integer, Integer>        nfaStateOffset        = new HashMap<>();
   final Map<Integer, Integer>        matchAnyChar          = new HashMap<>();
 
+  // The profile of the TOKENIZER_PROFILE option, and the number of each
+  // state in the tokenizer data laid out by it, null if there is none.
+  TokenizerProfile                   profile;
+  int[]                              stateLayout;
+
 
   // RStringLiteral variable
   int                         maxStrKind      = 0;
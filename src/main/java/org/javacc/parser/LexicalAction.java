@@ -0,0 +1,15 @@
+package org.javacc.parser;
+
+/**
+ * Runs in place of the Java code of a lexical action when a grammar is
+ * interpreted, see {@link TokenAssembler#setAction}.
+ */
+public interface LexicalAction {
+
+  /**
+   * Called when a match of the kind the action is set for ends, whatever its
+   * match type. The image is [imageStart, end), which includes the MORE
+   * matches before the match at [start, end).
+   */
+  void run(int kind, long imageStart, long start, long end, int lexState);
+}
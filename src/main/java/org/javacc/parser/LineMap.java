@@ -0,0 +1,76 @@
+package org.javacc.parser;
+
+import java.util.Arrays;
+
+/**
+ * Index of the offsets at which the lines of an input start, for looking up
+ * the line and column of any offset in O(log lines). A line ends after "\n",
+ * "\r" or "\r\n", and a line only starts if a char follows. Offsets and
+ * columns are in the units of the input: chars for char input and bytes for
+ * UTF-8 input.
+ */
+public final class LineMap {
+
+  // Start offsets of the lines, ascending. The first line starts at 0.
+  private long[] lineStarts = new long[64];
+  private int    lineCount  = 1;
+
+  public LineMap() {}
+
+  /**
+   * Builds the map of all the lines of text.
+   */
+  public static LineMap of(CharSequence text) {
+    LineMap lineMap = new LineMap();
+    for (int i = 1; i < text.length(); i++) {
+      char c = text.charAt(i - 1);
+      if ((c == '\n') || ((c == '\r') && (text.charAt(i) != '\n'))) {
+        lineMap.addLineStart(i);
+      }
+    }
+    return lineMap;
+  }
+
+  // Adds the start of the next line.
+  void addLineStart(long offset) {
+    if (lineCount == lineStarts.length) {
+      lineStarts = Arrays.copyOf(lineStarts, 2 * lineCount);
+    }
+    lineStarts[lineCount++] = offset;
+  }
+
+  public int getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * The start offset of the line, the first line being 1.
+   */
+  public long getLineStart(int line) {
+    return lineStarts[line - 1];
+  }
+
+  /**
+   * The line of the offset, the first line being 1.
+   */
+  public int getLine(long offset) {
+    int lo = 0;
+    int hi = lineCount - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (lineStarts[mid] <= offset) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo + 1;
+  }
+
+  /**
+   * The column of the offset, the first column being 1.
+   */
+  public int getColumn(long offset) {
+    return (int) (offset - lineStarts[getLine(offset) - 1]) + 1;
+  }
+}
@@ -293,7 +293,7 @@ public class Main {
     }
   }
 
-  private static ParserData createParserData(Context context) {
+  public static ParserData createParserData(Context context) {
     ParserData parserData = new ParserData();
     parserData.bnfproductions = context.globals().bnfproductions;
     parserData.parserName = context.globals().cu_name;
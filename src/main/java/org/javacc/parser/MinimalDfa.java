@@ -0,0 +1,476 @@
+package org.javacc.parser;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DFA of a lexical state, determinized from the NFA in TokenizerTables
+ * over its char classes and minimized with Hopcroft's algorithm.
+ *
+ * Like the NFA, the DFA matches from one of the start states the tokenizer
+ * continues from: the initial state of the lexical state, or the state after
+ * a string literal. A transition carries the kind matched by taking it, the
+ * lowest kind of the NFA states moving on the char, and the tokenizer keeps
+ * the last kind matched before the DFA dies, so the longest match and the
+ * kind priority are the same as the NFA's. Since the kinds are on the
+ * transitions, two states are equivalent if they match the same kinds on
+ * every class and move to equivalent states, which is what the initial
+ * partition and the refinement follow. States from which no kind can be
+ * matched anymore are merged into the dead state, so the DFA stops reading as
+ * soon as the match can not change.
+ *
+ * The next states and kinds are flat arrays indexed by state * classes +
+ * class, the state numbers breadth first from the start states, so a code
+ * generator can emit them as they are.
+ */
+public final class MinimalDfa {
+
+  // The state without moves.
+  public static final int  DEAD      = -1;
+
+  // The size of the DFA of a lexical state before minimization above which
+  // it is not built.
+  public static final long MAX_BYTES = 64L << 20;
+
+  private final int       lexState;
+  private final int       classCount;
+  private final int[]     next;
+  private final int[]     kinds;
+  // DFA state of each NFA state that is a start state of this lexical state,
+  // DEAD for the others.
+  private final int[]     startStates;
+
+  private MinimalDfa(int lexState, int classCount, int[] next, int[] kinds, int[] startStates) {
+    this.lexState = lexState;
+    this.classCount = classCount;
+    this.next = next;
+    this.kinds = kinds;
+    this.startStates = startStates;
+  }
+
+  public int getLexState() {
+    return lexState;
+  }
+
+  public int getClassCount() {
+    return classCount;
+  }
+
+  public int getStateCount() {
+    return next.length / Math.max(classCount, 1);
+  }
+
+  // The state the DFA starts in for the NFA start state.
+  public int getStartState(int nfaStartState) {
+    return startStates[nfaStartState];
+  }
+
+  // The state moved to from the state on the class, DEAD if none.
+  public int getNext(int state, int charClass) {
+    return next[(state * classCount) + charClass];
+  }
+
+  // The kind matched by the move, Integer.MAX_VALUE if none.
+  public int getKind(int state, int charClass) {
+    return kinds[(state * classCount) + charClass];
+  }
+
+  /**
+   * Builds the minimal DFAs of the lexical states of the tokenizer data and
+   * sets them in it. A lexical state whose DFA would take more than MAX_BYTES
+   * before minimization gets none, and is matched as without DFAs.
+   */
+  public static void build(TokenizerData tokenizerData) {
+    TokenizerTables tables = tokenizerData.getTables();
+    MinimalDfa[] dfas = new MinimalDfa[tables.getLexStateCount()];
+    for (int l = 0; l < dfas.length; l++) {
+      dfas[l] = MinimalDfa.build(tables, l, MinimalDfa.MAX_BYTES);
+    }
+    tokenizerData.setMinimalDfas(dfas);
+  }
+
+  /**
+   * Builds the minimal DFA of the lexical state, null if it has no NFA or its
+   * DFA would take more than maxBytes before minimization.
+   */
+  public static MinimalDfa build(TokenizerTables tables, int lexState, long maxBytes) {
+    if (tables.getInitialState(lexState) == -1) {
+      return null;
+    }
+    int classCount = tables.getCharClassCount(lexState);
+    Subsets subsets = new Subsets(tables, lexState, classCount, maxBytes);
+    boolean[] isStart = new boolean[tables.getStateCount()];
+    isStart[tables.getInitialState(lexState)] = true;
+    for (int kind = 0; kind < tables.getNfaStartStateCount(); kind++) {
+      int s = tables.getNfaStartState(kind);
+      if ((s != -1) && (tables.getLexState(s) == lexState)) {
+        isStart[s] = true;
+      }
+    }
+    int[] nfaStarts = new int[tables.getStateCount()];
+    Arrays.fill(nfaStarts, DEAD);
+    for (int s = 0; s < nfaStarts.length; s++) {
+      if (isStart[s]) {
+        nfaStarts[s] = subsets.startState(s);
+        if (nfaStarts[s] == Subsets.TOO_BIG) {
+          return null;
+        }
+      }
+    }
+    if (!subsets.determinize()) {
+      return null;
+    }
+    return MinimalDfa.minimize(lexState, classCount, subsets.next, subsets.kinds, subsets.count, nfaStarts);
+  }
+
+  // The sets of NFA states reachable from the start states, numbered as they
+  // are found, with their moves.
+  private static final class Subsets {
+
+    static final int                   TOO_BIG = -2;
+
+    private final TokenizerTables      tables;
+    private final int                  lexState;
+    private final int                  classCount;
+    private final long                 maxStates;
+
+    private final Map<IntArray, Integer> numbers = new HashMap<>();
+    private final List<int[]>          sets    = new ArrayList<>();
+    int[]                              next    = new int[0];
+    int[]                              kinds   = new int[0];
+    int                                count;
+
+    private final int[]                mark;
+    private int                        generation;
+
+    Subsets(TokenizerTables tables, int lexState, int classCount, long maxBytes) {
+      this.tables = tables;
+      this.lexState = lexState;
+      this.classCount = classCount;
+      this.maxStates = maxBytes / (8L * Math.max(classCount, 1));
+      this.mark = new int[tables.getStateCount()];
+    }
+
+    int startState(int nfaStartState) {
+      List<Integer> set = new ArrayList<>();
+      set.add(nfaStartState);
+      for (int i = tables.getCompositeStatesStart(nfaStartState); i < tables.getCompositeStatesEnd(nfaStartState);
+          i++) {
+        set.add(tables.getCompositeState(i));
+      }
+      int[] states = new int[set.size()];
+      for (int i = 0; i < states.length; i++) {
+        states[i] = set.get(i);
+      }
+      return number(states);
+    }
+
+    // The number of the set, adding it if it is new.
+    private int number(int[] states) {
+      Arrays.sort(states);
+      int n = 0;
+      for (int i = 0; i < states.length; i++) {
+        if ((i == 0) || (states[i] != states[i - 1])) {
+          states[n++] = states[i];
+        }
+      }
+      if (n == 0) {
+        return DEAD;
+      }
+      IntArray key = new IntArray(Arrays.copyOf(states, n));
+      Integer number = numbers.get(key);
+      if (number != null) {
+        return number;
+      }
+      if (count >= maxStates) {
+        return TOO_BIG;
+      }
+      numbers.put(key, count);
+      sets.add(key.values);
+      return count++;
+    }
+
+    // Computes the moves of every set, adding the sets they lead to. Returns
+    // false if there are too many.
+    boolean determinize() {
+      int[] scratch = new int[16];
+      for (int state = 0; state < count; state++) {
+        if (next.length < (count * classCount)) {
+          int size = Math.max(2 * next.length, count * classCount);
+          next = Arrays.copyOf(next, size);
+          kinds = Arrays.copyOf(kinds, size);
+        }
+        int[] set = sets.get(state);
+        for (int cls = 0; cls < classCount; cls++) {
+          int kind = Integer.MAX_VALUE;
+          int size = 0;
+          generation++;
+          for (int nfaState : set) {
+            if (!tables.canMoveOnClass(nfaState, cls)) {
+              continue;
+            }
+            kind = Math.min(kind, tables.getKind(nfaState));
+            for (int i = tables.getNextStatesStart(nfaState); i < tables.getNextStatesEnd(nfaState); i++) {
+              int target = tables.getNextState(i);
+              if (mark[target] != generation) {
+                mark[target] = generation;
+                if (size == scratch.length) {
+                  scratch = Arrays.copyOf(scratch, 2 * size);
+                }
+                scratch[size++] = target;
+              }
+            }
+          }
+          int target = number(Arrays.copyOf(scratch, size));
+          if (target == TOO_BIG) {
+            return false;
+          }
+          if (next.length < (count * classCount)) {
+            next = Arrays.copyOf(next, 2 * count * classCount);
+            kinds = Arrays.copyOf(kinds, 2 * count * classCount);
+          }
+          next[(state * classCount) + cls] = target;
+          kinds[(state * classCount) + cls] = kind;
+        }
+      }
+      return true;
+    }
+  }
+
+  // An int array with value equality, to key the sets and rows by.
+  private static final class IntArray {
+
+    final int[] values;
+    final int   hash;
+
+    IntArray(int[] values) {
+      this.values = values;
+      this.hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof IntArray) && Arrays.equals(values, ((IntArray) o).values);
+    }
+  }
+
+  // Minimizes the DFA of n states, plus the dead state numbered n, with
+  // Hopcroft's partition refinement.
+  private static MinimalDfa minimize(int lexState, int classCount, int[] next, int[] kinds, int n,
+      int[] nfaStarts) {
+    int size = n + 1;
+    int dead = n;
+
+    // The predecessors of each state on each class, flattened by (class,
+    // target) into [predOffsets[i], predOffsets[i + 1]).
+    int[] predOffsets = new int[(classCount * size) + 1];
+    for (int s = 0; s < size; s++) {
+      for (int cls = 0; cls < classCount; cls++) {
+        predOffsets[(cls * size) + target(next, classCount, dead, s, cls) + 1]++;
+      }
+    }
+    for (int i = 0; i < (classCount * size); i++) {
+      predOffsets[i + 1] += predOffsets[i];
+    }
+    int[] preds = new int[predOffsets[classCount * size]];
+    int[] fill = Arrays.copyOf(predOffsets, classCount * size);
+    for (int s = 0; s < size; s++) {
+      for (int cls = 0; cls < classCount; cls++) {
+        preds[fill[(cls * size) + target(next, classCount, dead, s, cls)]++] = s;
+      }
+    }
+
+    // The blocks are ranges [first[b], end[b]) of elements, with the states
+    // of block b marked in a refinement step moved to its front.
+    int[] elements = new int[size];
+    int[] location = new int[size];
+    int[] blockOf = new int[size];
+    int[] first = new int[size];
+    int[] end = new int[size];
+    int[] marked = new int[size];
+    int blockCount = 0;
+
+    // The initial blocks are the states matching the same kinds on every
+    // class; the dead state matches none.
+    Map<IntArray, Integer> rows = new HashMap<>();
+    int[] rowBlock = new int[size];
+    int[] blockSizes = new int[size];
+    for (int s = 0; s < size; s++) {
+      int[] row = new int[classCount];
+      if (s == dead) {
+        Arrays.fill(row, Integer.MAX_VALUE);
+      } else {
+        System.arraycopy(kinds, s * classCount, row, 0, classCount);
+      }
+      IntArray key = new IntArray(row);
+      Integer block = rows.get(key);
+      if (block == null) {
+        block = blockCount++;
+        rows.put(key, block);
+      }
+      rowBlock[s] = block;
+      blockSizes[block]++;
+    }
+    for (int b = 1; b < blockCount; b++) {
+      first[b] = first[b - 1] + blockSizes[b - 1];
+    }
+    for (int b = 0; b < blockCount; b++) {
+      end[b] = first[b];
+    }
+    for (int s = 0; s < size; s++) {
+      int b = rowBlock[s];
+      blockOf[s] = b;
+      location[s] = end[b];
+      elements[end[b]++] = s;
+    }
+
+    // The splitters still to refine with, as (block, class) pairs.
+    boolean[] waiting = new boolean[size * classCount];
+    int[] work = new int[Math.max(blockCount * classCount, 16)];
+    int workSize = 0;
+    for (int b = 0; b < blockCount; b++) {
+      for (int cls = 0; cls < classCount; cls++) {
+        waiting[(b * classCount) + cls] = true;
+        work[workSize++] = (b * classCount) + cls;
+      }
+    }
+
+    int[] splitters = new int[size];
+    int[] touched = new int[size];
+    while (workSize > 0) {
+      int splitter = work[--workSize];
+      waiting[splitter] = false;
+      int block = splitter / classCount;
+      int cls = splitter % classCount;
+
+      // The predecessors on the class of the states of the block. Each state
+      // has one move per class, so none is found twice.
+      int splitterSize = 0;
+      for (int i = first[block]; i < end[block]; i++) {
+        int s = elements[i];
+        for (int j = predOffsets[(cls * size) + s]; j < predOffsets[(cls * size) + s + 1]; j++) {
+          splitters[splitterSize++] = preds[j];
+        }
+      }
+
+      int touchedCount = 0;
+      for (int i = 0; i < splitterSize; i++) {
+        int s = splitters[i];
+        int b = blockOf[s];
+        int front = first[b] + marked[b];
+        int other = elements[front];
+        elements[location[s]] = other;
+        location[other] = location[s];
+        elements[front] = s;
+        location[s] = front;
+        if (marked[b]++ == 0) {
+          touched[touchedCount++] = b;
+        }
+      }
+
+      for (int t = 0; t < touchedCount; t++) {
+        int b = touched[t];
+        int split = first[b] + marked[b];
+        marked[b] = 0;
+        if (split == end[b]) {
+          continue;
+        }
+        // The marked states move to a new block.
+        int nb = blockCount++;
+        first[nb] = first[b];
+        end[nb] = split;
+        first[b] = split;
+        for (int i = first[nb]; i < end[nb]; i++) {
+          blockOf[elements[i]] = nb;
+        }
+        int smaller = ((end[nb] - first[nb]) <= (end[b] - first[b])) ? nb : b;
+        for (int c = 0; c < classCount; c++) {
+          int add = waiting[(b * classCount) + c] ? nb : smaller;
+          if (!waiting[(add * classCount) + c]) {
+            waiting[(add * classCount) + c] = true;
+            if (workSize == work.length) {
+              work = Arrays.copyOf(work, 2 * workSize);
+            }
+            work[workSize++] = (add * classCount) + c;
+          }
+        }
+      }
+    }
+
+    // Number the blocks breadth first from the start states, leaving out the
+    // one of the dead state.
+    int[] numbers = new int[blockCount];
+    Arrays.fill(numbers, -2);
+    numbers[blockOf[dead]] = DEAD;
+    int[] order = new int[blockCount];
+    int count = 0;
+    for (int s = 0; s < nfaStarts.length; s++) {
+      if ((nfaStarts[s] != DEAD) && (numbers[blockOf[nfaStarts[s]]] == -2)) {
+        numbers[blockOf[nfaStarts[s]]] = count;
+        order[count++] = blockOf[nfaStarts[s]];
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      int s = elements[first[order[i]]];
+      for (int cls = 0; cls < classCount; cls++) {
+        int b = blockOf[target(next, classCount, dead, s, cls)];
+        if (numbers[b] == -2) {
+          numbers[b] = count;
+          order[count++] = b;
+        }
+      }
+    }
+
+    int[] minNext = new int[count * classCount];
+    int[] minKinds = new int[count * classCount];
+    for (int i = 0; i < count; i++) {
+      int s = elements[first[order[i]]];
+      for (int cls = 0; cls < classCount; cls++) {
+        minNext[(i * classCount) + cls] = numbers[blockOf[target(next, classCount, dead, s, cls)]];
+        minKinds[(i * classCount) + cls] = kinds[(s * classCount) + cls];
+      }
+    }
+    int[] startStates = new int[nfaStarts.length];
+    for (int s = 0; s < nfaStarts.length; s++) {
+      startStates[s] = (nfaStarts[s] == DEAD) ? DEAD : numbers[blockOf[nfaStarts[s]]];
+    }
+    return new MinimalDfa(lexState, classCount, minNext, minKinds, startStates);
+  }
+
+  // The move of state s on the class, with DEAD as the state dead.
+  private static int target(int[] next, int classCount, int dead, int s, int cls) {
+    if (s == dead) {
+      return dead;
+    }
+    int t = next[(s * classCount) + cls];
+    return (t == DEAD) ? dead : t;
+  }
+
+  // Writes the DFA for TokenizerDataCache.
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(lexState);
+    out.writeInt(classCount);
+    TokenizerDataCache.writeInts(out, next);
+    TokenizerDataCache.writeInts(out, kinds);
+    TokenizerDataCache.writeInts(out, startStates);
+  }
+
+  // Reads a DFA written by write.
+  static MinimalDfa read(ByteBuffer in) {
+    int lexState = in.getInt();
+    int classCount = in.getInt();
+    return new MinimalDfa(lexState, classCount, TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in),
+        TokenizerDataCache.readInts(in));
+  }
+}
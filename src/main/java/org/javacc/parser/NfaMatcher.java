@@ -0,0 +1,124 @@
+package org.javacc.parser;
+
+// Simulates the NFA in TokenizerTables to find the longest match from a start
+// state. The current and next state sets are sparse sets sized to the number
+// of NFA states and reused across calls, so matching does not allocate.
+public final class NfaMatcher {
+
+  private final TokenizerTables tables;
+
+  private IntSparseSet          curStates;
+  private IntSparseSet          newStates;
+
+  // Result of the last match.
+  private int                   matchedKind = Integer.MAX_VALUE;
+  private int                   matchedEnd  = -1;
+  private int                   scannedEnd  = -1;
+
+  public NfaMatcher(TokenizerTables tables) {
+    this.tables = tables;
+    curStates = new IntSparseSet(tables.getStateCount());
+    newStates = new IntSparseSet(tables.getStateCount());
+  }
+
+  // Matches the longest prefix of the input in [pos, limit) accepted by the NFA
+  // started in nfaStartState (and its composite states).
+  public void match(TokenizerInput input, int pos, int limit, int nfaStartState) {
+    int lexState = begin(pos, nfaStartState);
+    while (!curStates.isEmpty() && (pos < limit)) {
+      pos = step(input, pos, lexState);
+    }
+  }
+
+  // Same, adding the number of active states on each char read to the
+  // histogram. A separate loop, so the one above does not check for metrics
+  // on every char.
+  void match(TokenizerInput input, int pos, int limit, int nfaStartState, long[] histogram) {
+    int lexState = begin(pos, nfaStartState);
+    while (!curStates.isEmpty() && (pos < limit)) {
+      TokenizerMetrics.addActiveStates(histogram, curStates.size());
+      pos = step(input, pos, lexState);
+    }
+  }
+
+  // Same, also counting the chars each state is active on in activeStates,
+  // see TokenizerProfile, and adding to the histogram if it is not null. A
+  // separate loop, so the ones above do not pay for profiling on every state
+  // and char.
+  void matchProfiled(TokenizerInput input, int pos, int limit, int nfaStartState, long[] histogram,
+      long[] activeStates) {
+    int lexState = begin(pos, nfaStartState);
+    while (!curStates.isEmpty() && (pos < limit)) {
+      if (histogram != null) {
+        TokenizerMetrics.addActiveStates(histogram, curStates.size());
+      }
+      for (int j = 0; j < curStates.size(); j++) {
+        activeStates[curStates.get(j)]++;
+      }
+      pos = step(input, pos, lexState);
+    }
+  }
+
+  // Starts a match at pos in the start state and its composite states.
+  // Returns the lexical state of the start state.
+  private int begin(int pos, int nfaStartState) {
+    matchedKind = Integer.MAX_VALUE;
+    matchedEnd = -1;
+    scannedEnd = pos;
+
+    curStates.clear();
+    newStates.clear();
+    // We need to add the composite states first.
+    curStates.add(nfaStartState);
+    for (int i = tables.getCompositeStatesStart(nfaStartState); i < tables.getCompositeStatesEnd(nfaStartState); i++) {
+      curStates.add(tables.getCompositeState(i));
+    }
+    return tables.getLexState(nfaStartState);
+  }
+
+  // Moves the current states on the char at pos, recording a match if one
+  // ends after it. Returns the position after the char.
+  private int step(TokenizerInput input, int pos, int lexState) {
+    IntSparseSet cur = curStates;
+    IntSparseSet nxt = newStates;
+    int kind = Integer.MAX_VALUE;
+    int charClass = tables.getCharClass(lexState, input.charAt(pos));
+    for (int j = 0; j < cur.size(); j++) {
+      int state = cur.get(j);
+      if (tables.canMoveOnClass(state, charClass)) {
+        if (kind > tables.getKind(state)) {
+          kind = tables.getKind(state);
+        }
+        for (int i = tables.getNextStatesStart(state); i < tables.getNextStatesEnd(state); i++) {
+          nxt.add(tables.getNextState(i));
+        }
+      }
+    }
+
+    curStates = nxt;
+    newStates = cur;
+    cur.clear();
+    int end = input.next(pos);
+    if (kind != Integer.MAX_VALUE) {
+      matchedKind = kind;
+      matchedEnd = end;
+    }
+    scannedEnd = end;
+    return end;
+  }
+
+  // Kind of the last match, Integer.MAX_VALUE if nothing matched.
+  public int getMatchedKind() {
+    return matchedKind;
+  }
+
+  // Position after the last char of the last match, -1 if nothing matched.
+  public int getMatchedEnd() {
+    return matchedEnd;
+  }
+
+  // Position after the last char read by the last match.
+  public int getScannedEnd() {
+    return scannedEnd;
+  }
+}
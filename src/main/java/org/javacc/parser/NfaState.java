@@ -31,6 +31,8 @@
 package org.javacc.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -664,6 +666,75 @@ class NfaState {
     return false;
   }
 
+  /**
+   * Returns the chars accepted by CanMoveUsingChar as sorted, disjoint and
+   * non-adjacent inclusive ranges: {lo0, hi0, lo1, hi1, ...}.
+   */
+  private char[] GetMoveRanges() {
+    if (onlyChar == 1) {
+      return new char[] { matchSingleChar, matchSingleChar };
+    }
+
+    char[] ranges = new char[16];
+    int len = 0;
+    int c = 0;
+
+    // ASCII moves are a bit vector, so collect its runs first.
+    while (c < 128) {
+      if ((asciiMoves[c / 64] & (1L << (c % 64))) == 0L) {
+        c++;
+        continue;
+      }
+      int lo = c;
+      while ((c < 128) && ((asciiMoves[c / 64] & (1L << (c % 64))) != 0L)) {
+        c++;
+      }
+      if (len == ranges.length) {
+        ranges = NfaState.ExpandCharArr(ranges, ranges.length);
+      }
+      ranges[len++] = (char) lo;
+      ranges[len++] = (char) (c - 1);
+    }
+
+    // The rest are sorted single chars and sorted ranges, merge them.
+    int i = 0, j = 0;
+    int chars = 0, rangePairs = 0;
+    if (charMoves != null) {
+      while ((chars < charMoves.length) && (charMoves[chars] != 0)) {
+        chars++;
+      }
+    }
+    if (rangeMoves != null) {
+      while ((rangePairs < rangeMoves.length) && (rangeMoves[rangePairs] != 0)) {
+        rangePairs += 2;
+      }
+    }
+    while ((i < chars) || (j < rangePairs)) {
+      char lo, hi;
+      if ((j >= rangePairs) || ((i < chars) && (charMoves[i] < rangeMoves[j]))) {
+        lo = hi = charMoves[i++];
+      } else {
+        lo = rangeMoves[j++];
+        hi = rangeMoves[j++];
+      }
+      if ((len > 0) && (lo <= (ranges[len - 1] + 1))) {
+        if (hi > ranges[len - 1]) {
+          ranges[len - 1] = hi;
+        }
+        continue;
+      }
+      if (len == ranges.length) {
+        ranges = NfaState.ExpandCharArr(ranges, ranges.length);
+      }
+      ranges[len++] = lo;
+      ranges[len++] = hi;
+    }
+
+    char[] ret = new char[len];
+    System.arraycopy(ranges, 0, ret, 0, len);
+    return ret;
+  }
+
   private int MoveFrom(char c, List<NfaState> newStates) {
     if (CanMoveUsingChar(c)) {
       for (int i = next.epsilonMoves.size(); i-- > 0;) {
@@ -959,47 +1030,171 @@ class NfaState {
     }
 
     cleanStates = new NfaState[cleanStateList.size()];
-    Map<Integer, Set<Character>> charsForState = new HashMap<>();
+    Map<Integer, char[]> rangesForState = new HashMap<>();
     for (NfaState s : cleanStateList) {
       assert (cleanStates[s.stateName] == null);
       cleanStates[s.stateName] = s;
+      rangesForState.put(s.stateName, s.GetMoveRanges());
+    }
+    LayOutStates(cleanStates, tokenizerData, lexerContext);
+
+    // The compiled tables hold the same data as the maps, see TokenizerTables.
+    int numStates = cleanStates.length;
+    int[] kinds = new int[numStates];
+    int[] stateLexStates = new int[numStates];
+    long[] asciiMoves = new long[2 * numStates];
+    int[] rangeOffsets = new int[numStates + 1];
+    int[] nextOffsets = new int[numStates + 1];
+    int[] compositeOffsets = new int[numStates + 1];
+    List<char[]> rangeList = new ArrayList<>();
+    List<Set<Integer>> nextList = new ArrayList<>();
+    List<Set<Integer>> compositeList = new ArrayList<>();
+
+    for (int index = 0; index < cleanStates.length; index++) {
+      NfaState s = cleanStates[tokenizerData.getSourceState(index)];
+      char[] ranges = rangesForState.get(s.stateName);
       Set<Character> chars = new TreeSet<>();
-      for (int c = 0; c <= Character.MAX_VALUE; c++) {
-        if (s.CanMoveUsingChar((char) c)) {
+      for (int i = 0; i < ranges.length; i += 2) {
+        for (int c = ranges[i]; c <= ranges[i + 1]; c++) {
           chars.add((char) c);
         }
       }
-      charsForState.put(s.stateName, chars);
-    }
 
-    for (NfaState s : cleanStates) {
       Set<Integer> nextStates = new TreeSet<>();
       if (s.next != null) {
         for (NfaState next : s.next.epsilonMoveArray) {
-          nextStates.add(next.stateName);
+          nextStates.add(LaidOutState(next.stateName, lexerContext));
         }
       }
 
+      // In the order of the layout, so the hottest states come first.
       Set<Integer> composite = new TreeSet<>();
       if (s.isComposite) {
         for (NfaState c : s.compositeStateSet) {
-          composite.add(c.stateName);
+          composite.add(LaidOutState(c.stateName, lexerContext));
+        }
+      }
+
+      tokenizerData.addNfaState(index, chars, nextStates, composite, s.kindToPrint);
+
+      kinds[index] = s.kindToPrint;
+      stateLexStates[index] = s.lexState;
+      asciiMoves[2 * index] = s.asciiMoves[0];
+      asciiMoves[(2 * index) + 1] = s.asciiMoves[1];
+      if (s.onlyChar == 1) {
+        asciiMoves[2 * index] = asciiMoves[(2 * index) + 1] = 0L;
+        if (s.matchSingleChar < 128) {
+          asciiMoves[(2 * index) + (s.matchSingleChar / 64)] = 1L << (s.matchSingleChar % 64);
         }
       }
+      rangeList.add(ranges);
+      nextList.add(nextStates);
+      compositeList.add(composite);
+    }
 
-      tokenizerData.addNfaState(s.stateName, charsForState.get(s.stateName), nextStates, composite, s.kindToPrint);
+    for (int i = 0; i < numStates; i++) {
+      rangeOffsets[i + 1] = rangeOffsets[i] + rangeList.get(i).length;
+      nextOffsets[i + 1] = nextOffsets[i] + CountStates(nextList.get(i), numStates);
+      compositeOffsets[i + 1] = compositeOffsets[i] + CountStates(compositeList.get(i), numStates);
+    }
+    char[] ranges = new char[rangeOffsets[numStates]];
+    int[] next = new int[nextOffsets[numStates]];
+    int[] composite = new int[compositeOffsets[numStates]];
+    for (int i = 0; i < numStates; i++) {
+      System.arraycopy(rangeList.get(i), 0, ranges, rangeOffsets[i], rangeList.get(i).length);
+      CopyStates(nextList.get(i), numStates, next, nextOffsets[i]);
+      CopyStates(compositeList.get(i), numStates, composite, compositeOffsets[i]);
     }
 
     Map<Integer, Integer> initStates = new HashMap<>();
+    int[] initialStates = new int[tokenizerData.lexStateNames.length];
+    int[] wildcardKinds = new int[tokenizerData.lexStateNames.length];
     for (int l = 0; l < tokenizerData.lexStateNames.length; l++) {
       if (lexerContext.initialStates.get(l) == null) {
         initStates.put(l, -1);
       } else {
-        initStates.put(l, lexerContext.initialStates.get(l).stateName);
+        initStates.put(l, LaidOutState(lexerContext.initialStates.get(l).stateName, lexerContext));
       }
+      initialStates[l] = initStates.get(l);
+      Integer wildcardKind = lexerContext.matchAnyChar.get(l);
+      wildcardKinds[l] = (wildcardKind == null) ? Integer.MAX_VALUE : wildcardKind;
     }
     tokenizerData.setInitialStates(initStates);
     tokenizerData.setWildcardKind(lexerContext.matchAnyChar);
+    tokenizerData.setTables(new TokenizerTables(kinds, asciiMoves, rangeOffsets, ranges, nextOffsets, next,
+        compositeOffsets, composite, stateLexStates, initialStates, wildcardKinds));
+  }
+
+  /*
+   * With a tokenizer profile, numbers the states of each lexical state by
+   * the chars they were active on, hottest first, so the hot states are next
+   * to each other in the tables and come first in the next and composite
+   * state lists. The states of a lexical state keep their range of numbers.
+   */
+  private static void LayOutStates(NfaState[] cleanStates, TokenizerData tokenizerData, LexerContext lexerContext) {
+    final TokenizerProfile profile = lexerContext.profile;
+    lexerContext.stateLayout = null;
+    if (profile == null) {
+      return;
+    }
+    if (profile.getStateCount() != cleanStates.length) {
+      lexerContext.context.errors().warning("The tokenizer profile is of " + profile.getStateCount()
+          + " NFA states instead of " + cleanStates.length + ", the states are not laid out by it.");
+      return;
+    }
+    Integer[] sourceStates = new Integer[cleanStates.length];
+    for (int i = 0; i < sourceStates.length; i++) {
+      sourceStates[i] = i;
+    }
+    for (int l = 0; l < tokenizerData.lexStateNames.length; l++) {
+      int offset = lexerContext.nfaStateOffset.get(l);
+      int count = lexerContext.statesForLexicalState.get(l).size();
+      Arrays.sort(sourceStates, offset, offset + count, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer s1, Integer s2) {
+          // Stable on ties, so states never hit keep their order.
+          int byHits = Long.compare(profile.getStateHits(s2), profile.getStateHits(s1));
+          return (byHits != 0) ? byHits : Integer.compare(s1, s2);
+        }
+      });
+    }
+    int[] layout = new int[cleanStates.length];
+    int[] sources = new int[cleanStates.length];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = sourceStates[i];
+      layout[sources[i]] = i;
+    }
+    lexerContext.stateLayout = layout;
+    tokenizerData.setSourceStates(sources);
+  }
+
+  // The number of the state in the tokenizer data, see LayOutStates.
+  static int LaidOutState(int stateName, LexerContext lexerContext) {
+    int[] layout = lexerContext.stateLayout;
+    if ((layout == null) || (stateName < 0) || (stateName >= layout.length)) {
+      return stateName;
+    }
+    return layout[stateName];
+  }
+
+  // Next and composite states may name states that were dropped from the
+  // tables, those are left out of the compiled lists.
+  private static int CountStates(Set<Integer> states, int numStates) {
+    int cnt = 0;
+    for (int s : states) {
+      if ((s >= 0) && (s < numStates)) {
+        cnt++;
+      }
+    }
+    return cnt;
+  }
+
+  private static void CopyStates(Set<Integer> states, int numStates, int[] dest, int offset) {
+    for (int s : states) {
+      if ((s >= 0) && (s < numStates)) {
+        dest[offset++] = s;
+      }
+    }
   }
 
   static NfaState getNfaState(int index, LexerContext lexerContext) {
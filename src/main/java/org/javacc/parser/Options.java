@@ -126,6 +126,21 @@ public class Options {
   
   																				
   public static final String USEROPTION__USER_TOKEN_MANAGER                	= "USER_TOKEN_MANAGER";
+
+  public static final String USEROPTION__MINIMIZE_DFA                      	= "MINIMIZE_DFA";
+  public static final String USEROPTION__CODE_POINTS                       	= "CODE_POINTS";
+  public static final String USEROPTION__TOKENIZER_PROFILE                 	= "TOKENIZER_PROFILE";
+
+  public static final String USEROPTION__INTERPRETER_LAZY_DFA              	= "INTERPRETER_LAZY_DFA";
+  public static final String USEROPTION__INTERPRETER_DFA_CACHE_SIZE        	= "INTERPRETER_DFA_CACHE_SIZE";
+  public static final String USEROPTION__INTERPRETER_COMPILE_DFA           	= "INTERPRETER_COMPILE_DFA";
+  public static final String USEROPTION__INTERPRETER_MMAP_UTF8             	= "INTERPRETER_MMAP_UTF8";
+  public static final String USEROPTION__INTERPRETER_THREADS               	= "INTERPRETER_THREADS";
+  public static final String USEROPTION__INTERPRETER_START_PRODUCTION      	= "INTERPRETER_START_PRODUCTION";
+  public static final String USEROPTION__INTERPRETER_TOKENIZER_CACHE       	= "INTERPRETER_TOKENIZER_CACHE";
+  public static final String USEROPTION__INTERPRETER_METRICS               	= "INTERPRETER_METRICS";
+  public static final String USEROPTION__INTERPRETER_PROFILE               	= "INTERPRETER_PROFILE";
+  public static final String USEROPTION__INTERPRETER_ERROR_RECOVERY        	= "INTERPRETER_ERROR_RECOVERY";
     
   /**
    * 2013/07/22 -- GWT Compliant Output -- no external dependencies on GWT, but
@@ -214,6 +229,21 @@ public class Options {
 
     temp.add(new OptionInfo(Options.USEROPTION__TOKEN_MANAGER_USES_PARSER, OptionType.BOOLEAN, Boolean.FALSE));
 
+    temp.add(new OptionInfo(Options.USEROPTION__MINIMIZE_DFA, OptionType.BOOLEAN, Boolean.FALSE));
+    temp.add(new OptionInfo(Options.USEROPTION__CODE_POINTS, OptionType.BOOLEAN, Boolean.FALSE));
+    temp.add(new OptionInfo(Options.USEROPTION__TOKENIZER_PROFILE, OptionType.STRING, ""));
+
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_LAZY_DFA, OptionType.BOOLEAN, Boolean.TRUE));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_DFA_CACHE_SIZE, OptionType.INTEGER, Integer.valueOf(1024)));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_COMPILE_DFA, OptionType.BOOLEAN, Boolean.FALSE));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_MMAP_UTF8, OptionType.BOOLEAN, Boolean.FALSE));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_THREADS, OptionType.INTEGER, Integer.valueOf(1)));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_START_PRODUCTION, OptionType.STRING, ""));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_TOKENIZER_CACHE, OptionType.STRING, ""));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_METRICS, OptionType.STRING, ""));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_PROFILE, OptionType.STRING, ""));
+    temp.add(new OptionInfo(Options.USEROPTION__INTERPRETER_ERROR_RECOVERY, OptionType.BOOLEAN, Boolean.FALSE));
+
     userOptions = Collections.unmodifiableSet(temp);
   }
 
@@ -1069,6 +1099,143 @@ public class Options {
     }
   }
 
+  /**
+   * Whether the lexer builds the minimal DFA of each lexical state into the
+   * tokenizer data.
+   *
+   * @return The requested minimize DFA value.
+   */
+  public static boolean getMinimizeDfa() {
+    return Options.booleanValue(Options.USEROPTION__MINIMIZE_DFA);
+  }
+
+  /**
+   * Whether the lexer works on code points rather than chars: negated
+   * character lists also match the chars outside the BMP, as surrogate pairs,
+   * and the interpreter steps over a whole pair on errors. Character lists
+   * with chars outside the BMP match them as code points either way.
+   *
+   * @return The requested code points value.
+   */
+  public static boolean getCodePoints() {
+    return Options.booleanValue(Options.USEROPTION__CODE_POINTS);
+  }
+
+  /**
+   * Get the file of the tokenizer profile the lexer orders the literals and
+   * lays out the NFA states by, see INTERPRETER_PROFILE. If empty, they are
+   * in the order of the grammar.
+   *
+   * @return The requested tokenizer profile file.
+   */
+  public static String getTokenizerProfile() {
+    return Options.stringValue(Options.USEROPTION__TOKENIZER_PROFILE);
+  }
+
+  /**
+   * Find the interpreter lazy DFA value.
+   *
+   * @return The requested interpreter lazy DFA value.
+   */
+  public static boolean getInterpreterLazyDfa() {
+    return Options.booleanValue(Options.USEROPTION__INTERPRETER_LAZY_DFA);
+  }
+
+  /**
+   * Get the size in kilobytes of the lazy DFA cache used by the interpreter
+   * for each lexical state.
+   *
+   * @return The requested cache size.
+   */
+  public static int getInterpreterDfaCacheSize() {
+    return Options.intValue(Options.USEROPTION__INTERPRETER_DFA_CACHE_SIZE);
+  }
+
+  /**
+   * Whether the interpreter compiles the minimal DFAs to bytecode. Lexical
+   * states without a minimal DFA, see MINIMIZE_DFA, are matched as before.
+   *
+   * @return The requested interpreter compile DFA value.
+   */
+  public static boolean getInterpreterCompileDfa() {
+    return Options.booleanValue(Options.USEROPTION__INTERPRETER_COMPILE_DFA);
+  }
+
+  /**
+   * Whether the interpreter maps the input file into memory and tokenizes its
+   * UTF-8 bytes directly instead of reading it through a Reader.
+   *
+   * @return The requested interpreter mmap UTF-8 value.
+   */
+  public static boolean getInterpreterMmapUtf8() {
+    return Options.booleanValue(Options.USEROPTION__INTERPRETER_MMAP_UTF8);
+  }
+
+  /**
+   * Get the number of threads the interpreter tokenizes on. With more than one
+   * the input is split into chunks that are tokenized in parallel.
+   *
+   * @return The requested number of threads.
+   */
+  public static int getInterpreterThreads() {
+    return Options.intValue(Options.USEROPTION__INTERPRETER_THREADS);
+  }
+
+  /**
+   * Get the production the interpreter parses the input with. If empty, the
+   * input is only tokenized.
+   *
+   * @return The requested start production.
+   */
+  public static String getInterpreterStartProduction() {
+    return Options.stringValue(Options.USEROPTION__INTERPRETER_START_PRODUCTION);
+  }
+
+  /**
+   * Get the directory the interpreter caches the tokenizer data of grammars
+   * in. If empty, the tokenizer data is built on every run.
+   *
+   * @return The requested cache directory.
+   */
+  public static String getInterpreterTokenizerCache() {
+    return Options.stringValue(Options.USEROPTION__INTERPRETER_TOKENIZER_CACHE);
+  }
+
+  /**
+   * Get the file the interpreter writes the tokenizer metrics to as JSON, "-"
+   * for standard error. If empty, no metrics are collected. Only the tokenizer
+   * on a single thread collects them, not the parser of
+   * INTERPRETER_START_PRODUCTION.
+   *
+   * @return The requested metrics file.
+   */
+  public static String getInterpreterMetrics() {
+    return Options.stringValue(Options.USEROPTION__INTERPRETER_METRICS);
+  }
+
+  /**
+   * Get the file the interpreter records the tokenizer profile to, adding to
+   * the counts already in it for the same grammar. If empty, no profile is
+   * recorded. Only the tokenizer on a single thread records it, not the
+   * parser of INTERPRETER_START_PRODUCTION.
+   *
+   * @return The requested profile file.
+   */
+  public static String getInterpreterProfile() {
+    return Options.stringValue(Options.USEROPTION__INTERPRETER_PROFILE);
+  }
+
+  /**
+   * Find out if the interpreter goes on after a char no token matches,
+   * reporting the chars up to the next one a token can start with as one
+   * error, rather than stopping there.
+   *
+   * @return The requested error recovery value.
+   */
+  public static boolean getInterpreterErrorRecovery() {
+    return Options.booleanValue(Options.USEROPTION__INTERPRETER_ERROR_RECOVERY);
+  }
+
   /**
    * Gets all the user options (in order)
    *
@@ -0,0 +1,379 @@
+package org.javacc.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Tokenizes large inputs in parallel. The input is split into chunks that are
+ * tokenized on a fork-join pool, each starting speculatively in the default
+ * lexical state at the start of the chunk. The chunks are then stitched
+ * together in order: from the end of the last confirmed token, the next chunk
+ * is re-lexed in the confirmed lexical state until a token starts at the same
+ * offset and in the same lexical state as one of the speculative tokens, from
+ * where on both streams are the same. If the lexical state of a chunk was
+ * mispredicted, the streams may never meet and the whole chunk is re-lexed.
+ *
+ * The matches are pushed to the sink in order from the calling thread. Errors
+ * are recorded while tokenizing in parallel, so the chars in error are always
+ * skipped and only the sink decides whether to stop after them. The sink gets
+ * offsets only: lines and images are not available from a Tokenizer.
+ *
+ * Only a window of twice as many chunks as the pool has threads is tokenized
+ * ahead of the stitching, so the speculative matches held in memory grow with
+ * the number of threads rather than with the size of the input.
+ *
+ * An instance keeps the tokenizers of the chunks and one for stitching, so
+ * their lazily built DFAs stay warm across chunks and calls. It must not be
+ * used by more than one thread at a time.
+ */
+public final class ParallelTokenizer {
+
+  // Default number of chars or bytes per chunk.
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  private final TokenizerSnapshot        snapshot;
+  private final ForkJoinPool             pool;
+  private final int                      chunkSize;
+
+  // Tokenizers for the chunks, taken by a task while it runs. A task finding
+  // none creates one rather than waiting.
+  private final Queue<Tokenizer>         tokenizers;
+  private final Tokenizer                stitchTokenizer;
+
+  // The options of the tokenizers, read by the constructor since the global
+  // options are not safe to read from the worker threads.
+  private final boolean                  lazyDfa;
+  private final long                     dfaCacheBytes;
+  private final boolean                  compileDfa;
+  private final boolean                  errorRecovery;
+
+  // Records the line starts if not null.
+  private LineMap                        lineMap;
+
+  public ParallelTokenizer(TokenizerData tokenizerData) {
+    this(tokenizerData, ForkJoinPool.commonPool(), ParallelTokenizer.DEFAULT_CHUNK_SIZE);
+  }
+
+  public ParallelTokenizer(TokenizerData tokenizerData, ForkJoinPool pool, int chunkSize) {
+    this.snapshot = tokenizerData.freeze();
+    this.pool = pool;
+    this.chunkSize = Math.max(chunkSize, 16);
+    this.lazyDfa = Options.getInterpreterLazyDfa();
+    this.dfaCacheBytes = Options.getInterpreterDfaCacheSize() * 1024L;
+    this.compileDfa = Options.getInterpreterCompileDfa();
+    this.errorRecovery = Options.getInterpreterErrorRecovery();
+    this.tokenizers = new ConcurrentLinkedQueue<Tokenizer>();
+    for (int i = 0; i < pool.getParallelism(); i++) {
+      tokenizers.add(newTokenizer());
+    }
+    this.stitchTokenizer = newTokenizer();
+  }
+
+  private Tokenizer newTokenizer() {
+    Tokenizer tokenizer = new Tokenizer(snapshot, lazyDfa, dfaCacheBytes, compileDfa);
+    tokenizer.setErrorRecovery(errorRecovery);
+    return tokenizer;
+  }
+
+  /**
+   * Records the line starts in lineMap while tokenizing, or stops recording if
+   * it is null. Each chunk finds the lines that start in it, and they are
+   * added before its matches are pushed to the sink, so the sink can look up
+   * the line of any match it gets. A map holds the lines of a single input.
+   */
+  public void setLineMap(LineMap lineMap) {
+    this.lineMap = lineMap;
+  }
+
+  // Opens the input at a chunk start.
+  private interface ChunkInput {
+    TokenizerInput open(long start) throws IOException;
+  }
+
+  public boolean tokenize(final CharSequence input, TokenSink sink) {
+    long[] starts = new long[(input.length() + chunkSize - 1) / chunkSize];
+    for (int k = 0; k < starts.length; k++) {
+      starts[k] = (long) k * chunkSize;
+    }
+    try {
+      return tokenize(new ChunkInput() {
+        @Override
+        public TokenizerInput open(long start) {
+          return new CharWindow(input, (int) start);
+        }
+      }, starts, sink);
+    } catch (IOException e) {
+      throw new Error(); // Should never come here
+    }
+  }
+
+  /**
+   * Tokenizes the UTF-8 bytes of a file, which is mapped into memory a window
+   * at a time. Offsets are byte offsets.
+   */
+  public boolean tokenize(final FileChannel input, TokenSink sink) throws IOException {
+    List<Long> starts = new ArrayList<Long>();
+    ByteBuffer buf = ByteBuffer.allocate(1);
+    for (long start = 0; start < input.size(); start += chunkSize) {
+      // Move the chunk start to the start of a char.
+      while ((start < input.size()) && ((readByte(input, start, buf) & 0xC0) == 0x80)) {
+        start++;
+      }
+      if (starts.isEmpty() || (start > starts.get(starts.size() - 1))) {
+        starts.add(start);
+      }
+    }
+    long[] chunkStarts = new long[starts.size()];
+    for (int k = 0; k < chunkStarts.length; k++) {
+      chunkStarts[k] = starts.get(k);
+    }
+    final int windowSize = (int) Math.min(Utf8Input.DEFAULT_WINDOW_SIZE, 2L * chunkSize);
+    return tokenize(new ChunkInput() {
+      @Override
+      public TokenizerInput open(long start) throws IOException {
+        return new Utf8Input(input, start, windowSize);
+      }
+    }, chunkStarts, sink);
+  }
+
+  private static int readByte(FileChannel channel, long position, ByteBuffer buf) throws IOException {
+    buf.clear();
+    channel.read(buf, position);
+    return buf.get(0);
+  }
+
+  private boolean tokenize(ChunkInput input, long[] starts, TokenSink sink) throws IOException {
+    int window = 2 * pool.getParallelism();
+    ArrayDeque<ForkJoinTask<Chunk>> tasks = new ArrayDeque<ForkJoinTask<Chunk>>();
+    int submitted = 0;
+    try {
+      Stitcher stitcher = new Stitcher(stitchTokenizer, sink);
+      for (int k = 0; k < starts.length; k++) {
+        for (; (submitted < starts.length) && (submitted < (k + window)); submitted++) {
+          long end = ((submitted + 1) < starts.length) ? starts[submitted + 1] : Long.MAX_VALUE;
+          tasks.add(pool.submit(new Chunk(input, starts[submitted], end)));
+        }
+        // The matches of the chunk can be collected once stitched.
+        Chunk chunk = tasks.poll().join();
+        if (lineMap != null) {
+          for (int i = 0; i < chunk.lineStartCount; i++) {
+            lineMap.addLineStart(chunk.lineStarts[i]);
+          }
+        }
+        if (!stitcher.stitch(chunk, input)) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      for (ForkJoinTask<Chunk> task : tasks) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  // The speculative matches of a chunk: the ones that start in [start, end)
+  // when tokenizing from start in the default lexical state.
+  private final class Chunk implements TokenSink, Callable<Chunk> {
+
+    final long          start;
+    final long          end;
+    private ChunkInput  input;
+    private Tokenizer   tokenizer;
+
+    final TokenBuffer   matches;
+
+    // The offsets of the lines that start in (start, end], if lines are
+    // recorded.
+    long[]              lineStarts = new long[0];
+    int                 lineStartCount;
+
+    Chunk(ChunkInput input, long start, long end) {
+      this.input = input;
+      this.start = start;
+      this.end = end;
+      this.matches = new TokenBuffer(snapshot, start, false);
+    }
+
+    @Override
+    public Chunk call() throws IOException {
+      tokenizer = tokenizers.poll();
+      if (tokenizer == null) {
+        tokenizer = newTokenizer();
+      }
+      try {
+        tokenizer.tokenize(input.open(start), snapshot.getDefaultLexState(), this);
+        if (lineMap != null) {
+          findLineStarts(input.open(start));
+        }
+      } finally {
+        tokenizers.add(tokenizer);
+        tokenizer = null;
+        input = null;
+      }
+      return this;
+    }
+
+    // Finds the lines that start in (start, end] the way LineMap.of does: after
+    // a "\n", or after a "\r" not followed by a "\n", if a char follows.
+    private void findLineStarts(TokenizerInput input) throws IOException {
+      input.fill(0);
+      int pos = 0;
+      while (true) {
+        if (pos == input.limit()) {
+          if (!input.fill(pos)) {
+            return;
+          }
+          pos = 0;
+          continue;
+        }
+        if ((input.getBase() + pos) >= end) {
+          return;
+        }
+        char c = input.charAt(pos);
+        int next = input.next(pos);
+        if ((c != '\n') && (c != '\r')) {
+          pos = next;
+          continue;
+        }
+        if ((next == input.limit()) && !input.isEof()) {
+          // Keep the line end to look at the char after it.
+          input.fill(pos);
+          pos = 0;
+          continue;
+        }
+        if ((next < input.limit()) && ((c == '\n') || (input.charAt(next) != '\n'))) {
+          if (lineStartCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, Math.max(16, 2 * lineStartCount));
+          }
+          lineStarts[lineStartCount++] = input.getBase() + next;
+        }
+        pos = next;
+      }
+    }
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      add(kind, start, end, lexState);
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      add(TokenBuffer.ERROR, start, end, lexState);
+      return true;
+    }
+
+    private void add(int kind, long start, long end, int lexState) {
+      if (start >= this.end) {
+        tokenizer.stop();
+        return;
+      }
+      matches.add(kind, start, end, lexState);
+    }
+
+    // Index of the match that starts at offset in lexState, -1 if none.
+    int find(long offset, int lexState) {
+      int i = matches.indexOf(offset);
+      return ((i >= 0) && (matches.getLexState(i) == lexState)) ? i : -1;
+    }
+  }
+
+  // Pushes the confirmed matches to the sink, re-lexing where the speculative
+  // ones of a chunk do not follow from the confirmed ones.
+  private final class Stitcher implements TokenSink {
+
+    private final Tokenizer tokenizer;
+    private final TokenSink sink;
+
+    // End of the last confirmed match and the lexical state after it.
+    private long            confirmedEnd;
+    private int             lexState = snapshot.getDefaultLexState();
+
+    private Chunk           chunk;
+    private int             resumeIndex;
+    private boolean         sinkStopped;
+
+    Stitcher(Tokenizer tokenizer, TokenSink sink) {
+      this.tokenizer = tokenizer;
+      this.sink = sink;
+    }
+
+    // Pushes the matches of the chunk. Returns false if the sink stopped.
+    boolean stitch(Chunk chunk, ChunkInput input) throws IOException {
+      int i = chunk.find(confirmedEnd, lexState);
+      if ((i == -1) && (confirmedEnd < chunk.end)) {
+        // Mispredicted, or the previous chunk ended in the middle of a match.
+        this.chunk = chunk;
+        resumeIndex = -1;
+        tokenizer.tokenize(input.open(confirmedEnd), lexState, this);
+        this.chunk = null;
+        if (sinkStopped) {
+          return false;
+        }
+        i = resumeIndex;
+      }
+      if (i == -1) {
+        return true;
+      }
+      TokenBuffer matches = chunk.matches;
+      for (; i < matches.size(); i++) {
+        if (!confirm(matches.getKind(i), matches.getStart(i), matches.getEnd(i), matches.getLexState(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      relexed(kind, start, end, lexState);
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      return relexed(TokenBuffer.ERROR, start, end, lexState);
+    }
+
+    private boolean relexed(int kind, long start, long end, int lexState) {
+      if (start >= chunk.end) {
+        tokenizer.stop();
+        return false;
+      }
+      int i = chunk.find(start, lexState);
+      if (i != -1) {
+        // The streams meet, the rest of the chunk is confirmed.
+        resumeIndex = i;
+        tokenizer.stop();
+        return false;
+      }
+      if (!confirm(kind, start, end, lexState)) {
+        sinkStopped = true;
+        tokenizer.stop();
+        return false;
+      }
+      return true;
+    }
+
+    private boolean confirm(int kind, long start, long end, int lexState) {
+      confirmedEnd = end;
+      this.lexState = lexState;
+      if (kind == TokenBuffer.ERROR) {
+        return sink.error(start, end, lexState);
+      }
+      sink.token(kind, start, end, lexState);
+      int newLexState = snapshot.getMatchInfo(kind).newLexState;
+      this.lexState = (newLexState != -1) ? newLexState : lexState;
+      return true;
+    }
+  }
+}
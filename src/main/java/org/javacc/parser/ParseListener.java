@@ -0,0 +1,25 @@
+package org.javacc.parser;
+
+/**
+ * Receives the structure of the input from a {@link ParserInterpreter} as it
+ * is parsed. Calls are made in input order and never retracted, since the
+ * interpreter only commits to a choice after its lookahead has been decided.
+ */
+public interface ParseListener {
+
+  /**
+   * A production was entered.
+   */
+  void enterProduction(String name);
+
+  /**
+   * A token of the given kind was consumed, spanning [start, end) of the
+   * input. The start includes the chars of any preceding MORE matches.
+   */
+  void token(int kind, long start, long end);
+
+  /**
+   * The production entered last was completed.
+   */
+  void exitProduction(String name);
+}
@@ -0,0 +1,546 @@
+package org.javacc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses input by executing the BNF productions of a {@link ParserData}
+ * directly over the tokens of the matching {@link TokenizerData}, without
+ * generating a parser.
+ *
+ * Every choice point (an alternative of a choice, or the body of a loop or
+ * optional expansion) is decided the way the generated parser decides it.
+ * For a bounded LOOKAHEAD the token sequences that can start the lookahead
+ * expansion are computed once up front and kept as a trie, so a decision
+ * walks at most k tokens. Unbounded or very large lookaheads are decided by
+ * scanning ahead over the tokens with backtracking, like the jj_3 routines of
+ * a generated parser. Semantic lookahead and JAVACODE productions run user
+ * code, so they are not supported: the constructor rejects a grammar whose
+ * BNF productions use them.
+ *
+ * An instance must not be used by more than one thread at a time.
+ */
+public final class ParserInterpreter {
+
+  // Largest LOOKAHEAD amount and number of token sequences decided by a trie.
+  private static final int             MAX_TABLE_LOOKAHEAD = 4;
+  private static final int             MAX_TABLE_SIZE      = 1 << 12;
+
+  private final ParserData             parserData;
+  private final TokenizerData          tokenizerData;
+  private final Tokenizer              tokenizer;
+
+  // The match type of each kind.
+  private final TokenizerData.MatchType[] matchTypes;
+
+  // The decision of each choice point, keyed by the expansion it selects.
+  private final Map<Expansion, Decision> decisions = new IdentityHashMap<Expansion, Decision>();
+
+  // The tokens of the input being parsed, ending with EOF.
+  private final TokenBuffer            tokens;
+  private CharSequence                 input;
+  private ParseListener                listener;
+
+  // Index of the next token to consume.
+  private int                          pos;
+
+  // Index of the next token to scan and the index at which a scan succeeds.
+  private int                          scanPos;
+  private int                          scanEnd;
+
+  /**
+   * @throws IllegalArgumentException if a BNF production has a semantic
+   *         lookahead or calls a JAVACODE production, listing them
+   */
+  public ParserInterpreter(ParserData parserData, TokenizerData tokenizerData) {
+    List<String> unsupported = new ArrayList<String>();
+    for (NormalProduction production : parserData.bnfproductions) {
+      if (production instanceof BNFProduction) {
+        List<String> uses = new ArrayList<String>();
+        ParserInterpreter.findUnsupported(production.getExpansion(), uses);
+        if (!uses.isEmpty()) {
+          unsupported.add(production.getLhs() + " (" + String.join(", ", uses) + ")");
+        }
+      }
+    }
+    if (!unsupported.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Semantic lookahead and JAVACODE productions can not be interpreted, used by: "
+              + String.join(", ", unsupported));
+    }
+    this.parserData = parserData;
+    this.tokenizerData = tokenizerData;
+    this.tokenizer = new Tokenizer(tokenizerData);
+    this.tokens = new TokenBuffer(tokenizerData);
+    int maxKind = 0;
+    for (int kind : tokenizerData.allMatches.keySet()) {
+      maxKind = Math.max(maxKind, kind);
+    }
+    matchTypes = new TokenizerData.MatchType[maxKind + 1];
+    for (Map.Entry<Integer, TokenizerData.MatchInfo> entry : tokenizerData.allMatches.entrySet()) {
+      matchTypes[entry.getKey()] = entry.getValue().matchType;
+    }
+    for (NormalProduction production : parserData.bnfproductions) {
+      if (production instanceof BNFProduction) {
+        addDecisions(production.getExpansion());
+      }
+    }
+  }
+
+  public ParserData getParserData() {
+    return parserData;
+  }
+
+  /**
+   * Parses the input starting with the named production. The structure is
+   * pushed to the listener, which may be null to only validate the input. Like
+   * a generated parser, this does not require the production to consume all
+   * the input unless it ends with &lt;EOF&gt;.
+   */
+  public void parse(String production, CharSequence input, ParseListener listener) throws ParseException {
+    NormalProduction start = parserData.productionTable.get(production);
+    if (!(start instanceof BNFProduction)) {
+      throw new IllegalArgumentException("No BNF production named " + production);
+    }
+    this.input = input;
+    this.listener = listener;
+    try {
+      tokenize(input);
+      pos = 0;
+      parseProduction(start);
+    } finally {
+      this.input = null;
+      this.listener = null;
+    }
+  }
+
+  // Collects the tokens of the input, dropping SKIP and SPECIAL_TOKEN
+  // matches and extending tokens over the MORE matches before them. Input
+  // ending in MORE matches is an error.
+  private void tokenize(CharSequence input) throws ParseException {
+    tokens.clear();
+    final long[] error = { -1 };
+    TokenAssembler assembler = new TokenAssembler(tokenizerData, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        if (matchTypes[kind] == TokenizerData.MatchType.TOKEN) {
+          tokens.add(kind, start, end, lexState);
+        }
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        error[0] = start;
+        return false;
+      }
+    });
+    if (tokenizer.tokenize(input, assembler)) {
+      assembler.finish();
+    }
+    if (error[0] != -1) {
+      throw new ParseException("Lexical error at " + position(error[0]) + ". Encountered: \""
+          + input.subSequence((int) error[0], (int) error[0] + 1) + "\"");
+    }
+    tokens.add(0, input.length(), input.length(), tokenizerData.defaultLexState);
+  }
+
+  // The kind of the token at index i. EOF repeats past the end of the input.
+  private int kindAt(int i) {
+    return tokens.getKind(Math.min(i, tokens.size() - 1));
+  }
+
+  private void parseProduction(NormalProduction production) throws ParseException {
+    if (listener != null) {
+      listener.enterProduction(production.getLhs());
+    }
+    parse(production.getExpansion());
+    if (listener != null) {
+      listener.exitProduction(production.getLhs());
+    }
+  }
+
+  private void parse(Expansion exp) throws ParseException {
+    if (exp instanceof RegularExpression) {
+      int kind = ((RegularExpression) exp).ordinal;
+      if (kindAt(pos) != kind) {
+        throw error(new int[] { kind });
+      }
+      if (listener != null) {
+        listener.token(kind, tokens.getStart(pos), tokens.getEnd(pos));
+      }
+      pos = Math.min(pos + 1, tokens.size() - 1);
+    } else if (exp instanceof Sequence) {
+      for (Expansion unit : ((Sequence) exp).units) {
+        parse(unit);
+      }
+    } else if (exp instanceof Choice) {
+      Expansion selected = select(exp);
+      if (selected == null) {
+        throw error(expectedKinds(exp));
+      }
+      parse(selected);
+    } else if (exp instanceof ZeroOrMore) {
+      Expansion nested = ((ZeroOrMore) exp).getExpansion();
+      for (Expansion selected = select(nested); selected != null; selected = select(nested)) {
+        parse(selected);
+      }
+    } else if (exp instanceof OneOrMore) {
+      Expansion nested = ((OneOrMore) exp).getExpansion();
+      parse(nested);
+      for (Expansion selected = select(nested); selected != null; selected = select(nested)) {
+        parse(selected);
+      }
+    } else if (exp instanceof ZeroOrOne) {
+      Expansion selected = select(((ZeroOrOne) exp).getExpansion());
+      if (selected != null) {
+        parse(selected);
+      }
+    } else if (exp instanceof NonTerminal) {
+      parseProduction(((NonTerminal) exp).getProd());
+    } else if (exp instanceof TryBlock) {
+      parse(((TryBlock) exp).exp);
+    }
+    // Actions and lookaheads within a sequence do not consume anything.
+  }
+
+  // The expansion to parse next: the first alternative of a choice whose
+  // lookahead succeeds, or the expansion itself if its lookahead succeeds.
+  // Null if none does.
+  private Expansion select(Expansion exp) {
+    if (exp instanceof Choice) {
+      for (Expansion alternative : ((Choice) exp).getChoices()) {
+        if (decisions.get(alternative).succeeds()) {
+          return alternative;
+        }
+      }
+      return null;
+    }
+    return decisions.get(exp).succeeds() ? exp : null;
+  }
+
+  // Scans exp from scanPos. Returns true if it matched or if the scan reached
+  // scanEnd within it.
+  private boolean scan(Expansion exp) {
+    if (scanPos >= scanEnd) {
+      return true;
+    }
+    if (exp instanceof RegularExpression) {
+      if (kindAt(scanPos) != ((RegularExpression) exp).ordinal) {
+        return false;
+      }
+      scanPos++;
+      return true;
+    } else if (exp instanceof Sequence) {
+      for (Expansion unit : ((Sequence) exp).units) {
+        if (!scan(unit)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (exp instanceof Choice) {
+      int start = scanPos;
+      for (Expansion alternative : ((Choice) exp).getChoices()) {
+        if (scan(alternative)) {
+          return true;
+        }
+        scanPos = start;
+      }
+      return false;
+    } else if (exp instanceof ZeroOrMore) {
+      scanLoop(((ZeroOrMore) exp).getExpansion());
+      return true;
+    } else if (exp instanceof OneOrMore) {
+      if (!scan(((OneOrMore) exp).getExpansion())) {
+        return false;
+      }
+      scanLoop(((OneOrMore) exp).getExpansion());
+      return true;
+    } else if (exp instanceof ZeroOrOne) {
+      int start = scanPos;
+      if (!scan(((ZeroOrOne) exp).getExpansion())) {
+        scanPos = start;
+      }
+      return true;
+    } else if (exp instanceof NonTerminal) {
+      return scan(((NonTerminal) exp).getProd().getExpansion());
+    } else if (exp instanceof TryBlock) {
+      return scan(((TryBlock) exp).exp);
+    }
+    return true;
+  }
+
+  private void scanLoop(Expansion nested) {
+    while (scanPos < scanEnd) {
+      int start = scanPos;
+      if (!scan(nested) || (scanPos == start)) {
+        scanPos = start;
+        return;
+      }
+    }
+  }
+
+  // Adds the semantic lookaheads and JAVACODE calls within exp to uses.
+  private static void findUnsupported(Expansion exp, List<String> uses) {
+    if (exp instanceof Sequence) {
+      for (Expansion unit : ((Sequence) exp).units) {
+        if ((unit instanceof Lookahead) && !((Lookahead) unit).getActionTokens().isEmpty()) {
+          uses.add("semantic lookahead at line " + unit.getLine() + ", column " + unit.getColumn());
+        }
+        ParserInterpreter.findUnsupported(unit, uses);
+      }
+    } else if (exp instanceof Choice) {
+      for (Expansion alternative : ((Choice) exp).getChoices()) {
+        ParserInterpreter.findUnsupported(alternative, uses);
+      }
+    } else if (exp instanceof ZeroOrMore) {
+      ParserInterpreter.findUnsupported(((ZeroOrMore) exp).getExpansion(), uses);
+    } else if (exp instanceof OneOrMore) {
+      ParserInterpreter.findUnsupported(((OneOrMore) exp).getExpansion(), uses);
+    } else if (exp instanceof ZeroOrOne) {
+      ParserInterpreter.findUnsupported(((ZeroOrOne) exp).getExpansion(), uses);
+    } else if (exp instanceof TryBlock) {
+      ParserInterpreter.findUnsupported(((TryBlock) exp).exp, uses);
+    } else if ((exp instanceof NonTerminal) && !(((NonTerminal) exp).getProd() instanceof BNFProduction)) {
+      uses.add("JAVACODE production " + ((NonTerminal) exp).getName());
+    }
+  }
+
+  // Adds the decisions of all the choice points within exp.
+  private void addDecisions(Expansion exp) {
+    if (exp instanceof Sequence) {
+      for (Expansion unit : ((Sequence) exp).units) {
+        addDecisions(unit);
+      }
+    } else if (exp instanceof Choice) {
+      for (Expansion alternative : ((Choice) exp).getChoices()) {
+        addDecision(alternative);
+        addDecisions(alternative);
+      }
+    } else if (exp instanceof ZeroOrMore) {
+      addLoopDecision(((ZeroOrMore) exp).getExpansion());
+    } else if (exp instanceof OneOrMore) {
+      addLoopDecision(((OneOrMore) exp).getExpansion());
+    } else if (exp instanceof ZeroOrOne) {
+      addLoopDecision(((ZeroOrOne) exp).getExpansion());
+    } else if (exp instanceof TryBlock) {
+      addDecisions(((TryBlock) exp).exp);
+    }
+  }
+
+  private void addLoopDecision(Expansion nested) {
+    if (!(nested instanceof Choice)) {
+      addDecision(nested);
+    }
+    addDecisions(nested);
+  }
+
+  // The lookahead of a choice point is the first unit of its sequence.
+  private void addDecision(Expansion exp) {
+    if (decisions.containsKey(exp)) {
+      return;
+    }
+    Lookahead la = null;
+    if ((exp instanceof Sequence) && !((Sequence) exp).units.isEmpty()
+        && (((Sequence) exp).units.get(0) instanceof Lookahead)) {
+      la = (Lookahead) ((Sequence) exp).units.get(0);
+    }
+    decisions.put(exp, (la != null) ? new Decision(la) : new Decision(exp, Options.getLookahead()));
+  }
+
+  // How a choice point is decided.
+  private final class Decision {
+
+    private final Expansion laExpansion;
+    private final int       amount;
+
+    // The token sequences that start the lookahead expansion, null to scan.
+    final TrieNode          table;
+
+    Decision(Lookahead la) {
+      this.laExpansion = la.getLaExpansion();
+      // A LOOKAHEAD at a non-choice location gets EOF as its expansion, and
+      // only its semantic part, which is rejected up front, would count.
+      this.amount = (laExpansion instanceof REndOfFile) ? 0 : la.getAmount();
+      this.table = buildTable(laExpansion, amount);
+    }
+
+    Decision(Expansion exp, int amount) {
+      this.laExpansion = exp;
+      this.amount = amount;
+      this.table = buildTable(exp, amount);
+    }
+
+    boolean succeeds() {
+      if (amount == 0) {
+        return true;
+      }
+      if (table != null) {
+        return table.matches(tokens, pos);
+      }
+      scanPos = pos;
+      scanEnd = (int) Math.min((long) pos + amount, Integer.MAX_VALUE);
+      return scan(laExpansion);
+    }
+  }
+
+  // Builds the trie of the token sequences of up to amount tokens that start
+  // exp, or returns null if they are too many to tabulate.
+  private static TrieNode buildTable(Expansion exp, int amount) {
+    if ((amount <= 0) || (amount > ParserInterpreter.MAX_TABLE_LOOKAHEAD) || !isTabulable(exp)) {
+      return null;
+    }
+    LookaheadWalk walk = new LookaheadWalk(false);
+    List<MatchInfo> start = new ArrayList<MatchInfo>();
+    start.add(new MatchInfo(amount));
+    List<MatchInfo> matches = new ArrayList<MatchInfo>(walk.genFirstSet(start, exp));
+    matches.addAll(walk.getSizeLimitedMatches());
+    if (matches.size() > ParserInterpreter.MAX_TABLE_SIZE) {
+      return null;
+    }
+    TrieNode root = new TrieNode();
+    for (MatchInfo match : matches) {
+      root.add(match.match, match.firstFreeLoc);
+    }
+    return root;
+  }
+
+  // Whether the first sets of exp can be computed without running user code.
+  private static boolean isTabulable(Expansion exp) {
+    return isTabulable(exp, new IdentityHashMap<NormalProduction, Boolean>());
+  }
+
+  private static boolean isTabulable(Expansion exp, Map<NormalProduction, Boolean> visited) {
+    if (exp instanceof NonTerminal) {
+      NormalProduction production = ((NonTerminal) exp).getProd();
+      if (!(production instanceof BNFProduction)) {
+        return false;
+      }
+      if (visited.put(production, Boolean.TRUE) != null) {
+        return true;
+      }
+      return isTabulable(production.getExpansion(), visited);
+    } else if (exp instanceof Sequence) {
+      for (Expansion unit : ((Sequence) exp).units) {
+        if (!isTabulable(unit, visited)) {
+          return false;
+        }
+      }
+    } else if (exp instanceof Choice) {
+      for (Expansion alternative : ((Choice) exp).getChoices()) {
+        if (!isTabulable(alternative, visited)) {
+          return false;
+        }
+      }
+    } else if (exp instanceof ZeroOrMore) {
+      return isTabulable(((ZeroOrMore) exp).getExpansion(), visited);
+    } else if (exp instanceof OneOrMore) {
+      return isTabulable(((OneOrMore) exp).getExpansion(), visited);
+    } else if (exp instanceof ZeroOrOne) {
+      return isTabulable(((ZeroOrOne) exp).getExpansion(), visited);
+    } else if (exp instanceof TryBlock) {
+      return isTabulable(((TryBlock) exp).exp, visited);
+    }
+    return true;
+  }
+
+  // A trie of token kinds. A node accepts if a sequence ends at it.
+  private static final class TrieNode {
+
+    private int[]      keys     = new int[0];
+    private TrieNode[] children = new TrieNode[0];
+    private boolean    accepts;
+
+    void add(int[] sequence, int length) {
+      TrieNode node = this;
+      for (int i = 0; i < length; i++) {
+        node = node.child(sequence[i], true);
+      }
+      node.accepts = true;
+    }
+
+    private TrieNode child(int kind, boolean create) {
+      int i = Arrays.binarySearch(keys, kind);
+      if (i >= 0) {
+        return children[i];
+      }
+      if (!create) {
+        return null;
+      }
+      i = -i - 1;
+      keys = Arrays.copyOf(keys, keys.length + 1);
+      children = Arrays.copyOf(children, children.length + 1);
+      System.arraycopy(keys, i, keys, i + 1, keys.length - i - 1);
+      System.arraycopy(children, i, children, i + 1, children.length - i - 1);
+      keys[i] = kind;
+      children[i] = new TrieNode();
+      return children[i];
+    }
+
+    // Whether a sequence is a prefix of the tokens from index pos.
+    boolean matches(TokenBuffer tokens, int pos) {
+      TrieNode node = this;
+      while (!node.accepts) {
+        node = node.child(tokens.getKind(Math.min(pos++, tokens.size() - 1)), false);
+        if (node == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  // The kinds that can start the alternatives of a choice, as far as they
+  // are tabulated.
+  private int[] expectedKinds(Expansion choice) {
+    int[] expected = new int[0];
+    for (Expansion alternative : ((Choice) choice).getChoices()) {
+      Decision decision = decisions.get(alternative);
+      if (decision.table != null) {
+        int[] keys = decision.table.keys;
+        expected = Arrays.copyOf(expected, expected.length + keys.length);
+        System.arraycopy(keys, 0, expected, expected.length - keys.length, keys.length);
+      }
+    }
+    return expected;
+  }
+
+  private ParseException error(int[] expected) {
+    StringBuilder message = new StringBuilder("Encountered ");
+    int kind = kindAt(pos);
+    message.append(describe(kind));
+    if (describe(kind).startsWith("<") && (kind != 0)) {
+      message.append(" \"").append(input.subSequence((int) tokens.getStart(pos), (int) tokens.getEnd(pos))).append('"');
+    }
+    message.append(" at ").append(position(tokens.getStart(pos))).append('.');
+    if (expected.length > 0) {
+      Arrays.sort(expected);
+      message.append(" Was expecting ").append(expected.length == 1 ? "" : "one of: ");
+      for (int i = 0; i < expected.length; i++) {
+        if ((i == 0) || (expected[i] != expected[i - 1])) {
+          message.append(i == 0 ? "" : ", ").append(describe(expected[i]));
+        }
+      }
+    }
+    return new ParseException(message.toString());
+  }
+
+  private String describe(int kind) {
+    if (kind == 0) {
+      return "<EOF>";
+    }
+    if ((tokenizerData.images != null) && (kind < tokenizerData.images.length)
+        && (tokenizerData.images[kind] != null)) {
+      return "\"" + tokenizerData.images[kind] + "\"";
+    }
+    String label = tokenizerData.labels.get(kind);
+    return (label != null) ? "<" + label + ">" : "kind " + kind;
+  }
+
+  private String position(long offset) {
+    LineMap lineMap = LineMap.of(input);
+    return "line " + lineMap.getLine(offset) + ", column " + lineMap.getColumn(offset);
+  }
+}
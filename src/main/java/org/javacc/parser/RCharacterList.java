@@ -268,6 +268,10 @@ public class RCharacterList extends RegularExpression {
 
   @Override
   public Nfa GenerateNfa(boolean ignoreCase, LexerContext lexerContext) {
+    if (isCodePointList()) {
+      return GenerateCodePointNfa(ignoreCase, lexerContext);
+    }
+
     if (!transformed) {
       if (Options.getIgnoreCase() || ignoreCase) {
         /*
@@ -335,6 +339,104 @@ public class RCharacterList extends RegularExpression {
     return retVal;
   }
 
+  /**
+   * Whether the list is matched as a set of code points rather than of chars:
+   * if it has code points outside the BMP, or if it is negated and the
+   * CODE_POINTS option is set.
+   */
+  boolean isCodePointList() {
+    if (negated_list && Options.getCodePoints()) {
+      return true;
+    }
+    for (Expansion descriptor : descriptors) {
+      if (descriptor instanceof CodePointRange) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The code points of the list, after case folding of the BMP ones if
+   * ignoreCase and negation over 0..0x10FFFF.
+   */
+  CodePointSet getCodePoints(boolean ignoreCase, LexerContext lexerContext) {
+    RCharacterList bmp = new RCharacterList();
+    List<Integer> ranges = new ArrayList<>();
+    for (Expansion descriptor : descriptors) {
+      if (descriptor instanceof CodePointRange) {
+        CodePointRange range = (CodePointRange) descriptor;
+        if (range.getLeft() <= Character.MAX_VALUE) {
+          bmp.descriptors.add(new CharacterRange((char) range.getLeft(), Character.MAX_VALUE, lexerContext.context));
+        }
+        ranges.add(Math.max(range.getLeft(), Character.MIN_SUPPLEMENTARY_CODE_POINT));
+        ranges.add(range.getRight());
+      } else {
+        bmp.descriptors.add(descriptor);
+      }
+    }
+    if (Options.getIgnoreCase() || ignoreCase) {
+      bmp.ToCaseNeutral(lexerContext.context);
+    }
+    for (Expansion descriptor : bmp.descriptors) {
+      if (descriptor instanceof SingleCharacter) {
+        ranges.add((int) ((SingleCharacter) descriptor).ch);
+        ranges.add((int) ((SingleCharacter) descriptor).ch);
+      } else {
+        ranges.add((int) ((CharacterRange) descriptor).getLeft());
+        ranges.add((int) ((CharacterRange) descriptor).getRight());
+      }
+    }
+    int[] ends = new int[ranges.size()];
+    for (int i = 0; i < ends.length; i++) {
+      ends[i] = ranges.get(i);
+    }
+    CodePointSet codePoints = CodePointSet.of(ends);
+    return negated_list ? codePoints.complement() : codePoints;
+  }
+
+  /*
+   * The lexer tables are over chars, so the code points in the BMP are
+   * matched by a single state like the chars of other lists, and the other
+   * ones by a choice of surrogate pairs: a high surrogate range followed by a
+   * low surrogate range.
+   */
+  private Nfa GenerateCodePointNfa(boolean ignoreCase, LexerContext lexerContext) {
+    CodePointSet codePoints = getCodePoints(ignoreCase, lexerContext);
+    Nfa retVal = new Nfa(lexerContext);
+    if (codePoints.isEmpty()) {
+      lexerContext.context.errors().semantic_error(this, "Empty character set is not allowed as it will not match any character.");
+      return retVal;
+    }
+
+    CodePointSet bmp = codePoints.intersect(0, Character.MAX_VALUE);
+    if (!bmp.isEmpty()) {
+      NfaState charState = new NfaState(lexerContext);
+      for (int i = 0; i < bmp.getRangeCount(); i++) {
+        if (bmp.getStart(i) == bmp.getEnd(i)) {
+          charState.AddChar((char) bmp.getStart(i));
+        } else {
+          charState.AddRange((char) bmp.getStart(i), (char) bmp.getEnd(i));
+        }
+      }
+      charState.next = retVal.end;
+      retVal.start.AddMove(charState);
+    }
+
+    char[] pairs = codePoints.getSurrogatePairs();
+    for (int i = 0; i < pairs.length; i += 4) {
+      NfaState highState = new NfaState(lexerContext);
+      NfaState lowState = new NfaState(lexerContext);
+      highState.AddRange(pairs[i], pairs[i + 1]);
+      highState.next = new NfaState(lexerContext);
+      highState.next.AddMove(lowState);
+      lowState.AddRange(pairs[i + 2], pairs[i + 3]);
+      lowState.next = retVal.end;
+      retVal.start.AddMove(highState);
+    }
+    return retVal;
+  }
+
   private static boolean Overlaps(CharacterRange r1, CharacterRange r2) {
     return ((r1.getLeft() <= r2.getRight()) && (r1.getRight() > r2.getRight()));
   }
@@ -504,7 +606,8 @@ public class RCharacterList extends RegularExpression {
 
   @Override
   public boolean CanMatchAnyChar() {
-    // Return true only if it is ~[]
-    return negated_list && ((descriptors == null) || (descriptors.size() == 0));
+    // Return true only if it is ~[]. With CODE_POINTS it has to match whole
+    // surrogate pairs, so it is left to the NFA.
+    return negated_list && ((descriptors == null) || (descriptors.size() == 0)) && !Options.getCodePoints();
   }
 }
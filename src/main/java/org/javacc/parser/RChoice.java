@@ -98,7 +98,8 @@ public class RChoice extends RegularExpression {
         getChoices().set(i, curRE = new RCharacterList(((RStringLiteral) curRE).image.charAt(0)));
       }
 
-      if (curRE instanceof RCharacterList) {
+      // Lists of code points are matched with surrogate pairs, not merged.
+      if ((curRE instanceof RCharacterList) && !((RCharacterList) curRE).isCodePointList()) {
         if (((RCharacterList) curRE).negated_list) {
           ((RCharacterList) curRE).RemoveNegation(lexerContext);
         }
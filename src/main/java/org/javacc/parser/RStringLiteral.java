@@ -31,6 +31,7 @@
 package org.javacc.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -391,20 +392,81 @@ public class RStringLiteral extends RegularExpression {
     kinds.add(j, actualKind);
   }
 
+  /*
+   * Orders the literals of each first char by their matches in the tokenizer
+   * profile, most matched first, as far as the longest match rule allows: a
+   * literal still comes after the ones extending it, so the first literal of
+   * a sequence that matches is the longest one. Literals are compared
+   * ignoring case, as some of them may.
+   */
+  private static void OrderLiteralsByHits(LexerContext lexerContext) {
+    TokenizerProfile profile = lexerContext.profile;
+    for (int key : lexerContext.literalsByLength.keySet()) {
+      List<String> literals = lexerContext.literalsByLength.get(key);
+      List<Integer> kinds = lexerContext.literalKinds.get(key);
+      List<String> orderedLiterals = new ArrayList<>(literals.size());
+      List<Integer> orderedKinds = new ArrayList<>(kinds.size());
+      boolean[] placed = new boolean[literals.size()];
+      while (orderedLiterals.size() < literals.size()) {
+        // The longest literal left is never extended, so there always is one.
+        int best = -1;
+        Candidates:
+        for (int i = 0; i < literals.size(); i++) {
+          if (placed[i]
+              || ((best != -1) && (profile.getKindHits(kinds.get(i)) <= profile.getKindHits(kinds.get(best))))) {
+            continue;
+          }
+          String literal = literals.get(i);
+          for (int j = 0; j < literals.size(); j++) {
+            if (!placed[j] && (literals.get(j).length() > literal.length())
+                && literals.get(j).regionMatches(true, 0, literal, 0, literal.length())) {
+              continue Candidates;
+            }
+          }
+          best = i;
+        }
+        placed[best] = true;
+        orderedLiterals.add(literals.get(best));
+        orderedKinds.add(kinds.get(best));
+      }
+      literals.clear();
+      literals.addAll(orderedLiterals);
+      kinds.clear();
+      kinds.addAll(orderedKinds);
+    }
+  }
+
   static void BuildTokenizerData(TokenizerData tokenizerData, LexerContext lexerContext) {
     Map<Integer, Integer> nfaStateIndices = new HashMap<>();
+    int[] nfaStartStates = new int[lexerContext.allImages.length];
+    Arrays.fill(nfaStartStates, -1);
     for (int kind : lexerContext.nfaStateMap.keySet()) {
       if (lexerContext.nfaStateMap.get(kind) != null) {
-        if (nfaStateIndices.put(kind, lexerContext.nfaStateMap.get(kind).stateName) != null) {
+        if (nfaStateIndices.put(kind,
+            NfaState.LaidOutState(lexerContext.nfaStateMap.get(kind).stateName, lexerContext)) != null) {
           System.err.println("ERROR: Multiple start states for kind: " + kind);
         }
       } else {
         nfaStateIndices.put(kind, -1);
       }
     }
+    if (lexerContext.profile != null) {
+      RStringLiteral.OrderLiteralsByHits(lexerContext);
+    }
     tokenizerData.setLiteralSequence(lexerContext.literalsByLength);
     tokenizerData.setLiteralKinds(lexerContext.literalKinds);
     tokenizerData.setIgnoreCaserKinds(lexerContext.kindToIgnoreCase);
     tokenizerData.setKindToNfaStartState(nfaStateIndices);
+    for (int kind : nfaStateIndices.keySet()) {
+      if (kind < nfaStartStates.length) {
+        nfaStartStates[kind] = nfaStateIndices.get(kind);
+      }
+    }
+    boolean[] ignoreCaseKinds = new boolean[lexerContext.allImages.length];
+    for (int kind = 0; kind < ignoreCaseKinds.length; kind++) {
+      ignoreCaseKinds[kind] = Options.getIgnoreCase() || lexerContext.kindToIgnoreCase.contains(kind);
+    }
+    tokenizerData.setTables(tokenizerData.getTables().withNfaStartStates(nfaStartStates)
+        .withLiterals(lexerContext.literalsByLength, lexerContext.literalKinds, ignoreCaseKinds));
   }
 }
@@ -0,0 +1,91 @@
+package org.javacc.parser;
+
+/**
+ * Turns the matches of a tokenizer into what a generated token manager would
+ * make of them, pushing them to another sink. MORE matches are not passed on
+ * but extend the start of the match after them, so the image of a token is
+ * the span from the first of its MORE matches to its end, without copying any
+ * chars. SKIP, SPECIAL_TOKEN and TOKEN matches are passed on with that start,
+ * in the lexical state of their last match. Errors are passed on and drop the
+ * MORE matches before them.
+ *
+ * The lexical actions of a grammar are Java code, which the interpreter can
+ * not run, so instead a {@link LexicalAction} can be set per kind. To link the
+ * special tokens, push to a {@link TokenBuffer} that links them.
+ */
+public final class TokenAssembler implements TokenSink {
+
+  private final TokenSink                 sink;
+
+  // Match types and actions by kind.
+  private final TokenizerData.MatchType[] matchTypes;
+  private final LexicalAction[]           actions;
+
+  // Span of the MORE matches since the last match passed on, -1 if none.
+  private long                            moreStart = -1;
+  private long                            moreEnd;
+  private int                             moreLexState;
+
+  public TokenAssembler(TokenizerData tokenizerData, TokenSink sink) {
+    this.sink = sink;
+    int maxKind = 0;
+    for (int kind : tokenizerData.allMatches.keySet()) {
+      maxKind = Math.max(maxKind, kind);
+    }
+    matchTypes = new TokenizerData.MatchType[maxKind + 1];
+    for (int kind : tokenizerData.allMatches.keySet()) {
+      matchTypes[kind] = tokenizerData.allMatches.get(kind).matchType;
+    }
+    actions = new LexicalAction[maxKind + 1];
+  }
+
+  /**
+   * Sets the action run for the matches of the kind, or removes it if null.
+   */
+  public void setAction(int kind, LexicalAction action) {
+    actions[kind] = action;
+  }
+
+  public LexicalAction getAction(int kind) {
+    return actions[kind];
+  }
+
+  @Override
+  public void token(int kind, long start, long end, int lexState) {
+    long imageStart = (moreStart != -1) ? moreStart : start;
+    if (matchTypes[kind] == TokenizerData.MatchType.MORE) {
+      moreStart = imageStart;
+      moreEnd = end;
+      moreLexState = lexState;
+      if (actions[kind] != null) {
+        actions[kind].run(kind, imageStart, start, end, lexState);
+      }
+      return;
+    }
+    moreStart = -1;
+    if (actions[kind] != null) {
+      actions[kind].run(kind, imageStart, start, end, lexState);
+    }
+    sink.token(kind, imageStart, end, lexState);
+  }
+
+  @Override
+  public boolean error(long start, long end, int lexState) {
+    moreStart = -1;
+    return sink.error(start, end, lexState);
+  }
+
+  /**
+   * Called at the end of the input. If it ended in MORE matches, which a
+   * token manager reports as an error, passes them on as one. Returns false
+   * if the sink stopped there.
+   */
+  public boolean finish() {
+    if (moreStart == -1) {
+      return true;
+    }
+    long start = moreStart;
+    moreStart = -1;
+    return sink.error(start, moreEnd, moreLexState);
+  }
+}
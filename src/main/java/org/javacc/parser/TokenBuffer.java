@@ -0,0 +1,204 @@
+package org.javacc.parser;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Stores matches column by column: a growable int array each for the kinds,
+ * starts, ends and lexical states, so a match costs 16 bytes and no object.
+ * Offsets are stored relative to a base offset, which lets the matches of a
+ * window of a large file be kept even if its offsets do not fit in an int.
+ * Errors are stored as matches of kind {@link #ERROR}.
+ *
+ * Optionally the special tokens are linked like the specialToken fields of a
+ * generated parser's tokens: a SPECIAL_TOKEN match or TOKEN match links to the
+ * SPECIAL_TOKEN match right before it, if no TOKEN match comes in between.
+ *
+ * Images and labels are only looked up when asked for. Images are views over
+ * the input set with {@link #setInput}, so they copy nothing either.
+ */
+public final class TokenBuffer implements TokenSink {
+
+  // Kind of the recorded errors.
+  public static final int             ERROR = -1;
+
+  private final TokenizerSnapshot     snapshot;
+  private final long                  base;
+
+  // Match types by kind, null if special tokens are not linked.
+  private TokenizerData.MatchType[]   matchTypes;
+  // Labels by kind, built when first asked for.
+  private String[]                    labels;
+
+  private int                         size;
+  private int[]                       kinds     = new int[256];
+  private int[]                       starts    = new int[256];
+  private int[]                       ends      = new int[256];
+  private int[]                       lexStates = new int[256];
+  // The special token before each match, -1 if none or not linked.
+  private int[]                       specials;
+  private int                         lastSpecial = -1;
+
+  private CharSequence                input;
+
+  public TokenBuffer(TokenizerData tokenizerData) {
+    this(tokenizerData.freeze(), 0, false);
+  }
+
+  public TokenBuffer(TokenizerSnapshot snapshot) {
+    this(snapshot, 0, false);
+  }
+
+  public TokenBuffer(TokenizerData tokenizerData, long base, boolean linkSpecialTokens) {
+    this(tokenizerData.freeze(), base, linkSpecialTokens);
+  }
+
+  public TokenBuffer(TokenizerSnapshot snapshot, long base, boolean linkSpecialTokens) {
+    this.snapshot = snapshot;
+    this.base = base;
+    if (linkSpecialTokens) {
+      int maxKind = 0;
+      for (int kind : snapshot.getMatches().keySet()) {
+        maxKind = Math.max(maxKind, kind);
+      }
+      matchTypes = new TokenizerData.MatchType[maxKind + 1];
+      for (Map.Entry<Integer, TokenizerData.MatchInfo> entry : snapshot.getMatches().entrySet()) {
+        matchTypes[entry.getKey()] = entry.getValue().matchType;
+      }
+      specials = new int[kinds.length];
+    }
+  }
+
+  /**
+   * Sets the input the images are taken from, whose offsets must be the ones
+   * of the matches.
+   */
+  public void setInput(CharSequence input) {
+    this.input = input;
+  }
+
+  /**
+   * Drops all matches, keeping the arrays.
+   */
+  public void clear() {
+    size = 0;
+    lastSpecial = -1;
+  }
+
+  @Override
+  public void token(int kind, long start, long end, int lexState) {
+    add(kind, start, end, lexState);
+  }
+
+  @Override
+  public boolean error(long start, long end, int lexState) {
+    add(TokenBuffer.ERROR, start, end, lexState);
+    return true;
+  }
+
+  /**
+   * Appends a match. Its offsets must be at most Integer.MAX_VALUE past the
+   * base.
+   */
+  public void add(int kind, long start, long end, int lexState) {
+    if (((end - base) > Integer.MAX_VALUE) || (start < base)) {
+      throw new IllegalArgumentException("Match [" + start + ", " + end + ") is not within 2^31 of " + base);
+    }
+    if (size == kinds.length) {
+      kinds = Arrays.copyOf(kinds, 2 * size);
+      starts = Arrays.copyOf(starts, 2 * size);
+      ends = Arrays.copyOf(ends, 2 * size);
+      lexStates = Arrays.copyOf(lexStates, 2 * size);
+      if (specials != null) {
+        specials = Arrays.copyOf(specials, 2 * size);
+      }
+    }
+    kinds[size] = kind;
+    starts[size] = (int) (start - base);
+    ends[size] = (int) (end - base);
+    lexStates[size] = lexState;
+    if (specials != null) {
+      TokenizerData.MatchType matchType = (kind == TokenBuffer.ERROR) ? null : matchTypes[kind];
+      if (matchType == TokenizerData.MatchType.SPECIAL_TOKEN) {
+        specials[size] = lastSpecial;
+        lastSpecial = size;
+      } else if (matchType == TokenizerData.MatchType.TOKEN) {
+        specials[size] = lastSpecial;
+        lastSpecial = -1;
+      } else {
+        specials[size] = -1;
+      }
+    }
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // Kind of match i, ERROR if it is an error.
+  public int getKind(int i) {
+    return kinds[i];
+  }
+
+  public long getStart(int i) {
+    return base + starts[i];
+  }
+
+  public long getEnd(int i) {
+    return base + ends[i];
+  }
+
+  // Lexical state match i was matched in.
+  public int getLexState(int i) {
+    return lexStates[i];
+  }
+
+  /**
+   * The SPECIAL_TOKEN match right before match i, -1 if there is none or the
+   * special tokens are not linked.
+   */
+  public int getSpecialToken(int i) {
+    return (specials != null) ? specials[i] : -1;
+  }
+
+  /**
+   * The label of the kind of match i, null if it has none.
+   */
+  public String getLabel(int i) {
+    if (labels == null) {
+      int maxKind = 0;
+      for (int kind : snapshot.getLabels().keySet()) {
+        maxKind = Math.max(maxKind, kind);
+      }
+      labels = new String[maxKind + 1];
+      for (Map.Entry<Integer, String> entry : snapshot.getLabels().entrySet()) {
+        labels[entry.getKey()] = entry.getValue();
+      }
+    }
+    int kind = kinds[i];
+    return ((kind >= 0) && (kind < labels.length)) ? labels[kind] : null;
+  }
+
+  /**
+   * A view of the chars of match i in the input.
+   */
+  public CharSequence getImage(int i) {
+    if (input == null) {
+      throw new IllegalStateException("No input to take images from");
+    }
+    return CharBuffer.wrap(input, (int) getStart(i), (int) getEnd(i));
+  }
+
+  /**
+   * Index of the match that starts at the offset, -1 if none does.
+   */
+  public int indexOf(long offset) {
+    if ((offset < base) || ((offset - base) > Integer.MAX_VALUE)) {
+      return -1;
+    }
+    int i = Arrays.binarySearch(starts, 0, size, (int) (offset - base));
+    return (i >= 0) ? i : -1;
+  }
+}
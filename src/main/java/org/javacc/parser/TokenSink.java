@@ -0,0 +1,21 @@
+package org.javacc.parser;
+
+/**
+ * Receives the matches of a {@link Tokenizer}. Offsets are absolute offsets
+ * into the input, in the units of its {@link TokenizerInput}, with the end
+ * exclusive.
+ */
+public interface TokenSink {
+
+  /**
+   * Called for every match, whatever its match type (TOKEN, SKIP, MORE or
+   * SPECIAL_TOKEN), in the lexical state it was matched in.
+   */
+  void token(int kind, long start, long end, int lexState);
+
+  /**
+   * Called when no token matches the char at [start, end). Returns true to
+   * skip the char and go on tokenizing, false to stop.
+   */
+  boolean error(long start, long end, int lexState);
+}
@@ -0,0 +1,610 @@
+package org.javacc.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Tokenizes input with the automaton in a {@link TokenizerSnapshot} and pushes
+ * the matches to a {@link TokenSink}. An instance keeps its lazily built DFAs
+ * across calls, so it should be reused for inputs of the same grammar, but it
+ * must not be used by more than one thread at a time.
+ */
+public final class Tokenizer {
+
+  private final TokenizerSnapshot snapshot;
+  private final TokenizerTables   tables;
+
+  // One lazily built DFA per lexical state, null if disabled.
+  private final LazyDfa[]         dfas;
+  private final NfaMatcher        nfa;
+  // Runs the minimal DFAs of the tokenizer data, if built, and the ones
+  // compiled to bytecode per lexical state, null if disabled.
+  private final DfaMatcher        minimalDfa;
+  private final CompiledDfa[]     compiledDfas;
+  // The bitmaps of the chars that always start a SKIP match of their own,
+  // null if none.
+  private final long[]            skipChars;
+  // Whether errors skip surrogate pairs as a whole.
+  private final boolean           codePoints;
+  // Whether an error spans the chars up to the next one a token can start
+  // with.
+  private boolean                 errorRecovery;
+
+  // The input being tokenized.
+  private TokenizerInput          input;
+
+  // Start of the current match, and the offset after the last char looked at
+  // to match it, plus one if it looked at the end of the input.
+  private long                    tokenStart;
+  private long                    lookaheadEnd;
+  private boolean                 stopped;
+
+  // Start, line and column of the MORE matches right before the current
+  // match, -1 if there are none. The input window keeps their chars.
+  private long                    moreStart;
+  private int                     moreLine, moreCol;
+
+  // Line and column of the last char before linePos, the offset up to which
+  // the input has been scanned for line ends, and whether that char ended a
+  // line. The scan runs behind the matching: it catches up when the line of a
+  // match is asked for and before the input window drops chars, so every char
+  // is looked at once more at most.
+  private long                    linePos;
+  private int                     line, col;
+  private boolean                 prevCR, prevLF;
+  private LineMap                 lineMap;
+
+  // Counters to update, null if disabled.
+  private TokenizerMetrics        metrics;
+  private TokenizerProfile        profile;
+
+  public Tokenizer(TokenizerData tokenizerData) {
+    this(tokenizerData.freeze());
+  }
+
+  public Tokenizer(TokenizerSnapshot snapshot) {
+    this(snapshot, Options.getInterpreterLazyDfa(), Options.getInterpreterDfaCacheSize() * 1024L,
+        Options.getInterpreterCompileDfa());
+    this.errorRecovery = Options.getInterpreterErrorRecovery();
+  }
+
+  /**
+   * A tokenizer that uses lazily built DFAs of at most dfaCacheBytes each if
+   * lazyDfa is set. Unlike the one taking the options from {@link Options},
+   * it can be created on any thread.
+   */
+  public Tokenizer(TokenizerData tokenizerData, boolean lazyDfa, long dfaCacheBytes) {
+    this(tokenizerData.freeze(), lazyDfa, dfaCacheBytes, false);
+  }
+
+  /**
+   * Same, also running the minimal DFAs of the tokenizer data compiled to
+   * bytecode if compileDfa is set.
+   */
+  public Tokenizer(TokenizerData tokenizerData, boolean lazyDfa, long dfaCacheBytes, boolean compileDfa) {
+    this(tokenizerData.freeze(), lazyDfa, dfaCacheBytes, compileDfa);
+  }
+
+  public Tokenizer(TokenizerSnapshot snapshot, boolean lazyDfa, long dfaCacheBytes, boolean compileDfa) {
+    this.snapshot = snapshot;
+    this.tables = snapshot.getTables();
+    if (lazyDfa) {
+      dfas = new LazyDfa[tables.getLexStateCount()];
+      for (int l = 0; l < dfas.length; l++) {
+        dfas[l] = new LazyDfa(tables, l, dfaCacheBytes);
+      }
+    } else {
+      dfas = null;
+    }
+    this.nfa = new NfaMatcher(tables);
+    this.minimalDfa = new DfaMatcher(tables);
+    if (compileDfa) {
+      compiledDfas = new CompiledDfa[tables.getLexStateCount()];
+      for (int l = 0; l < compiledDfas.length; l++) {
+        MinimalDfa dfa = snapshot.getMinimalDfa(l);
+        compiledDfas[l] = (dfa == null) ? null : CompiledDfa.compile(tables, dfa);
+      }
+    } else {
+      compiledDfas = null;
+    }
+    this.skipChars = snapshot.getSkipChars();
+    this.codePoints = snapshot.isCodePoints();
+  }
+
+  /**
+   * Sets the metrics to update while tokenizing, or stops updating them if
+   * null. Metrics must not be shared with tokenizers used by other threads.
+   */
+  public void setMetrics(TokenizerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public TokenizerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the profile to record the matches and NFA states in while
+   * tokenizing, or stops recording if null. While recording, the NFA is run
+   * instead of the DFAs, so tokenizing is slower.
+   */
+  public void setProfile(TokenizerProfile profile) {
+    this.profile = profile;
+  }
+
+  public TokenizerProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Sets whether an error spans the chars from the one no token matches up
+   * to the next one a token can start with, so a run of garbage is reported
+   * once and skipped without matching at each of its chars. A run is cut
+   * where the input window ends. Otherwise, the default unless set by the
+   * INTERPRETER_ERROR_RECOVERY option, an error is a single char.
+   */
+  public void setErrorRecovery(boolean errorRecovery) {
+    this.errorRecovery = errorRecovery;
+  }
+
+  public TokenizerSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  // The lazy DFA of the lexical state, null if disabled.
+  LazyDfa getLazyDfa(int lexState) {
+    return (dfas == null) ? null : dfas[lexState];
+  }
+
+  /**
+   * The image of [start, end). Only valid from within a call to the sink, for
+   * offsets from the image start.
+   */
+  public CharSequence getImage(long start, long end) {
+    long base = input.getBase();
+    return input.subSequence((int) (start - base), (int) (end - base));
+  }
+
+  /**
+   * The start of the image of the current match, which includes the MORE
+   * matches right before it. Only valid from within a call to the sink.
+   */
+  public long getImageStart() {
+    return (moreStart != -1) ? moreStart : tokenStart;
+  }
+
+  /**
+   * The line of the image start. Only valid from within a call to the sink.
+   */
+  public int getImageLine() {
+    return (moreStart != -1) ? moreLine : getLine();
+  }
+
+  /**
+   * The column of the image start. Only valid from within a call to the sink.
+   */
+  public int getImageColumn() {
+    return (moreStart != -1) ? moreCol : getColumn();
+  }
+
+  /**
+   * The offset after the last char looked at to decide the current match,
+   * plus one if the end of the input was looked at. The match can only change
+   * if the input before this offset does. Only valid from within a call to
+   * the sink.
+   */
+  public long getLookaheadEnd() {
+    return lookaheadEnd;
+  }
+
+  /**
+   * The line of the start of the current match, the first line being 1. Only
+   * valid from within a call to the sink.
+   */
+  public int getLine() {
+    trackLines(tokenStart);
+    return startsLine() ? line + 1 : line;
+  }
+
+  /**
+   * The column in chars of the start of the current match, the first column
+   * being 1. Only valid from within a call to the sink.
+   */
+  public int getColumn() {
+    trackLines(tokenStart);
+    return startsLine() ? 1 : col + 1;
+  }
+
+  /**
+   * Records the line starts in lineMap while tokenizing, or stops recording if
+   * it is null. A map holds the lines of a single input.
+   */
+  public void setLineMap(LineMap lineMap) {
+    this.lineMap = lineMap;
+  }
+
+  public boolean tokenize(CharSequence input, TokenSink sink) {
+    try {
+      return tokenize(new CharWindow(input), sink);
+    } catch (IOException e) {
+      throw new Error(); // Should never come here
+    }
+  }
+
+  /**
+   * Tokenizes the chars read from input, keeping only a window over the
+   * current token and its lookahead in memory.
+   */
+  public boolean tokenize(Reader input, TokenSink sink) throws IOException {
+    return tokenize(new CharWindow(input), sink);
+  }
+
+  /**
+   * Tokenizes the input starting in the default lexical state. Returns true if
+   * the whole input was tokenized, false if the sink stopped at an error.
+   */
+  public boolean tokenize(TokenizerInput input, TokenSink sink) throws IOException {
+    return tokenize(input, snapshot.getDefaultLexState(), sink);
+  }
+
+  /**
+   * Tokenizes the input starting in the given lexical state. Lines are counted
+   * from the start of the input. Returns true if the whole input was
+   * tokenized, false if the sink stopped at an error or called stop(). A lazy
+   * DFA that gave up on an earlier input is tried again.
+   */
+  public boolean tokenize(TokenizerInput input, int lexState, TokenSink sink) throws IOException {
+    if (dfas != null) {
+      for (LazyDfa dfa : dfas) {
+        dfa.retry();
+      }
+    }
+    this.input = input;
+    tokenStart = input.getBase();
+    stopped = false;
+    moreStart = -1;
+    linePos = input.getBase();
+    line = 1;
+    col = 0;
+    prevCR = false;
+    prevLF = false;
+    long startNanos = (metrics != null) ? System.nanoTime() : 0;
+    try {
+      boolean done = run(lexState, sink);
+      if (lineMap != null) {
+        trackLines(input.getBase() + input.limit());
+      }
+      return done;
+    } finally {
+      if (metrics != null) {
+        metrics.nanos += System.nanoTime() - startNanos;
+      }
+      this.input = null;
+    }
+  }
+
+  /**
+   * Stops tokenizing once the current call to the sink returns.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  private boolean run(int lexState, TokenSink sink) throws IOException {
+    int curPos = 0;
+    int curLexState = lexState;
+    input.fill(0);
+    while (true) {
+      int input_size = input.limit();
+      if (curPos >= input_size) {
+        trackLines(input.getBase() + curPos);
+        int keepFrom = keepFrom(curPos);
+        if (!input.fill(keepFrom)) {
+          break;
+        }
+        curPos -= keepFrom;
+        continue;
+      }
+      if (skipChars != null) {
+        int end = skipRun(curPos, curLexState, sink);
+        if (end != curPos) {
+          if (stopped) {
+            return false;
+          }
+          curPos = end;
+          continue;
+        }
+      }
+      // Set when the match ran into the end of the window before the end of
+      // the input, so the token has to be matched again with more chars.
+      boolean needMore = false;
+      final long base = input.getBase();
+      int beg = curPos;
+      int matchedEnd = beg;
+      int matchedKind = Integer.MAX_VALUE;
+      int scannedEnd = input.next(beg);
+      boolean automatonMatched = false;
+
+      // A char no token can start with is an error without running the
+      // literal trie or the automaton.
+      boolean canStart = snapshot.canStart(curLexState, input.charAt(beg));
+      int nfaStartState = canStart ? tables.getInitialState(curLexState) : -1;
+      int node = canStart ? tables.getLiteralRoot(curLexState) : -1;
+      if (node != -1) {
+        // Walk the literal trie in a single pass, keeping the longest literal.
+        int p = curPos;
+        while (true) {
+          if (p == input_size) {
+            needMore = !input.isEof() && tables.hasLiteralChildren(node);
+            scannedEnd = Math.max(scannedEnd, p);
+            break;
+          }
+          node = tables.getLiteralChild(node, input.charAt(p));
+          if (node == -1) {
+            scannedEnd = Math.max(scannedEnd, input.next(p));
+            break;
+          }
+          p = input.next(p);
+          if (tables.getLiteralKind(node) != Integer.MAX_VALUE) {
+            matchedKind = tables.getLiteralKind(node);
+            matchedEnd = p;
+          }
+        }
+        if (!needMore && (matchedKind != Integer.MAX_VALUE)) {
+          // Found a string literal match.
+          nfaStartState = tables.getNfaStartState(matchedKind);
+          curPos = matchedEnd;
+        }
+      }
+
+      if ((nfaStartState != -1) && (curPos == input_size) && !input.isEof()) {
+        needMore = true;
+      }
+      if (!needMore && (nfaStartState != -1) && (curPos < input_size)) {
+        int kind, end, nfaScannedEnd;
+        long[] histogram = (metrics != null) ? metrics.getHistogram(curLexState) : null;
+        MinimalDfa dfa = snapshot.getMinimalDfa(curLexState);
+        CompiledDfa compiledDfa = (compiledDfas != null) ? compiledDfas[curLexState] : null;
+        if (profile != null) {
+          // The DFAs do not know the NFA states the profile counts.
+          nfa.matchProfiled(input, curPos, input_size, nfaStartState, histogram, profile.getActiveStates());
+          kind = nfa.getMatchedKind();
+          end = nfa.getMatchedEnd();
+          nfaScannedEnd = nfa.getScannedEnd();
+        } else if (compiledDfa != null) {
+          compiledDfa.match(input, curPos, input_size, nfaStartState);
+          kind = compiledDfa.getMatchedKind();
+          end = compiledDfa.getMatchedEnd();
+          nfaScannedEnd = compiledDfa.getScannedEnd();
+        } else if (dfa != null) {
+          // The minimal DFA does not know the NFA states, so it adds nothing
+          // to the histogram.
+          minimalDfa.match(dfa, input, curPos, input_size, nfaStartState);
+          kind = minimalDfa.getMatchedKind();
+          end = minimalDfa.getMatchedEnd();
+          nfaScannedEnd = minimalDfa.getScannedEnd();
+        } else if ((dfas != null) && ((histogram == null)
+            ? dfas[curLexState].match(input, curPos, input_size, nfaStartState)
+            : dfas[curLexState].match(input, curPos, input_size, nfaStartState, histogram))) {
+          kind = dfas[curLexState].getMatchedKind();
+          end = dfas[curLexState].getMatchedEnd();
+          nfaScannedEnd = dfas[curLexState].getScannedEnd();
+        } else {
+          if (histogram == null) {
+            nfa.match(input, curPos, input_size, nfaStartState);
+          } else {
+            nfa.match(input, curPos, input_size, nfaStartState, histogram);
+          }
+          kind = nfa.getMatchedKind();
+          end = nfa.getMatchedEnd();
+          nfaScannedEnd = nfa.getScannedEnd();
+        }
+        if (kind != Integer.MAX_VALUE) {
+          matchedKind = kind;
+          matchedEnd = end;
+          automatonMatched = true;
+        }
+        scannedEnd = Math.max(scannedEnd, nfaScannedEnd);
+        needMore = (nfaScannedEnd == input_size) && !input.isEof();
+      }
+
+      // The char at the start, or with CODE_POINTS the surrogate pair there,
+      // which the wildcard matches or an error skips.
+      int charEnd = input.next(beg);
+      if (codePoints && Character.isHighSurrogate(input.charAt(beg))) {
+        if (charEnd == input_size) {
+          needMore = needMore || !input.isEof();
+        } else if (Character.isLowSurrogate(input.charAt(charEnd))) {
+          charEnd = input.next(charEnd);
+          scannedEnd = Math.max(scannedEnd, charEnd);
+        }
+      }
+
+      if (needMore) {
+        // Keep the chars from the start of this token and match it again.
+        trackLines(base + beg);
+        int keepFrom = keepFrom(beg);
+        input.fill(keepFrom);
+        curPos = beg - keepFrom;
+        continue;
+      }
+
+      // The wildcard (~[]) matches a single char if nothing better matched.
+      boolean wildcardMatched = false;
+      if ((matchedEnd <= charEnd) && (matchedKind > tables.getWildcardKind(curLexState))) {
+        matchedKind = tables.getWildcardKind(curLexState);
+        matchedEnd = charEnd;
+        wildcardMatched = true;
+      }
+      if ((matchedKind == Integer.MAX_VALUE) && errorRecovery) {
+        charEnd = skipErrors(charEnd, curLexState);
+        scannedEnd = Math.max(scannedEnd, (charEnd < input_size) ? input.next(charEnd) : charEnd);
+      }
+      if (metrics != null) {
+        int end = (matchedKind != Integer.MAX_VALUE) ? matchedEnd : charEnd;
+        recordMatch(matchedKind, end - beg, automatonMatched, wildcardMatched, scannedEnd - end);
+      }
+      tokenStart = base + beg;
+      lookaheadEnd = base + scannedEnd + (((scannedEnd == input_size) && input.isEof()) ? 1 : 0);
+      if (matchedKind != Integer.MAX_VALUE) {
+        if (profile != null) {
+          profile.match(matchedKind);
+        }
+        sink.token(matchedKind, base + beg, base + matchedEnd, curLexState);
+        TokenizerData.MatchInfo matchInfo = snapshot.getMatchInfo(matchedKind);
+        if (matchInfo.newLexState != -1) {
+          curLexState = matchInfo.newLexState;
+        }
+        if (matchInfo.matchType != TokenizerData.MatchType.MORE) {
+          moreStart = -1;
+        } else if (moreStart == -1) {
+          moreLine = getLine();
+          moreCol = getColumn();
+          moreStart = tokenStart;
+        }
+        curPos = matchedEnd;
+      } else {
+        moreStart = -1;
+        if (!sink.error(base + beg, base + charEnd, curLexState)) {
+          return false;
+        }
+        curPos = charEnd;
+      }
+      if (stopped) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Matches the run of chars from pos that always start a SKIP match of their
+  // own, one match per char as the literal trie would, or per run of a
+  // looped char class as the automaton would, until the end of the window or
+  // the tokenizer is stopped. A loop that runs into the end of the window
+  // before the end of the input is left to the automaton, as is one while
+  // profiling, which counts the automaton states. Returns the end of the
+  // run.
+  private int skipRun(int pos, int lexState, TokenSink sink) {
+    long low = skipChars[2 * lexState];
+    long high = skipChars[(2 * lexState) + 1];
+    long base = input.getBase();
+    int limit = input.limit();
+    while ((pos < limit) && !stopped) {
+      char c = input.charAt(pos);
+      if ((c >= 128) || ((((c < 64) ? low : high) & (1L << c)) == 0)) {
+        break;
+      }
+      CodePointSet loop = snapshot.getSkipLoop(lexState, c);
+      if ((loop != null) && (profile != null)) {
+        break;
+      }
+      int end = input.next(pos);
+      int scannedEnd;
+      if (loop == null) {
+        // The trie looks at the char after the literal to find it has no
+        // children.
+        scannedEnd = (end < limit) ? input.next(end) : end;
+      } else if (loop.isEmpty()) {
+        // The automaton has no states left after a lone char class.
+        scannedEnd = end;
+      } else {
+        while ((end < limit) && loop.contains(input.charAt(end))) {
+          end = input.next(end);
+        }
+        if ((end == limit) && !input.isEof()) {
+          break;
+        }
+        // The automaton looks at the char after the loop to find it ends.
+        scannedEnd = (end < limit) ? input.next(end) : end;
+      }
+      int kind = snapshot.getSkipKind(lexState, c);
+      if (metrics != null) {
+        recordMatch(kind, end - pos, loop != null, false, scannedEnd - end);
+      }
+      if (profile != null) {
+        profile.match(kind);
+      }
+      tokenStart = base + pos;
+      lookaheadEnd = base + scannedEnd + (((scannedEnd == limit) && input.isEof()) ? 1 : 0);
+      moreStart = -1;
+      sink.token(kind, base + pos, base + end, lexState);
+      pos = end;
+    }
+    return pos;
+  }
+
+  // Returns the end of the chars from pos no token can start with in the
+  // lexical state, up to the end of the window. With CODE_POINTS a surrogate
+  // pair is skipped as a whole if its high surrogate is.
+  private int skipErrors(int pos, int lexState) {
+    int limit = input.limit();
+    while ((pos < limit) && !snapshot.canStart(lexState, input.charAt(pos))) {
+      int next = input.next(pos);
+      if (codePoints && Character.isHighSurrogate(input.charAt(pos))) {
+        if (next == limit) {
+          // The low surrogate may be in the next window.
+          break;
+        }
+        if (Character.isLowSurrogate(input.charAt(next))) {
+          next = input.next(next);
+        }
+      }
+      pos = next;
+    }
+    return pos;
+  }
+
+  // Updates the metrics for a match of the given length, or an error if the
+  // kind is Integer.MAX_VALUE.
+  private void recordMatch(int kind, int length, boolean automatonMatched, boolean wildcardMatched, int overshoot) {
+    metrics.chars += length;
+    if (kind == Integer.MAX_VALUE) {
+      metrics.errors++;
+      return;
+    }
+    if (wildcardMatched) {
+      metrics.wildcardMatches++;
+    } else if (automatonMatched) {
+      metrics.automatonMatches++;
+    } else {
+      metrics.literalMatches++;
+    }
+    metrics.match(kind, overshoot);
+  }
+
+  // Where to keep the input window from when refilling it to go on at pos:
+  // the start of the MORE matches before pos if any.
+  private int keepFrom(int pos) {
+    return (moreStart != -1) ? (int) (moreStart - input.getBase()) : pos;
+  }
+
+  // Whether the char at linePos starts a new line. A "\r" followed by "\n"
+  // does not end the line, the "\n" does.
+  private boolean startsLine() {
+    return prevLF || (prevCR && (input.charAt((int) (linePos - input.getBase())) != '\n'));
+  }
+
+  // Scans the input from linePos up to offset for line ends.
+  private void trackLines(long offset) {
+    if (offset <= linePos) {
+      return;
+    }
+    long base = input.getBase();
+    int end = (int) (offset - base);
+    for (int p = (int) (linePos - base); p < end; p = input.next(p)) {
+      char c = input.charAt(p);
+      if (prevLF || (prevCR && (c != '\n'))) {
+        line++;
+        col = 1;
+        if (lineMap != null) {
+          lineMap.addLineStart(base + p);
+        }
+      } else {
+        col++;
+      }
+      prevCR = c == '\r';
+      prevLF = c == '\n';
+    }
+    linePos = offset;
+  }
+}
@@ -1,13 +1,20 @@
 
 package org.javacc.parser;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 // A simple class to hold the data generated by the tokenizer. This is passed to
 // the code generators to produce code.
+//
+// Once built, freeze() returns an immutable TokenizerSnapshot of it, which
+// any number of threads can tokenize with at the same time.
 public class TokenizerData {
 
   // Name of the parser as specified in the PARSER_BEGIN/PARSER_END block.
@@ -23,6 +30,9 @@ public class TokenizerData {
   // just going through the sequence in the order.
   // Since they are all literals, there is no duplication (JavaCC checks that)
   // and hence if a longer match is matched, no need to check the shorter match.
+  // Literals are UTF-16 strings, so a literal starting with a code point
+  // outside the BMP is keyed by its high surrogate and the keys of different
+  // lexical states never collide.
   public Map<Integer, List<String>> literalSequence;
 
   // A map of list of kind values indexed by ((int0LexicalState << 16 | (int)c)
@@ -40,15 +50,15 @@ public class TokenizerData {
   public static class NfaState {
 
     // Set of allowed characters.
-    public Set<Character> characters;
+    public final Set<Character> characters;
     // Next state indices.
-    public Set<Integer>   nextStates;
+    public final Set<Integer>   nextStates;
     // Initial state needs to transition to multiple states so the NFA will try
     // all possibilities.
     // TODO(sreeni) : Try and get rid of it at some point.
-    public Set<Integer>   compositeStates;
+    public final Set<Integer>   compositeStates;
     // match kind if any. Integer.MAX_VALUE if this is not a final state.
-    public int            kind;
+    public final int            kind;
 
     private NfaState(int index, Set<Character> characters, Set<Integer> nextStates, Set<Integer> compositeStates,
         int kind) {
@@ -60,7 +70,7 @@ public class TokenizerData {
   }
 
   // The main nfa.
-  public final Map<Integer, NfaState> nfa = new HashMap<>();
+  public final Map<Integer, NfaState> nfa;
 
   public static enum MatchType {
     SKIP,
@@ -73,13 +83,13 @@ public class TokenizerData {
   public static class MatchInfo {
 
     // String literal image in case this string literal token, null otherwise.
-    public String    image;
+    public final String    image;
     // Type of match.
-    public MatchType matchType;
+    public final MatchType matchType;
     // Any lexical state transition specified.
-    public int       newLexState;
+    public final int       newLexState;
     // Any lexical state transition specified.
-    public String    action;
+    public final String    action;
 
     private MatchInfo(String image, int kind, MatchType matchType, int newLexState, String action) {
       this.image = image;
@@ -104,6 +114,18 @@ public class TokenizerData {
   // DEFAULT lexical state index.
   public int defaultLexState;
 
+  public TokenizerData() {
+    this.nfa = new HashMap<>();
+  }
+
+  /**
+   * An immutable snapshot of the data the tokenizer needs, which shares the
+   * compiled tables and DFAs.
+   */
+  public TokenizerSnapshot freeze() {
+    return new TokenizerSnapshot(this);
+  }
+
   public void setParserName(String parserName) {
     this.parserName = parserName;
   }
@@ -150,6 +172,7 @@ public class TokenizerData {
 
   void updateMatchInfo(Map<Integer, String> actions, int[] newLexStateIndices, long[] toSkip, long[] toSpecial,
       long[] toMore, long[] toToken, String[] allImages) {
+    skipCharsFound = false;
     for (int i = 0; i < newLexStateIndices.length; i++) {
       int vectorIndex = i >> 6;
     long bits = (1L << (i & 077));
@@ -169,6 +192,11 @@ public class TokenizerData {
     }
   }
 
+  void addMatchInfo(int kind, String image, MatchType matchType, int newLexState, String action) {
+    skipCharsFound = false;
+    allMatches.put(kind, new MatchInfo(image, kind, matchType, newLexState, action));
+  }
+
   // Labels.
   public Map<Integer, String> labels;
   public String[]             images;
@@ -177,4 +205,317 @@ public class TokenizerData {
     this.labels = labels;
     this.images = images;
   }
+
+  // Compiled, immutable form of the nfa, initial states, wildcard kinds and
+  // literal NFA start states above.
+  private TokenizerTables tables;
+
+  void setTables(TokenizerTables tables) {
+    this.tables = tables;
+    this.skipCharsFound = false;
+    this.startCharsFound = false;
+  }
+
+  public TokenizerTables getTables() {
+    return tables;
+  }
+
+  // Minimal DFAs indexed by lexical state, null if they were not built.
+  private MinimalDfa[] minimalDfas;
+
+  void setMinimalDfas(MinimalDfa[] minimalDfas) {
+    this.minimalDfas = minimalDfas;
+  }
+
+  // The minimal DFA of the lexical state, null if it has none.
+  public MinimalDfa getMinimalDfa(int lexState) {
+    return (minimalDfas == null) ? null : minimalDfas[lexState];
+  }
+
+  MinimalDfa[] getMinimalDfas() {
+    return minimalDfas;
+  }
+
+  // The state each NFA state had before the states were laid out by a
+  // profile, null if they were not.
+  private int[] sourceStates;
+
+  void setSourceStates(int[] sourceStates) {
+    this.sourceStates = sourceStates;
+  }
+
+  /**
+   * The number the NFA state has in tokenizer data built without a
+   * {@link TokenizerProfile}, which lays out the states of each lexical state
+   * hottest first.
+   */
+  public int getSourceState(int state) {
+    return (sourceStates == null) ? state : sourceStates[state];
+  }
+
+  int[] getSourceStates() {
+    return sourceStates;
+  }
+
+  // Whether the tokenizer steps over surrogate pairs as a whole, see
+  // Options.getCodePoints().
+  private boolean codePoints;
+
+  void setCodePoints(boolean codePoints) {
+    this.codePoints = codePoints;
+  }
+
+  public boolean isCodePoints() {
+    return codePoints;
+  }
+
+  // Per lexical state a bitmap of the ASCII chars that always start a SKIP
+  // match of their own, two longs each, their kinds and, for a SKIP that
+  // loops over a char class, the chars the match goes on with, indexed by
+  // lexical state * 128 + char. Null if there are none. Found when first
+  // asked for, since only the tokenizer needs them.
+  private long[]         skipChars;
+  private int[]          skipKinds;
+  private CodePointSet[] skipLoops;
+  private boolean        skipCharsFound;
+
+  /**
+   * Finds per lexical state the ASCII chars that always start a SKIP match of
+   * their own, so the tokenizer can match runs of them with a bitmap lookup
+   * instead of the literal trie and the automaton. Such a char is either a
+   * SKIP literal that no longer literal, automaton or wildcard match can
+   * extend or take precedence over, or a char of a SKIP that is a single
+   * char class, looped over by + or * or not, which no literal or other
+   * automaton match starts with. The SKIP must not switch lexical states.
+   * Needs the tables and match info.
+   */
+  private void findSkipChars() {
+    if (skipCharsFound || (tables == null)) {
+      return;
+    }
+    skipCharsFound = true;
+    int lexStateCount = tables.getLexStateCount();
+    long[] bits = new long[2 * lexStateCount];
+    int[] kinds = new int[128 * lexStateCount];
+    CodePointSet[] loops = new CodePointSet[128 * lexStateCount];
+    boolean found = false;
+    for (int l = 0; l < lexStateCount; l++) {
+      int root = tables.getLiteralRoot(l);
+      Map<List<Integer>, CodePointSet> lexStateLoops = new HashMap<>();
+      for (char c = 0; c < 128; c++) {
+        int node = (root == -1) ? -1 : tables.getLiteralChild(root, c);
+        int kind;
+        if (node == -1) {
+          kind = findClassSkip(l, c, lexStateLoops, loops);
+          if (kind == Integer.MAX_VALUE) {
+            continue;
+          }
+        } else {
+          kind = tables.getLiteralKind(node);
+          if (tables.hasLiteralChildren(node) || !isLoneSkip(kind, l) || (tables.getNfaStartState(kind) != -1)) {
+            continue;
+          }
+        }
+        bits[(2 * l) + (c >> 6)] |= 1L << c;
+        kinds[(128 * l) + c] = kind;
+        found = true;
+      }
+    }
+    skipChars = found ? bits : null;
+    skipKinds = found ? kinds : null;
+    skipLoops = found ? loops : null;
+  }
+
+  // Whether a match of the kind is a SKIP that stays in the lexical state and
+  // that the wildcard does not take precedence over.
+  private boolean isLoneSkip(int kind, int lexState) {
+    MatchInfo matchInfo = allMatches.get(kind);
+    return (matchInfo != null) && (matchInfo.matchType == MatchType.SKIP)
+        && ((matchInfo.newLexState == -1) || (matchInfo.newLexState == lexState))
+        && (kind < tables.getWildcardKind(lexState));
+  }
+
+  // The kind of the SKIP the automaton matches on c and the chars after it
+  // that are all of a single char class it loops over, Integer.MAX_VALUE if
+  // it is not such a SKIP. Sets the chars the loop goes on with in skipLoops,
+  // an empty set if it does not loop. The states after c map to these chars,
+  // or to null if they are not such a SKIP.
+  private int findClassSkip(int lexState, char c, Map<List<Integer>, CodePointSet> loops,
+      CodePointSet[] skipLoops) {
+    int[] kind = new int[1];
+    List<Integer> next = nfaStep(initialStateSet(lexState), lexState, c, kind);
+    if ((kind[0] == Integer.MAX_VALUE) || !isLoneSkip(kind[0], lexState)) {
+      return Integer.MAX_VALUE;
+    }
+    if (!loops.containsKey(next)) {
+      // Every char either ends the match or goes on with it in the same
+      // states.
+      boolean[] classes = new boolean[tables.getCharClassCount(lexState)];
+      boolean loop = true;
+      for (int charClass = 0; loop && !next.isEmpty() && (charClass < classes.length); charClass++) {
+        int[] nextKind = new int[1];
+        List<Integer> after = nfaStep(next, lexState, charClass, nextKind);
+        classes[charClass] = !after.isEmpty();
+        loop = after.isEmpty() ? (nextKind[0] == Integer.MAX_VALUE)
+            : ((nextKind[0] == kind[0]) && after.equals(next));
+      }
+      loops.put(next, loop ? charsOfClasses(lexState, classes) : null);
+    }
+    if (loops.get(next) == null) {
+      return Integer.MAX_VALUE;
+    }
+    skipLoops[(128 * lexState) + c] = loops.get(next);
+    return kind[0];
+  }
+
+  // The initial state of the lexical state and its composite states, sorted,
+  // empty if it has none.
+  private List<Integer> initialStateSet(int lexState) {
+    List<Integer> states = new ArrayList<>();
+    int initialState = tables.getInitialState(lexState);
+    if (initialState != -1) {
+      states.add(initialState);
+      for (int i = tables.getCompositeStatesStart(initialState); i < tables.getCompositeStatesEnd(initialState); i++) {
+        states.add(tables.getCompositeState(i));
+      }
+    }
+    Collections.sort(states);
+    return states;
+  }
+
+  private List<Integer> nfaStep(List<Integer> states, int lexState, char c, int[] kind) {
+    return nfaStep(states, lexState, tables.getCharClass(lexState, c), kind);
+  }
+
+  // The sorted states the NFA moves to from the states on the char class, as
+  // NfaMatcher does, setting kind[0] to the kind matched on the way.
+  private List<Integer> nfaStep(List<Integer> states, int lexState, int charClass, int[] kind) {
+    Set<Integer> next = new HashSet<>();
+    kind[0] = Integer.MAX_VALUE;
+    for (int state : states) {
+      if (tables.canMoveOnClass(state, charClass)) {
+        kind[0] = Math.min(kind[0], tables.getKind(state));
+        for (int i = tables.getNextStatesStart(state); i < tables.getNextStatesEnd(state); i++) {
+          next.add(tables.getNextState(i));
+        }
+      }
+    }
+    List<Integer> sorted = new ArrayList<>(next);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  // The chars of the given char classes of the lexical state.
+  private CodePointSet charsOfClasses(int lexState, boolean[] classes) {
+    int[] ranges = new int[16];
+    int length = 0;
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      if (!classes[tables.getCharClass(lexState, (char) c)]) {
+        continue;
+      }
+      if ((length > 0) && (ranges[length - 1] == (c - 1))) {
+        ranges[length - 1] = c;
+        continue;
+      }
+      if (length == ranges.length) {
+        ranges = Arrays.copyOf(ranges, 2 * length);
+      }
+      ranges[length++] = c;
+      ranges[length++] = c;
+    }
+    return CodePointSet.of(Arrays.copyOf(ranges, length));
+  }
+
+  // The bitmaps, kinds and loops of findSkipChars, null if there are no such
+  // chars.
+  long[] getSkipChars() {
+    findSkipChars();
+    return skipChars;
+  }
+
+  int[] getSkipKinds() {
+    findSkipChars();
+    return skipKinds;
+  }
+
+  CodePointSet[] getSkipLoops() {
+    findSkipChars();
+    return skipLoops;
+  }
+
+  // Per lexical state a bitmap of the ASCII chars a token can start with, two
+  // longs each, and the set of all of them, which is a table of ranges for
+  // the other chars. Null if there are no tables. Found when first asked
+  // for, since only the tokenizer needs them.
+  private long[]         startBits;
+  private CodePointSet[] startChars;
+  private boolean        startCharsFound;
+
+  /**
+   * Finds per lexical state the chars a token can start with: the first
+   * chars of the literals and the chars the initial NFA states move on, or
+   * every char if the lexical state has a wildcard. The tokenizer reports any
+   * other char as an error without running the literal trie or the
+   * automaton. Needs the tables.
+   */
+  private void findStartChars() {
+    if (startCharsFound || (tables == null)) {
+      return;
+    }
+    startCharsFound = true;
+    int lexStateCount = tables.getLexStateCount();
+    long[] bits = new long[2 * lexStateCount];
+    CodePointSet[] chars = new CodePointSet[lexStateCount];
+    for (int l = 0; l < lexStateCount; l++) {
+      chars[l] = findStartChars(l);
+      for (char c = 0; c < 128; c++) {
+        if (chars[l].contains(c)) {
+          bits[(2 * l) + (c >> 6)] |= 1L << c;
+        }
+      }
+    }
+    startBits = bits;
+    startChars = chars;
+  }
+
+  // The start chars of the lexical state, as UTF-16 chars.
+  private CodePointSet findStartChars(int lexState) {
+    if (tables.getWildcardKind(lexState) != Integer.MAX_VALUE) {
+      return CodePointSet.of(0, Character.MAX_VALUE);
+    }
+    // The char classes the initial state or its composite states move on.
+    boolean[] classes = new boolean[tables.getCharClassCount(lexState)];
+    int initialState = tables.getInitialState(lexState);
+    if (initialState != -1) {
+      for (int charClass = 0; charClass < classes.length; charClass++) {
+        classes[charClass] = tables.canMoveOnClass(initialState, charClass);
+        for (int i = tables.getCompositeStatesStart(initialState);
+            !classes[charClass] && (i < tables.getCompositeStatesEnd(initialState)); i++) {
+          classes[charClass] = tables.canMoveOnClass(tables.getCompositeState(i), charClass);
+        }
+      }
+    }
+    CodePointSet set = charsOfClasses(lexState, classes);
+    int root = tables.getLiteralRoot(lexState);
+    if (root != -1) {
+      int[] literalChars = new int[2 * (tables.getLiteralEdgesEnd(root) - tables.getLiteralEdgesStart(root))];
+      for (int i = tables.getLiteralEdgesStart(root); i < tables.getLiteralEdgesEnd(root); i++) {
+        int j = 2 * (i - tables.getLiteralEdgesStart(root));
+        literalChars[j] = literalChars[j + 1] = tables.getLiteralEdgeChar(i);
+      }
+      set = set.union(CodePointSet.of(literalChars));
+    }
+    return set;
+  }
+
+  // The bitmaps and sets of findStartChars, null if there are no tables.
+  long[] getStartBits() {
+    findStartChars();
+    return startBits;
+  }
+
+  CodePointSet[] getStartCharSets() {
+    findStartChars();
+    return startChars;
+  }
 }
@@ -0,0 +1,429 @@
+package org.javacc.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.javacc.Version;
+
+/**
+ * Caches the {@link TokenizerData} of grammars in a directory, in a compact
+ * versioned binary format that is memory mapped when read, so a tokenizer can
+ * be set up without running {@link Semanticize} and {@link LexGen}.
+ *
+ * Entries are keyed by {@link #digest(Context)}, which covers only what the
+ * tokenizer data is built from: the token productions, the string literals and
+ * other regular expressions of the BNF productions, TOKEN_MGR_DECLS, the
+ * options and the tokenizer profile they name. The file holds the compiled
+ * {@link TokenizerTables}, the minimal DFAs if they were built, the match
+ * info, labels, images and lexical state names, but not the map based NFA and
+ * literals of TokenizerData, so the data read back can be tokenized with but
+ * not generated code from.
+ */
+public final class TokenizerDataCache {
+
+  // Version of the file format, to be bumped on any change to it.
+  public static final int     VERSION = 4;
+
+  // "JCCT"
+  private static final int    MAGIC   = 0x4A434354;
+
+  private static final String SUFFIX  = ".tokenizer";
+
+  private final File          dir;
+
+  public TokenizerDataCache(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * The tokenizer data cached for the digest, or null if there is none or it
+   * cannot be read.
+   */
+  public TokenizerData get(String digest) {
+    File file = new File(dir, digest + TokenizerDataCache.SUFFIX);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return TokenizerDataCache.read(file);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Caches the tokenizer data for the digest. The file is written aside and
+   * moved into place, so concurrent readers see either no entry or all of it.
+   */
+  public void put(String digest, TokenizerData tokenizerData) throws IOException {
+    Files.createDirectories(dir.toPath());
+    File tmp = File.createTempFile("tokenizer", ".tmp", dir);
+    try {
+      TokenizerDataCache.write(tokenizerData, tmp);
+      try {
+        Files.move(tmp.toPath(), new File(dir, digest + TokenizerDataCache.SUFFIX).toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), new File(dir, digest + TokenizerDataCache.SUFFIX).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * The SHA-256 digest of what the tokenizer data of the grammar is built from,
+   * in hex. It must be taken after the grammar is parsed and before
+   * {@link Semanticize} rewrites its regular expressions. The interpreter
+   * options only affect how the data is run and are left out, and so are
+   * comments and the layout of the token productions.
+   */
+  public static String digest(Context context) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(Version.fullVersion).append('\n').append(TokenizerDataCache.VERSION).append('\n');
+    for (Map.Entry<String, Object> option : new TreeMap<>(Options.getOptions()).entrySet()) {
+      if (!option.getKey().startsWith("INTERPRETER_")) {
+        sb.append(option.getKey()).append('=').append(option.getValue()).append('\n');
+      }
+    }
+    if (Options.getTokenizerProfile().length() > 0) {
+      // The layout depends on the counts in the profile, not on its name.
+      try {
+        sb.append(new String(Files.readAllBytes(new File(Options.getTokenizerProfile()).toPath()),
+            StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        sb.append("unreadable\n");
+      }
+    }
+    sb.append(context.globals().cu_name).append('\n');
+    if (context.globals().token_mgr_decls != null) {
+      for (Token t : context.globals().token_mgr_decls) {
+        sb.append(t.image).append(' ');
+      }
+    }
+    sb.append('\n');
+    for (TokenProduction p : context.globals().rexprlist) {
+      if (p.firstToken != null) {
+        for (Token t = p.firstToken; t != null; t = (t == p.lastToken) ? null : t.next) {
+          sb.append(t.image).append(' ');
+        }
+        sb.append('\n');
+      } else if (!(p.respecs.get(0).rexp instanceof RJustName)) {
+        // Regular expressions of the BNF productions have no tokens of their
+        // own. References to named tokens there add no token.
+        TokenizerDataCache.describe(p.respecs.get(0).rexp, sb);
+        sb.append('\n');
+      }
+    }
+
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error(e); // Every Java platform has SHA-256
+    }
+  }
+
+  // Appends the structure of the regular expression.
+  private static void describe(RegularExpression re, StringBuilder sb) {
+    sb.append(re.private_rexp ? "#" : "").append(re.label).append(':');
+    if (re instanceof RStringLiteral) {
+      sb.append('"').append(((RStringLiteral) re).image.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    } else if (re instanceof RJustName) {
+      sb.append('<').append(re.label).append('>');
+    } else if (re instanceof RCharacterList) {
+      RCharacterList list = (RCharacterList) re;
+      sb.append(list.negated_list ? "~[" : "[");
+      for (Expansion descriptor : list.descriptors) {
+        if (descriptor instanceof SingleCharacter) {
+          sb.append((int) ((SingleCharacter) descriptor).ch).append(',');
+        } else if (descriptor instanceof CodePointRange) {
+          CodePointRange range = (CodePointRange) descriptor;
+          sb.append(range.getLeft()).append('-').append(range.getRight()).append(',');
+        } else {
+          CharacterRange range = (CharacterRange) descriptor;
+          sb.append((int) range.getLeft()).append('-').append((int) range.getRight()).append(',');
+        }
+      }
+      sb.append(']');
+    } else if (re instanceof RChoice) {
+      sb.append('(');
+      for (RegularExpression choice : ((RChoice) re).getChoices()) {
+        TokenizerDataCache.describe(choice, sb);
+        sb.append('|');
+      }
+      sb.append(')');
+    } else if (re instanceof RSequence) {
+      sb.append('(');
+      for (RegularExpression unit : ((RSequence) re).units) {
+        TokenizerDataCache.describe(unit, sb);
+        sb.append(' ');
+      }
+      sb.append(')');
+    } else if (re instanceof ROneOrMore) {
+      TokenizerDataCache.describe(((ROneOrMore) re).regexpr, sb);
+      sb.append('+');
+    } else if (re instanceof RZeroOrMore) {
+      TokenizerDataCache.describe(((RZeroOrMore) re).regexpr, sb);
+      sb.append('*');
+    } else if (re instanceof RZeroOrOne) {
+      TokenizerDataCache.describe(((RZeroOrOne) re).regexpr, sb);
+      sb.append('?');
+    } else if (re instanceof RRepetitionRange) {
+      RRepetitionRange range = (RRepetitionRange) re;
+      TokenizerDataCache.describe(range.regexpr, sb);
+      sb.append('{').append(range.min).append(',').append(range.hasMax ? range.max : -1).append('}');
+    } else {
+      sb.append(re.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Writes the tokenizer data to the file.
+   */
+  public static void write(TokenizerData tokenizerData, File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(TokenizerDataCache.MAGIC);
+      out.writeInt(TokenizerDataCache.VERSION);
+      TokenizerDataCache.writeString(out, tokenizerData.parserName);
+      TokenizerDataCache.writeString(out, tokenizerData.decls);
+      out.writeInt(tokenizerData.defaultLexState);
+      TokenizerDataCache.writeStrings(out, tokenizerData.lexStateNames);
+      TokenizerDataCache.writeStrings(out, tokenizerData.images);
+
+      Map<Integer, String> labels = (tokenizerData.labels == null) ? new HashMap<Integer, String>()
+          : tokenizerData.labels;
+      out.writeInt(labels.size());
+      for (Map.Entry<Integer, String> label : new TreeMap<>(labels).entrySet()) {
+        out.writeInt(label.getKey());
+        TokenizerDataCache.writeString(out, label.getValue());
+      }
+
+      out.writeInt(tokenizerData.allMatches.size());
+      for (Map.Entry<Integer, TokenizerData.MatchInfo> match : new TreeMap<>(tokenizerData.allMatches).entrySet()) {
+        TokenizerData.MatchInfo matchInfo = match.getValue();
+        out.writeInt(match.getKey());
+        TokenizerDataCache.writeString(out, matchInfo.image);
+        out.writeInt(matchInfo.matchType.ordinal());
+        out.writeInt(matchInfo.newLexState);
+        TokenizerDataCache.writeString(out, matchInfo.action);
+      }
+
+      TreeSet<Integer> ignoreCaseKinds = new TreeSet<>();
+      if (tokenizerData.ignoreCaseKinds != null) {
+        ignoreCaseKinds.addAll(tokenizerData.ignoreCaseKinds);
+      }
+      out.writeInt(ignoreCaseKinds.size());
+      for (int kind : ignoreCaseKinds) {
+        out.writeInt(kind);
+      }
+
+      out.writeBoolean(tokenizerData.isCodePoints());
+      int[] sourceStates = new int[tokenizerData.getTables().getStateCount()];
+      for (int state = 0; state < sourceStates.length; state++) {
+        sourceStates[state] = tokenizerData.getSourceState(state);
+      }
+      TokenizerDataCache.writeInts(out, sourceStates);
+      tokenizerData.getTables().write(out);
+
+      for (int l = 0; l < tokenizerData.getTables().getLexStateCount(); l++) {
+        MinimalDfa dfa = tokenizerData.getMinimalDfa(l);
+        out.writeBoolean(dfa != null);
+        if (dfa != null) {
+          dfa.write(out);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads tokenizer data written by {@link #write}, mapping the file into
+   * memory.
+   *
+   * @throws IOException if the file cannot be read, is not a tokenizer data
+   *         file or is of another version
+   */
+  public static TokenizerData read(File file) throws IOException {
+    ByteBuffer in;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      if (in.getInt() != TokenizerDataCache.MAGIC) {
+        throw new IOException(file + " is not a tokenizer data file");
+      }
+      int version = in.getInt();
+      if (version != TokenizerDataCache.VERSION) {
+        throw new IOException(file + " is of version " + version + " instead of " + TokenizerDataCache.VERSION);
+      }
+      TokenizerData tokenizerData = new TokenizerData();
+      tokenizerData.setParserName(TokenizerDataCache.readString(in));
+      tokenizerData.setDecls(TokenizerDataCache.readString(in));
+      tokenizerData.setDefaultLexState(in.getInt());
+      tokenizerData.lexStateNames = TokenizerDataCache.readStrings(in);
+      String[] images = TokenizerDataCache.readStrings(in);
+
+      Map<Integer, String> labels = new HashMap<>();
+      for (int n = in.getInt(); n > 0; n--) {
+        int kind = in.getInt();
+        labels.put(kind, TokenizerDataCache.readString(in));
+      }
+      tokenizerData.setLabelsAndImages(labels, images);
+
+      for (int n = in.getInt(); n > 0; n--) {
+        int kind = in.getInt();
+        String image = TokenizerDataCache.readString(in);
+        TokenizerData.MatchType matchType = TokenizerData.MatchType.values()[in.getInt()];
+        int newLexState = in.getInt();
+        tokenizerData.addMatchInfo(kind, image, matchType, newLexState, TokenizerDataCache.readString(in));
+      }
+
+      HashSet<Integer> ignoreCaseKinds = new HashSet<>();
+      for (int kind : TokenizerDataCache.readInts(in)) {
+        ignoreCaseKinds.add(kind);
+      }
+      tokenizerData.setIgnoreCaserKinds(ignoreCaseKinds);
+      tokenizerData.setCodePoints(in.get() != 0);
+      int[] sourceStates = TokenizerDataCache.readInts(in);
+
+      TokenizerTables tables = TokenizerTables.read(in);
+      Map<Integer, Integer> initialStates = new HashMap<>();
+      Map<Integer, Integer> wildcardKinds = new HashMap<>();
+      for (int l = 0; l < tables.getLexStateCount(); l++) {
+        if (tables.getInitialState(l) != -1) {
+          initialStates.put(l, tables.getInitialState(l));
+        }
+        if (tables.getWildcardKind(l) != Integer.MAX_VALUE) {
+          wildcardKinds.put(l, tables.getWildcardKind(l));
+        }
+      }
+      tokenizerData.setInitialStates(initialStates);
+      tokenizerData.setWildcardKind(wildcardKinds);
+      tokenizerData.setTables(tables);
+      tokenizerData.setSourceStates(sourceStates);
+
+      MinimalDfa[] dfas = new MinimalDfa[tables.getLexStateCount()];
+      boolean minimized = false;
+      for (int l = 0; l < dfas.length; l++) {
+        if (in.get() != 0) {
+          dfas[l] = MinimalDfa.read(in);
+          minimized = true;
+        }
+      }
+      if (minimized) {
+        tokenizerData.setMinimalDfas(dfas);
+      }
+      return tokenizerData;
+    } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+        | NegativeArraySizeException e) {
+      throw new IOException(file + " is truncated or corrupt", e);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(s.length());
+      out.writeChars(s);
+    }
+  }
+
+  private static String readString(ByteBuffer in) {
+    char[] chars = TokenizerDataCache.readChars(in);
+    return (chars == null) ? null : new String(chars);
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] a) throws IOException {
+    out.writeInt((a == null) ? -1 : a.length);
+    if (a != null) {
+      for (String s : a) {
+        TokenizerDataCache.writeString(out, s);
+      }
+    }
+  }
+
+  private static String[] readStrings(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    String[] a = new String[length];
+    for (int i = 0; i < length; i++) {
+      a[i] = TokenizerDataCache.readString(in);
+    }
+    return a;
+  }
+
+  // Arrays are written as their length followed by the elements, big endian.
+
+  static void writeInts(DataOutputStream out, int[] a) throws IOException {
+    out.writeInt(a.length);
+    for (int v : a) {
+      out.writeInt(v);
+    }
+  }
+
+  static void writeLongs(DataOutputStream out, long[] a) throws IOException {
+    out.writeInt(a.length);
+    for (long v : a) {
+      out.writeLong(v);
+    }
+  }
+
+  static void writeChars(DataOutputStream out, char[] a) throws IOException {
+    out.writeInt(a.length);
+    for (char v : a) {
+      out.writeChar(v);
+    }
+  }
+
+  static int[] readInts(ByteBuffer in) {
+    int[] a = new int[in.getInt()];
+    in.asIntBuffer().get(a);
+    in.position(in.position() + (a.length << 2));
+    return a;
+  }
+
+  static long[] readLongs(ByteBuffer in) {
+    long[] a = new long[in.getInt()];
+    in.asLongBuffer().get(a);
+    in.position(in.position() + (a.length << 3));
+    return a;
+  }
+
+  // Also reads the strings written by writeString, returning null for -1.
+  static char[] readChars(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    char[] a = new char[length];
+    in.asCharBuffer().get(a);
+    in.position(in.position() + (length << 1));
+    return a;
+  }
+}
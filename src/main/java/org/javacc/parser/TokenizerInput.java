@@ -0,0 +1,35 @@
+package org.javacc.parser;
+
+import java.io.IOException;
+
+// The input of the tokenizer as seen by the matchers: a window of positions
+// over the input that may slide forward as tokens are consumed. A position is
+// an index into the window; the absolute offset of position p is
+// getBase() + p. Positions are char indices for char input and byte offsets
+// for UTF-8 input, so a char may span more than one position and the matchers
+// step from a char to the next one with next().
+public abstract class TokenizerInput {
+
+  // Number of positions in the window.
+  public abstract int limit();
+
+  // Absolute offset of position 0.
+  public abstract long getBase();
+
+  // True if the window ends at the end of the input.
+  public abstract boolean isEof();
+
+  // Drops the positions before keepFrom and reads more input after the ones
+  // kept. Positions shift down by keepFrom. Returns false if no more input
+  // could be read.
+  public abstract boolean fill(int keepFrom) throws IOException;
+
+  // The char starting at pos.
+  public abstract char charAt(int pos);
+
+  // The position of the char after the one starting at pos.
+  public abstract int next(int pos);
+
+  // The chars in [start, end).
+  public abstract CharSequence subSequence(int start, int end);
+}
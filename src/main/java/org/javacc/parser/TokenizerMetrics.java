@@ -0,0 +1,268 @@
+package org.javacc.parser;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters a {@link Tokenizer} updates while tokenizing if they are set with
+ * {@link Tokenizer#setMetrics}. Without metrics the tokenizer checks for them
+ * once per match and then runs the lazy DFA and NFA loops that do not count
+ * states, so disabled metrics cost one check per match.
+ *
+ * The counters are: the matches per kind, the errors, the input length in the
+ * units of the input (chars, or bytes for UTF-8 input) and the time spent
+ * tokenizing, including the sink; how many matches the literal trie decided
+ * and how many the DFA or NFA decided; how far past the end of the matches
+ * the tokenizer looked (the maximal munch overshoot); and per lexical state a
+ * histogram of the number of NFA states active on each char the lazy DFA or
+ * NFA read, which the minimal DFAs do not know.
+ *
+ * The counters are updated by the thread tokenizing without synchronization,
+ * so a snapshot taken while it runs may be slightly inconsistent.
+ */
+public final class TokenizerMetrics implements TokenizerMetricsMXBean {
+
+  // Histogram buckets: one per count up to HISTOGRAM_BUCKETS - 2, then one
+  // for all larger counts.
+  public static final int         HISTOGRAM_BUCKETS = 33;
+
+  private final TokenizerSnapshot snapshot;
+
+  private final long[]            kindCounts;
+  private final long[][]          activeStates;
+  long                            errors;
+  long                            chars;
+  long                            nanos;
+  long                            literalMatches;
+  long                            automatonMatches;
+  long                            wildcardMatches;
+  long                            overshoot;
+  long                            maxOvershoot;
+
+  public TokenizerMetrics(TokenizerData tokenizerData) {
+    this(tokenizerData.freeze());
+  }
+
+  public TokenizerMetrics(TokenizerSnapshot snapshot) {
+    this.snapshot = snapshot;
+    int maxKind = 0;
+    for (int kind : snapshot.getMatches().keySet()) {
+      maxKind = Math.max(maxKind, kind);
+    }
+    kindCounts = new long[maxKind + 1];
+    activeStates = new long[snapshot.getTables().getLexStateCount()][HISTOGRAM_BUCKETS];
+  }
+
+  // The histogram of the lexical state, to pass to the DFA or NFA.
+  long[] getHistogram(int lexState) {
+    return activeStates[lexState];
+  }
+
+  // Adds a count of active NFA states to a histogram.
+  static void addActiveStates(long[] histogram, int count) {
+    histogram[Math.min(count, HISTOGRAM_BUCKETS - 1)]++;
+  }
+
+  void match(int kind, int overshoot) {
+    kindCounts[kind]++;
+    this.overshoot += overshoot;
+    if (overshoot > maxOvershoot) {
+      maxOvershoot = overshoot;
+    }
+  }
+
+  /**
+   * Sets all counters to zero.
+   */
+  @Override
+  public void reset() {
+    Arrays.fill(kindCounts, 0);
+    for (long[] histogram : activeStates) {
+      Arrays.fill(histogram, 0);
+    }
+    errors = 0;
+    chars = 0;
+    nanos = 0;
+    literalMatches = 0;
+    automatonMatches = 0;
+    wildcardMatches = 0;
+    overshoot = 0;
+    maxOvershoot = 0;
+  }
+
+  @Override
+  public long getMatches() {
+    long matches = 0;
+    for (long count : kindCounts) {
+      matches += count;
+    }
+    return matches;
+  }
+
+  @Override
+  public long getErrors() {
+    return errors;
+  }
+
+  @Override
+  public long getChars() {
+    return chars;
+  }
+
+  @Override
+  public long getNanos() {
+    return nanos;
+  }
+
+  @Override
+  public double getMatchesPerSecond() {
+    return (nanos == 0) ? 0 : (getMatches() * 1e9) / nanos;
+  }
+
+  @Override
+  public double getCharsPerSecond() {
+    return (nanos == 0) ? 0 : (chars * 1e9) / nanos;
+  }
+
+  @Override
+  public long getLiteralMatches() {
+    return literalMatches;
+  }
+
+  @Override
+  public long getAutomatonMatches() {
+    return automatonMatches;
+  }
+
+  @Override
+  public long getWildcardMatches() {
+    return wildcardMatches;
+  }
+
+  @Override
+  public double getLiteralHitRate() {
+    long decided = literalMatches + automatonMatches + wildcardMatches;
+    return (decided == 0) ? 0 : (double) literalMatches / decided;
+  }
+
+  @Override
+  public long getOvershoot() {
+    return overshoot;
+  }
+
+  @Override
+  public long getMaxOvershoot() {
+    return maxOvershoot;
+  }
+
+  public long getKindCount(int kind) {
+    return kindCounts[kind];
+  }
+
+  @Override
+  public Map<String, Long> getKindCounts() {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    for (int kind = 0; kind < kindCounts.length; kind++) {
+      if (kindCounts[kind] != 0) {
+        counts.put(label(kind), kindCounts[kind]);
+      }
+    }
+    return counts;
+  }
+
+  public long[] getActiveStates(int lexState) {
+    return activeStates[lexState].clone();
+  }
+
+  @Override
+  public Map<String, long[]> getActiveStates() {
+    Map<String, long[]> histograms = new LinkedHashMap<String, long[]>();
+    for (int l = 0; l < activeStates.length; l++) {
+      histograms.put(snapshot.getLexStateNames().get(l), activeStates[l].clone());
+    }
+    return histograms;
+  }
+
+  private String label(int kind) {
+    String label = snapshot.getLabels().get(kind);
+    if (label == null) {
+      TokenizerData.MatchInfo matchInfo = snapshot.getMatchInfo(kind);
+      label = ((matchInfo != null) && (matchInfo.image != null)) ? "\"" + matchInfo.image + "\"" : "" + kind;
+    }
+    return label;
+  }
+
+  /**
+   * A JSON snapshot of the counters.
+   */
+  @Override
+  public String toJson() {
+    StringBuilder sb = new StringBuilder("{\n");
+    sb.append("  \"matches\": ").append(getMatches()).append(",\n");
+    sb.append("  \"errors\": ").append(errors).append(",\n");
+    sb.append("  \"chars\": ").append(chars).append(",\n");
+    sb.append("  \"nanos\": ").append(nanos).append(",\n");
+    sb.append("  \"matchesPerSecond\": ").append(Math.round(getMatchesPerSecond())).append(",\n");
+    sb.append("  \"charsPerSecond\": ").append(Math.round(getCharsPerSecond())).append(",\n");
+    sb.append("  \"literalMatches\": ").append(literalMatches).append(",\n");
+    sb.append("  \"automatonMatches\": ").append(automatonMatches).append(",\n");
+    sb.append("  \"wildcardMatches\": ").append(wildcardMatches).append(",\n");
+    sb.append("  \"overshoot\": ").append(overshoot).append(",\n");
+    sb.append("  \"maxOvershoot\": ").append(maxOvershoot).append(",\n");
+    sb.append("  \"kindCounts\": {");
+    String sep = "\n";
+    for (Map.Entry<String, Long> count : getKindCounts().entrySet()) {
+      sb.append(sep).append("    ").append(TokenizerMetrics.quote(count.getKey())).append(": ")
+          .append(count.getValue());
+      sep = ",\n";
+    }
+    sb.append("\n  },\n");
+    sb.append("  \"activeStates\": {");
+    sep = "\n";
+    for (Map.Entry<String, long[]> histogram : getActiveStates().entrySet()) {
+      long[] counts = histogram.getValue();
+      int length = counts.length;
+      while ((length > 0) && (counts[length - 1] == 0)) {
+        length--;
+      }
+      sb.append(sep).append("    ").append(TokenizerMetrics.quote(histogram.getKey())).append(": [");
+      for (int i = 0; i < length; i++) {
+        sb.append((i == 0) ? "" : ", ").append(counts[i]);
+      }
+      sb.append(']');
+      sep = ",\n";
+    }
+    sb.append("\n  }\n}\n");
+    return sb.toString();
+  }
+
+  private static String quote(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if ((c == '"') || (c == '\\')) {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server under
+   * org.javacc:type=TokenizerMetrics,name=&lt;name&gt;.
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName("org.javacc:type=TokenizerMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+}
@@ -0,0 +1,43 @@
+package org.javacc.parser;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link TokenizerMetrics}.
+ */
+public interface TokenizerMetricsMXBean {
+
+  long getMatches();
+
+  long getErrors();
+
+  long getChars();
+
+  long getNanos();
+
+  double getMatchesPerSecond();
+
+  double getCharsPerSecond();
+
+  long getLiteralMatches();
+
+  long getAutomatonMatches();
+
+  long getWildcardMatches();
+
+  double getLiteralHitRate();
+
+  long getOvershoot();
+
+  long getMaxOvershoot();
+
+  // Matches per kind, keyed by label.
+  Map<String, Long> getKindCounts();
+
+  // Histograms of the active NFA states per char, keyed by lexical state.
+  Map<String, long[]> getActiveStates();
+
+  String toJson();
+
+  void reset();
+}
@@ -0,0 +1,180 @@
+package org.javacc.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Hit counts a {@link Tokenizer} records if they are set with
+ * {@link Tokenizer#setProfile}: the matches per kind, and per NFA state the
+ * number of chars it was active on. A profile recorded over a representative
+ * input and saved with {@link #write} can be given to {@link LexGen} with the
+ * TOKENIZER_PROFILE option, which then orders the literals and lays out the
+ * NFA states of the tokenizer data hottest first.
+ *
+ * While a profile is recorded the tokenizer runs the NFA rather than the DFAs,
+ * which do not know the NFA states. The states are counted in the numbering
+ * of tokenizer data built without a profile, see
+ * {@link TokenizerData#getSourceState}, so a profile stays valid for data
+ * laid out by an earlier one.
+ *
+ * The file is text, a line per count that is not zero:
+ *
+ * <pre>
+ * profile &lt;parser name&gt; &lt;kinds&gt; &lt;states&gt;
+ * kind &lt;kind&gt; &lt;count&gt;
+ * state &lt;state&gt; &lt;count&gt;
+ * </pre>
+ */
+public final class TokenizerProfile {
+
+  private final String        parserName;
+  private final long[]        kindCounts;
+  private final long[]        stateCounts;
+
+  // The state of each source state in the tokenizer data the counts were
+  // recorded with, null if they are in the same numbering.
+  private final int[]         states;
+
+  public TokenizerProfile(TokenizerData tokenizerData) {
+    int maxKind = 0;
+    for (int kind : tokenizerData.allMatches.keySet()) {
+      maxKind = Math.max(maxKind, kind);
+    }
+    this.parserName = tokenizerData.parserName;
+    this.kindCounts = new long[maxKind + 1];
+    this.stateCounts = new long[tokenizerData.getTables().getStateCount()];
+    int[] states = new int[stateCounts.length];
+    boolean renumbered = false;
+    for (int state = 0; state < stateCounts.length; state++) {
+      states[tokenizerData.getSourceState(state)] = state;
+      renumbered |= tokenizerData.getSourceState(state) != state;
+    }
+    this.states = renumbered ? states : null;
+  }
+
+  private TokenizerProfile(String parserName, int kinds, int states) {
+    this.parserName = parserName;
+    this.kindCounts = new long[kinds];
+    this.stateCounts = new long[states];
+    this.states = null;
+  }
+
+  void match(int kind) {
+    kindCounts[kind]++;
+  }
+
+  // The counts the NFA adds to, by state of the tokenizer data.
+  long[] getActiveStates() {
+    return stateCounts;
+  }
+
+  public String getParserName() {
+    return parserName;
+  }
+
+  public int getKindCount() {
+    return kindCounts.length;
+  }
+
+  public int getStateCount() {
+    return stateCounts.length;
+  }
+
+  public long getKindHits(int kind) {
+    return (kind < kindCounts.length) ? kindCounts[kind] : 0;
+  }
+
+  // The chars the state was active on, by state of tokenizer data built
+  // without a profile.
+  public long getStateHits(int sourceState) {
+    return stateCounts[(states == null) ? sourceState : states[sourceState]];
+  }
+
+  /**
+   * Whether the profile was recorded with tokenizer data of the same grammar,
+   * as far as the parser name and the number of kinds and states tell.
+   */
+  public boolean matches(TokenizerProfile profile) {
+    return parserName.equals(profile.parserName) && (kindCounts.length == profile.kindCounts.length)
+        && (stateCounts.length == profile.stateCounts.length);
+  }
+
+  /**
+   * Adds the counts of a matching profile to these.
+   *
+   * @throws IllegalArgumentException if the profile does not match
+   */
+  public void add(TokenizerProfile profile) {
+    if (!matches(profile)) {
+      throw new IllegalArgumentException("Profile of " + profile.parserName + " does not match " + parserName);
+    }
+    for (int kind = 0; kind < kindCounts.length; kind++) {
+      kindCounts[kind] += profile.kindCounts[kind];
+    }
+    for (int sourceState = 0; sourceState < stateCounts.length; sourceState++) {
+      stateCounts[(states == null) ? sourceState : states[sourceState]] += profile.getStateHits(sourceState);
+    }
+  }
+
+  public void write(File file) throws IOException {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+      out.println("profile " + parserName + " " + kindCounts.length + " " + stateCounts.length);
+      for (int kind = 0; kind < kindCounts.length; kind++) {
+        if (kindCounts[kind] != 0) {
+          out.println("kind " + kind + " " + kindCounts[kind]);
+        }
+      }
+      for (int sourceState = 0; sourceState < stateCounts.length; sourceState++) {
+        long hits = getStateHits(sourceState);
+        if (hits != 0) {
+          out.println("state " + sourceState + " " + hits);
+        }
+      }
+      if (out.checkError()) {
+        throw new IOException("Could not write " + file);
+      }
+    }
+  }
+
+  /**
+   * Reads a profile written by {@link #write}.
+   *
+   * @throws IOException if the file cannot be read or is not a profile
+   */
+  public static TokenizerProfile read(File file) throws IOException {
+    try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String[] header = TokenizerProfile.fields(file, in.readLine());
+      if (!header[0].equals("profile")) {
+        throw new IOException(file + " is not a tokenizer profile");
+      }
+      TokenizerProfile profile;
+      try {
+        profile = new TokenizerProfile(header[1], Integer.parseInt(header[2]), Integer.parseInt(header[3]));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+          String[] fields = TokenizerProfile.fields(file, line);
+          long[] counts = fields[0].equals("kind") ? profile.kindCounts
+              : fields[0].equals("state") ? profile.stateCounts : null;
+          if ((counts == null) || (fields.length != 3)) {
+            throw new IOException(file + " has an invalid line: " + line);
+          }
+          counts[Integer.parseInt(fields[1])] = Long.parseLong(fields[2]);
+        }
+      } catch (NumberFormatException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+        throw new IOException(file + " is not a valid tokenizer profile", e);
+      }
+      return profile;
+    }
+  }
+
+  private static String[] fields(File file, String line) throws IOException {
+    String[] fields = (line == null) ? new String[0] : line.trim().split(" ");
+    if ((fields.length < 3) || (fields[0].equals("profile") && (fields.length != 4))) {
+      throw new IOException(file + " is not a valid tokenizer profile");
+    }
+    return fields;
+  }
+}
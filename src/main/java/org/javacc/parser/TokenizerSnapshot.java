@@ -0,0 +1,164 @@
+package org.javacc.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of what a {@link Tokenizer} needs of a
+ * {@link TokenizerData}, made by {@link TokenizerData#freeze()}. Its fields
+ * are private and final, its collections unmodifiable copies and its arrays
+ * copied, so any number of threads can tokenize with it at the same time. It
+ * shares the compiled tables and DFAs, which are immutable already.
+ */
+public final class TokenizerSnapshot {
+
+  private final String                                parserName;
+  private final List<String>                          lexStateNames;
+  private final int                                   defaultLexState;
+  private final Map<Integer, TokenizerData.MatchInfo> matches;
+  private final Map<Integer, String>                  labels;
+  private final String[]                              images;
+
+  private final TokenizerTables                       tables;
+  private final MinimalDfa[]                          minimalDfas;
+  private final int[]                                 sourceStates;
+  private final boolean                               codePoints;
+
+  // See TokenizerData.findSkipChars() and findStartChars().
+  private final long[]                                skipChars;
+  private final int[]                                 skipKinds;
+  private final CodePointSet[]                        skipLoops;
+  private final long[]                                startBits;
+  private final CodePointSet[]                        startChars;
+
+  TokenizerSnapshot(TokenizerData data) {
+    this.parserName = data.parserName;
+    this.lexStateNames = (data.lexStateNames == null) ? Collections.<String>emptyList()
+        : Collections.unmodifiableList(Arrays.asList(data.lexStateNames.clone()));
+    this.defaultLexState = data.defaultLexState;
+    this.matches = TokenizerSnapshot.copy(data.allMatches);
+    this.labels = TokenizerSnapshot.copy(data.labels);
+    this.images = (data.images == null) ? new String[0] : data.images.clone();
+    this.tables = data.getTables();
+    this.minimalDfas = TokenizerSnapshot.clone(data.getMinimalDfas());
+    this.sourceStates = TokenizerSnapshot.clone(data.getSourceStates());
+    this.codePoints = data.isCodePoints();
+    this.skipChars = TokenizerSnapshot.clone(data.getSkipChars());
+    this.skipKinds = TokenizerSnapshot.clone(data.getSkipKinds());
+    this.skipLoops = TokenizerSnapshot.clone(data.getSkipLoops());
+    this.startBits = TokenizerSnapshot.clone(data.getStartBits());
+    this.startChars = TokenizerSnapshot.clone(data.getStartCharSets());
+  }
+
+  private static <K, V> Map<K, V> copy(Map<K, V> map) {
+    return (map == null) ? Collections.<K, V>emptyMap() : Collections.unmodifiableMap(new HashMap<K, V>(map));
+  }
+
+  private static <T> T[] clone(T[] array) {
+    return (array == null) ? null : array.clone();
+  }
+
+  private static int[] clone(int[] array) {
+    return (array == null) ? null : array.clone();
+  }
+
+  private static long[] clone(long[] array) {
+    return (array == null) ? null : array.clone();
+  }
+
+  // Name of the parser as specified in the PARSER_BEGIN/PARSER_END block.
+  public String getParserName() {
+    return parserName;
+  }
+
+  // Names of the lexical states indexed by lexical state.
+  public List<String> getLexStateNames() {
+    return lexStateNames;
+  }
+
+  public int getDefaultLexState() {
+    return defaultLexState;
+  }
+
+  // On match info indexed by the match kind.
+  public Map<Integer, TokenizerData.MatchInfo> getMatches() {
+    return matches;
+  }
+
+  public TokenizerData.MatchInfo getMatchInfo(int kind) {
+    return matches.get(kind);
+  }
+
+  // Labels of the kinds that have one.
+  public Map<Integer, String> getLabels() {
+    return labels;
+  }
+
+  // The image of the kind, null if it has none.
+  public String getImage(int kind) {
+    return ((kind >= 0) && (kind < images.length)) ? images[kind] : null;
+  }
+
+  public TokenizerTables getTables() {
+    return tables;
+  }
+
+  // The minimal DFA of the lexical state, null if it has none.
+  public MinimalDfa getMinimalDfa(int lexState) {
+    return (minimalDfas == null) ? null : minimalDfas[lexState];
+  }
+
+  /**
+   * The number the NFA state has in tokenizer data built without a
+   * {@link TokenizerProfile}, see {@link TokenizerData#getSourceState}.
+   */
+  public int getSourceState(int state) {
+    return (sourceStates == null) ? state : sourceStates[state];
+  }
+
+  public boolean isCodePoints() {
+    return codePoints;
+  }
+
+  // The bitmaps of TokenizerData.findSkipChars(), null if there are no such
+  // chars.
+  long[] getSkipChars() {
+    return skipChars;
+  }
+
+  // The kind of a char in the bitmaps of getSkipChars().
+  int getSkipKind(int lexState, char c) {
+    return skipKinds[(128 * lexState) + c];
+  }
+
+  // The chars the SKIP match of a char in the bitmaps of getSkipChars() goes
+  // on with, empty if it is the char alone.
+  CodePointSet getSkipLoop(int lexState, char c) {
+    return skipLoops[(128 * lexState) + c];
+  }
+
+  /**
+   * Whether a token can start with c in the lexical state. True for every
+   * char if the start chars were not found.
+   */
+  public boolean canStart(int lexState, char c) {
+    if (startBits == null) {
+      return true;
+    }
+    if (c < 128) {
+      return (startBits[(2 * lexState) + (c >> 6)] & (1L << c)) != 0L;
+    }
+    return startChars[lexState].contains(c);
+  }
+
+  /**
+   * The chars a token can start with in the lexical state, as UTF-16 chars,
+   * null if they were not found.
+   */
+  public CodePointSet getStartChars(int lexState) {
+    return (startChars == null) ? null : startChars[lexState];
+  }
+}
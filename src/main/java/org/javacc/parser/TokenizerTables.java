@@ -0,0 +1,562 @@
+package org.javacc.parser;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Compiled, immutable form of the automaton held by TokenizerData. The map
+// based fields of TokenizerData box every state index and character, so this
+// class keeps the same information in flat arrays that can be indexed directly
+// from a hot tokenizer loop or walked by a code generator.
+//
+// All per-state data is indexed by the NFA state index used in
+// TokenizerData.nfa, per lexical state data by the lexical state index and per
+// kind data by the token kind.
+public final class TokenizerTables {
+
+  // Kind of the match for each state, Integer.MAX_VALUE if not final.
+  private final int[]  kinds;
+
+  // Two words of ASCII moves per state: bit (c & 63) of word (2 * state + c / 64).
+  private final long[] asciiMoves;
+
+  // Sorted inclusive char ranges {lo, hi, ...} for each state. The ranges for
+  // state s are at indices [rangeOffsets[s], rangeOffsets[s + 1]).
+  private final int[]  rangeOffsets;
+  private final char[] ranges;
+
+  // Next state lists, flattened the same way as the ranges.
+  private final int[]  nextOffsets;
+  private final int[]  nextStates;
+
+  // Composite state lists, flattened the same way as the ranges.
+  private final int[]  compositeOffsets;
+  private final int[]  compositeStates;
+
+  // Initial state indexed by lexical state, -1 if the state has no NFA.
+  private final int[]  initialStates;
+
+  // Kind of the wildcard match (~[]) indexed by lexical state,
+  // Integer.MAX_VALUE if there is none.
+  private final int[]  wildcardKinds;
+
+  // NFA state to continue from after a string literal match indexed by kind,
+  // -1 if there is none.
+  private final int[]  nfaStartStates;
+
+  // Trie of the string literals of each lexical state. The root node of a
+  // lexical state is literalRoots[lexState], -1 if it has no literals. The
+  // edges of node n are at [literalEdgeOffsets[n], literalEdgeOffsets[n + 1]),
+  // sorted by char. literalKinds[n] is the kind of the literal ending at n,
+  // Integer.MAX_VALUE if none does.
+  private final int[]  literalRoots;
+  private final int[]  literalKinds;
+  private final int[]  literalEdgeOffsets;
+  private final char[] literalEdgeChars;
+  private final int[]  literalEdgeTargets;
+
+  // Lexical state of each state.
+  private final int[]  stateLexStates;
+
+  // The chars of a lexical state are partitioned into classes of chars on
+  // which every state of the lexical state moves alike. The class of an ASCII
+  // char c is asciiClasses[(lexState << 7) | c]. Other chars go through two
+  // levels: block classBlockIndices[(lexState << 8) | (c >> 8)] of 256 class
+  // ids in classBlocks, shared between lexical states, holds the class of c at
+  // c & 0xFF.
+  private final int[]  classCounts;
+  private final char[] asciiClasses;
+  private final char[] classBlockIndices;
+  private final char[] classBlocks;
+
+  // Moves by class: bit (class & 63) of word classMoveOffsets[s] + class / 64
+  // is set if state s moves on the chars of the class.
+  private final int[]  classMoveOffsets;
+  private final long[] classMoves;
+
+  TokenizerTables(int[] kinds, long[] asciiMoves, int[] rangeOffsets, char[] ranges, int[] nextOffsets,
+      int[] nextStates, int[] compositeOffsets, int[] compositeStates, int[] stateLexStates, int[] initialStates,
+      int[] wildcardKinds) {
+    this.kinds = kinds;
+    this.asciiMoves = asciiMoves;
+    this.rangeOffsets = rangeOffsets;
+    this.ranges = ranges;
+    this.nextOffsets = nextOffsets;
+    this.nextStates = nextStates;
+    this.compositeOffsets = compositeOffsets;
+    this.compositeStates = compositeStates;
+    this.stateLexStates = stateLexStates;
+    this.initialStates = initialStates;
+    this.wildcardKinds = wildcardKinds;
+    this.nfaStartStates = new int[0];
+    this.literalRoots = TokenizerTables.noLiteralRoots(initialStates.length);
+    this.literalKinds = new int[0];
+    this.literalEdgeOffsets = new int[1];
+    this.literalEdgeChars = new char[0];
+    this.literalEdgeTargets = new int[0];
+
+    int lexStateCount = initialStates.length;
+    int stateCount = kinds.length;
+    classCounts = new int[lexStateCount];
+    asciiClasses = new char[lexStateCount << 7];
+    classBlockIndices = new char[lexStateCount << 8];
+    classMoveOffsets = new int[stateCount + 1];
+    List<List<BitSet>> classStates = new ArrayList<>();
+    Map<String, Integer> blocks = new HashMap<>();
+    StringBuilder classBlockChars = new StringBuilder();
+    for (int l = 0; l < lexStateCount; l++) {
+      classStates.add(computeCharClasses(l, blocks, classBlockChars));
+    }
+    classBlocks = classBlockChars.toString().toCharArray();
+
+    for (int s = 0; s < stateCount; s++) {
+      classMoveOffsets[s + 1] = classMoveOffsets[s] + ((classCounts[stateLexStates[s]] + 63) >> 6);
+    }
+    classMoves = new long[classMoveOffsets[stateCount]];
+    for (int l = 0; l < lexStateCount; l++) {
+      List<BitSet> states = classStates.get(l);
+      for (int cls = 0; cls < states.size(); cls++) {
+        BitSet moving = states.get(cls);
+        for (int s = moving.nextSetBit(0); s >= 0; s = moving.nextSetBit(s + 1)) {
+          classMoves[classMoveOffsets[s] + (cls >> 6)] |= 1L << cls;
+        }
+      }
+    }
+  }
+
+  // Partitions the chars of the lexical state into the classes of chars that
+  // the same states move on, and returns the states of each class. The
+  // membership can only change at ASCII chars and at the ends of the ranges,
+  // so only one char of every other interval is looked at.
+  private List<BitSet> computeCharClasses(int lexState, Map<String, Integer> blocks, StringBuilder classBlockChars) {
+    List<Integer> states = new ArrayList<>();
+    TreeSet<Integer> bounds = new TreeSet<>();
+    for (int s = 0; s < kinds.length; s++) {
+      if (stateLexStates[s] == lexState) {
+        states.add(s);
+        for (int i = rangeOffsets[s]; i < rangeOffsets[s + 1]; i += 2) {
+          bounds.add(Math.max(ranges[i], 128));
+          bounds.add(Math.max(ranges[i + 1] + 1, 128));
+        }
+      }
+    }
+    for (int c = 0; c <= 128; c++) {
+      bounds.add(c);
+    }
+    bounds.add(0x10000);
+
+    Map<BitSet, Integer> classes = new HashMap<>();
+    List<BitSet> classStates = new ArrayList<>();
+    char[] classOfChar = new char[0x10000];
+    int lo = 0;
+    for (int hi : bounds.tailSet(1)) {
+      BitSet moving = new BitSet();
+      for (int s : states) {
+        if (canMove(s, (char) lo)) {
+          moving.set(s);
+        }
+      }
+      Integer cls = classes.get(moving);
+      if (cls == null) {
+        cls = classStates.size();
+        classes.put(moving, cls);
+        classStates.add(moving);
+      }
+      Arrays.fill(classOfChar, lo, hi, (char) cls.intValue());
+      lo = hi;
+    }
+    classCounts[lexState] = classStates.size();
+
+    System.arraycopy(classOfChar, 0, asciiClasses, lexState << 7, 128);
+    for (int b = 0; b < 256; b++) {
+      String block = new String(classOfChar, b << 8, 256);
+      Integer index = blocks.get(block);
+      if (index == null) {
+        index = blocks.size();
+        blocks.put(block, index);
+        classBlockChars.append(block);
+      }
+      classBlockIndices[(lexState << 8) | b] = (char) index.intValue();
+    }
+    return classStates;
+  }
+
+  // Copies the tables with the given literal data.
+  private TokenizerTables(TokenizerTables tables, int[] nfaStartStates, int[] literalRoots, int[] literalKinds,
+      int[] literalEdgeOffsets, char[] literalEdgeChars, int[] literalEdgeTargets) {
+    this(tables.kinds, tables.asciiMoves, tables.rangeOffsets, tables.ranges, tables.nextOffsets, tables.nextStates,
+        tables.compositeOffsets, tables.compositeStates, tables.initialStates, tables.wildcardKinds, nfaStartStates,
+        literalRoots, literalKinds, literalEdgeOffsets, literalEdgeChars, literalEdgeTargets, tables.stateLexStates,
+        tables.classCounts, tables.asciiClasses, tables.classBlockIndices, tables.classBlocks,
+        tables.classMoveOffsets, tables.classMoves);
+  }
+
+  // Sets every field, in the order they are declared and serialized in.
+  private TokenizerTables(int[] kinds, long[] asciiMoves, int[] rangeOffsets, char[] ranges, int[] nextOffsets,
+      int[] nextStates, int[] compositeOffsets, int[] compositeStates, int[] initialStates, int[] wildcardKinds,
+      int[] nfaStartStates, int[] literalRoots, int[] literalKinds, int[] literalEdgeOffsets,
+      char[] literalEdgeChars, int[] literalEdgeTargets, int[] stateLexStates, int[] classCounts,
+      char[] asciiClasses, char[] classBlockIndices, char[] classBlocks, int[] classMoveOffsets, long[] classMoves) {
+    this.kinds = kinds;
+    this.asciiMoves = asciiMoves;
+    this.rangeOffsets = rangeOffsets;
+    this.ranges = ranges;
+    this.nextOffsets = nextOffsets;
+    this.nextStates = nextStates;
+    this.compositeOffsets = compositeOffsets;
+    this.compositeStates = compositeStates;
+    this.initialStates = initialStates;
+    this.wildcardKinds = wildcardKinds;
+    this.nfaStartStates = nfaStartStates;
+    this.literalRoots = literalRoots;
+    this.literalKinds = literalKinds;
+    this.literalEdgeOffsets = literalEdgeOffsets;
+    this.literalEdgeChars = literalEdgeChars;
+    this.literalEdgeTargets = literalEdgeTargets;
+    this.stateLexStates = stateLexStates;
+    this.classCounts = classCounts;
+    this.asciiClasses = asciiClasses;
+    this.classBlockIndices = classBlockIndices;
+    this.classBlocks = classBlocks;
+    this.classMoveOffsets = classMoveOffsets;
+    this.classMoves = classMoves;
+  }
+
+  // Writes the arrays for TokenizerDataCache, derived ones included, so that
+  // reading them back computes nothing.
+  void write(DataOutputStream out) throws IOException {
+    TokenizerDataCache.writeInts(out, kinds);
+    TokenizerDataCache.writeLongs(out, asciiMoves);
+    TokenizerDataCache.writeInts(out, rangeOffsets);
+    TokenizerDataCache.writeChars(out, ranges);
+    TokenizerDataCache.writeInts(out, nextOffsets);
+    TokenizerDataCache.writeInts(out, nextStates);
+    TokenizerDataCache.writeInts(out, compositeOffsets);
+    TokenizerDataCache.writeInts(out, compositeStates);
+    TokenizerDataCache.writeInts(out, initialStates);
+    TokenizerDataCache.writeInts(out, wildcardKinds);
+    TokenizerDataCache.writeInts(out, nfaStartStates);
+    TokenizerDataCache.writeInts(out, literalRoots);
+    TokenizerDataCache.writeInts(out, literalKinds);
+    TokenizerDataCache.writeInts(out, literalEdgeOffsets);
+    TokenizerDataCache.writeChars(out, literalEdgeChars);
+    TokenizerDataCache.writeInts(out, literalEdgeTargets);
+    TokenizerDataCache.writeInts(out, stateLexStates);
+    TokenizerDataCache.writeInts(out, classCounts);
+    TokenizerDataCache.writeChars(out, asciiClasses);
+    TokenizerDataCache.writeChars(out, classBlockIndices);
+    TokenizerDataCache.writeChars(out, classBlocks);
+    TokenizerDataCache.writeInts(out, classMoveOffsets);
+    TokenizerDataCache.writeLongs(out, classMoves);
+  }
+
+  // Reads the tables written by write.
+  static TokenizerTables read(ByteBuffer in) {
+    return new TokenizerTables(TokenizerDataCache.readInts(in), TokenizerDataCache.readLongs(in),
+        TokenizerDataCache.readInts(in), TokenizerDataCache.readChars(in), TokenizerDataCache.readInts(in),
+        TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in),
+        TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in),
+        TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in),
+        TokenizerDataCache.readChars(in), TokenizerDataCache.readInts(in), TokenizerDataCache.readInts(in),
+        TokenizerDataCache.readInts(in), TokenizerDataCache.readChars(in), TokenizerDataCache.readChars(in),
+        TokenizerDataCache.readChars(in), TokenizerDataCache.readInts(in), TokenizerDataCache.readLongs(in));
+  }
+
+  private static int[] noLiteralRoots(int lexStateCount) {
+    int[] roots = new int[lexStateCount];
+    Arrays.fill(roots, -1);
+    return roots;
+  }
+
+  // Returns a copy of these tables with the literal continuation states set.
+  TokenizerTables withNfaStartStates(int[] nfaStartStates) {
+    return new TokenizerTables(this, nfaStartStates, literalRoots, literalKinds, literalEdgeOffsets,
+        literalEdgeChars, literalEdgeTargets);
+  }
+
+  // Returns a copy of these tables with the literal tries compiled from the
+  // literals of TokenizerData, keyed by (lexState << 16 | first char). The
+  // literals of the kinds that ignore case match each char in its lower and
+  // upper case as well, like their NFA moves do, so the tries are case closed
+  // and the input is never folded. Where a node is reached by the literals of
+  // several kinds, as after "if" with IGNORE_CASE and "IF", it is a node of
+  // the set of literals still matching. If two of them end there, the lowest
+  // kind wins.
+  TokenizerTables withLiterals(Map<Integer, List<String>> literalSequence, Map<Integer, List<Integer>> literalKinds,
+      boolean[] ignoreCaseKinds) {
+    // The distinct literals of each lexical state.
+    List<List<String>> images = new ArrayList<>();
+    List<List<Integer>> imageKinds = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    for (int l = 0; l < initialStates.length; l++) {
+      images.add(new ArrayList<String>());
+      imageKinds.add(new ArrayList<Integer>());
+    }
+    for (int key : new TreeMap<>(literalSequence).keySet()) {
+      List<String> literals = literalSequence.get(key);
+      for (int i = 0; i < literals.size(); i++) {
+        int kind = literalKinds.get(key).get(i);
+        if (seen.add((key >> 16) + ":" + kind + ":" + literals.get(i))) {
+          images.get(key >> 16).add(literals.get(i));
+          imageKinds.get(key >> 16).add(kind);
+        }
+      }
+    }
+
+    List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+    List<Integer> nodeKinds = new ArrayList<>();
+    int[] roots = TokenizerTables.noLiteralRoots(initialStates.length);
+    for (int l = 0; l < initialStates.length; l++) {
+      List<String> stateImages = images.get(l);
+      if (stateImages.isEmpty()) {
+        continue;
+      }
+      // Nodes by their depth and the indices of the literals still matching.
+      Map<String, Integer> nodes = new HashMap<>();
+      List<List<Integer>> nodeLiterals = new ArrayList<>();
+      List<Integer> nodeDepths = new ArrayList<>();
+      List<Integer> all = new ArrayList<>();
+      for (int i = 0; i < stateImages.size(); i++) {
+        all.add(i);
+      }
+      roots[l] = TokenizerTables.addLiteralNode(edges, nodeKinds);
+      nodeLiterals.add(all);
+      nodeDepths.add(0);
+      int first = roots[l];
+      for (int node = first; node < nodeKinds.size(); node++) {
+        List<Integer> literals = nodeLiterals.get(node - first);
+        int depth = nodeDepths.get(node - first);
+        TreeMap<Character, List<Integer>> moves = new TreeMap<>();
+        for (int i : literals) {
+          String image = stateImages.get(i);
+          if (image.length() > depth) {
+            char c = image.charAt(depth);
+            boolean ignoreCase = ignoreCaseKinds[imageKinds.get(l).get(i)];
+            for (char variant : ignoreCase ? new char[] { c, Character.toLowerCase(c), Character.toUpperCase(c) }
+                : new char[] { c }) {
+              List<Integer> targets = moves.get(variant);
+              if (targets == null) {
+                moves.put(variant, targets = new ArrayList<>());
+              }
+              if (targets.isEmpty() || (targets.get(targets.size() - 1) != i)) {
+                targets.add(i);
+              }
+            }
+          }
+        }
+        for (Map.Entry<Character, List<Integer>> move : moves.entrySet()) {
+          String key = (depth + 1) + ":" + move.getValue();
+          Integer target = nodes.get(key);
+          if (target == null) {
+            target = TokenizerTables.addLiteralNode(edges, nodeKinds);
+            nodes.put(key, target);
+            nodeLiterals.add(move.getValue());
+            nodeDepths.add(depth + 1);
+            for (int i : move.getValue()) {
+              if (stateImages.get(i).length() == (depth + 1)) {
+                nodeKinds.set(target, Math.min(nodeKinds.get(target), imageKinds.get(l).get(i)));
+              }
+            }
+          }
+          edges.get(node).put(move.getKey(), target);
+        }
+      }
+    }
+
+    int nodeCount = nodeKinds.size();
+    int[] kindsOfNodes = new int[nodeCount];
+    int[] edgeOffsets = new int[nodeCount + 1];
+    for (int n = 0; n < nodeCount; n++) {
+      kindsOfNodes[n] = nodeKinds.get(n);
+      edgeOffsets[n + 1] = edgeOffsets[n] + edges.get(n).size();
+    }
+    char[] edgeChars = new char[edgeOffsets[nodeCount]];
+    int[] edgeTargets = new int[edgeOffsets[nodeCount]];
+    for (int n = 0; n < nodeCount; n++) {
+      int i = edgeOffsets[n];
+      for (Map.Entry<Character, Integer> edge : edges.get(n).entrySet()) {
+        edgeChars[i] = edge.getKey();
+        edgeTargets[i++] = edge.getValue();
+      }
+    }
+    return new TokenizerTables(this, nfaStartStates, roots, kindsOfNodes, edgeOffsets, edgeChars, edgeTargets);
+  }
+
+  private static int addLiteralNode(List<TreeMap<Character, Integer>> edges, List<Integer> nodeKinds) {
+    edges.add(new TreeMap<Character, Integer>());
+    nodeKinds.add(Integer.MAX_VALUE);
+    return nodeKinds.size() - 1;
+  }
+
+  public int getStateCount() {
+    return kinds.length;
+  }
+
+  public int getLexStateCount() {
+    return initialStates.length;
+  }
+
+  // Lexical state of the state.
+  public int getLexState(int state) {
+    return stateLexStates[state];
+  }
+
+  // Number of char classes of the lexical state.
+  public int getCharClassCount(int lexState) {
+    return classCounts[lexState];
+  }
+
+  // The char class of c in the lexical state.
+  public int getCharClass(int lexState, char c) {
+    if (c < 128) {
+      return asciiClasses[(lexState << 7) | c];
+    }
+    return classBlocks[(classBlockIndices[(lexState << 8) | (c >> 8)] << 8) | (c & 0xFF)];
+  }
+
+  // Whether the state moves on the chars of the class of its lexical state.
+  public boolean canMoveOnClass(int state, int charClass) {
+    return (classMoves[classMoveOffsets[state] + (charClass >> 6)] & (1L << charClass)) != 0L;
+  }
+
+  // Match kind of the state, Integer.MAX_VALUE if it is not a final state.
+  public int getKind(int state) {
+    return kinds[state];
+  }
+
+  // Whether the state has a move on the given char.
+  public boolean canMove(int state, char c) {
+    if (c < 128) {
+      return (asciiMoves[(state << 1) | (c >> 6)] & (1L << c)) != 0L;
+    }
+
+    int lo = rangeOffsets[state] >> 1;
+    int hi = (rangeOffsets[state + 1] >> 1) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (c < ranges[mid << 1]) {
+        hi = mid - 1;
+      } else if (c > ranges[(mid << 1) + 1]) {
+        lo = mid + 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Returns a copy of the sorted inclusive ranges {lo, hi, ...} of the state.
+  public char[] getRanges(int state) {
+    char[] ret = new char[rangeOffsets[state + 1] - rangeOffsets[state]];
+    System.arraycopy(ranges, rangeOffsets[state], ret, 0, ret.length);
+    return ret;
+  }
+
+  // The next states of a state are getNextState(i) for i in
+  // [getNextStatesStart(state), getNextStatesEnd(state)).
+  public int getNextStatesStart(int state) {
+    return nextOffsets[state];
+  }
+
+  public int getNextStatesEnd(int state) {
+    return nextOffsets[state + 1];
+  }
+
+  public int getNextState(int i) {
+    return nextStates[i];
+  }
+
+  // The composite states of a state are getCompositeState(i) for i in
+  // [getCompositeStatesStart(state), getCompositeStatesEnd(state)).
+  public int getCompositeStatesStart(int state) {
+    return compositeOffsets[state];
+  }
+
+  public int getCompositeStatesEnd(int state) {
+    return compositeOffsets[state + 1];
+  }
+
+  public int getCompositeState(int i) {
+    return compositeStates[i];
+  }
+
+  public int getInitialState(int lexState) {
+    return initialStates[lexState];
+  }
+
+  public int getWildcardKind(int lexState) {
+    return wildcardKinds[lexState];
+  }
+
+  public int getNfaStartState(int kind) {
+    return (kind < nfaStartStates.length) ? nfaStartStates[kind] : -1;
+  }
+
+  // One more than the highest kind with an NFA start state.
+  public int getNfaStartStateCount() {
+    return nfaStartStates.length;
+  }
+
+  // The root of the literal trie of the lexical state, -1 if it has no
+  // literals.
+  public int getLiteralRoot(int lexState) {
+    return literalRoots[lexState];
+  }
+
+  // Kind of the literal that ends at the trie node, Integer.MAX_VALUE if none.
+  public int getLiteralKind(int node) {
+    return literalKinds[node];
+  }
+
+  // The trie node reached from node on c, -1 if there is none.
+  public int getLiteralChild(int node, char c) {
+    int lo = literalEdgeOffsets[node];
+    int hi = literalEdgeOffsets[node + 1] - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      char midChar = literalEdgeChars[mid];
+      if (c < midChar) {
+        hi = mid - 1;
+      } else if (c > midChar) {
+        lo = mid + 1;
+      } else {
+        return literalEdgeTargets[mid];
+      }
+    }
+    return -1;
+  }
+
+  // Whether a longer literal continues from the trie node.
+  public boolean hasLiteralChildren(int node) {
+    return literalEdgeOffsets[node + 1] > literalEdgeOffsets[node];
+  }
+
+  // The edges of a trie node are getLiteralEdgeChar(i) to
+  // getLiteralEdgeTarget(i) for i in [getLiteralEdgesStart(node),
+  // getLiteralEdgesEnd(node)).
+  public int getLiteralEdgesStart(int node) {
+    return literalEdgeOffsets[node];
+  }
+
+  public int getLiteralEdgesEnd(int node) {
+    return literalEdgeOffsets[node + 1];
+  }
+
+  public char getLiteralEdgeChar(int i) {
+    return literalEdgeChars[i];
+  }
+
+  public int getLiteralEdgeTarget(int i) {
+    return literalEdgeTargets[i];
+  }
+}
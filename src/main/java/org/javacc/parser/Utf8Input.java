@@ -0,0 +1,221 @@
+package org.javacc.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// A tokenizer input over UTF-8 encoded bytes, typically a file mapped into
+// memory, so the input is neither copied nor decoded up front. Positions are
+// byte offsets: ASCII bytes are returned as they are and only the bytes of
+// other chars are decoded, when the matchers step over them.
+//
+// A char outside the BMP is returned as a surrogate pair like in a String:
+// the high surrogate at the position of the lead byte and the low surrogate
+// at the position after it. Malformed bytes, including those of overlong
+// sequences, surrogates and code points above U+10FFFF, are returned one by
+// one as U+FFFD.
+//
+// A file is mapped in windows so inputs larger than 2GB can be tokenized. A
+// window always ends on a char boundary.
+public final class Utf8Input extends TokenizerInput {
+
+  // Default size of a mapped window of a file.
+  public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+  private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+  private final FileChannel channel;
+  private final long        size;
+  private int               windowSize;
+  private ByteBuffer        bytes;
+  private int               limit;
+  private long              base;
+  private boolean           eof;
+
+  // The bytes from the position to the limit of the buffer.
+  public Utf8Input(ByteBuffer bytes) {
+    this.channel = null;
+    this.bytes = bytes.slice();
+    this.size = this.bytes.limit();
+    this.limit = this.bytes.limit();
+    this.eof = true;
+  }
+
+  public Utf8Input(FileChannel channel) throws IOException {
+    this(channel, Utf8Input.DEFAULT_WINDOW_SIZE);
+  }
+
+  public Utf8Input(FileChannel channel, int windowSize) throws IOException {
+    this(channel, 0, windowSize);
+  }
+
+  // The bytes of the file from start on, which must be the start of a char.
+  public Utf8Input(FileChannel channel, long start, int windowSize) throws IOException {
+    this.channel = channel;
+    this.size = channel.size();
+    this.windowSize = Math.max(windowSize, 16);
+    this.bytes = ByteBuffer.allocate(0);
+    this.base = start;
+  }
+
+  @Override
+  public long getBase() {
+    return base;
+  }
+
+  @Override
+  public boolean isEof() {
+    return eof;
+  }
+
+  @Override
+  public boolean fill(int keepFrom) throws IOException {
+    if (eof) {
+      return false;
+    }
+    int kept = limit - keepFrom;
+    if (kept > (windowSize / 2)) {
+      // A single token fills most of the window, so make room for more.
+      windowSize = (int) Math.min(2L * windowSize, Integer.MAX_VALUE - 8);
+    }
+    base += keepFrom;
+    int length = (int) Math.min(size - base, windowSize);
+    bytes = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+    limit = length;
+    if ((base + length) == size) {
+      eof = true;
+    } else {
+      // Do not split the last char of the window.
+      int lead = length - 1;
+      while ((lead > (length - 4)) && (lead > 0) && ((bytes.get(lead) & 0xC0) == 0x80)) {
+        lead--;
+      }
+      if ((lead + Utf8Input.leadLength(bytes.get(lead))) > length) {
+        limit = lead;
+      }
+    }
+    return limit > kept;
+  }
+
+  @Override
+  public int limit() {
+    return limit;
+  }
+
+  @Override
+  public char charAt(int pos) {
+    int b = bytes.get(pos);
+    if (b >= 0) {
+      return (char) b;
+    }
+    switch (sequenceLength(pos, b)) {
+      case 2:
+        return (char) (((b & 0x1F) << 6) | (bytes.get(pos + 1) & 0x3F));
+      case 3:
+        return (char) (((b & 0x0F) << 12) | ((bytes.get(pos + 1) & 0x3F) << 6) | (bytes.get(pos + 2) & 0x3F));
+      case 4:
+        return Character.highSurrogate(codePoint(pos, b));
+      default:
+        // The low surrogate of a char outside the BMP is at the byte after its lead byte.
+        if ((pos > 0) && (sequenceLength(pos - 1, bytes.get(pos - 1)) == 4)) {
+          return Character.lowSurrogate(codePoint(pos - 1, bytes.get(pos - 1)));
+        }
+        return Utf8Input.REPLACEMENT_CHAR;
+    }
+  }
+
+  @Override
+  public int next(int pos) {
+    int b = bytes.get(pos);
+    if (b >= 0) {
+      return pos + 1;
+    }
+    switch (sequenceLength(pos, b)) {
+      case 2:
+        return pos + 2;
+      case 3:
+        return pos + 3;
+      case 4:
+        // Step to the low surrogate.
+        return pos + 1;
+      default:
+        if ((pos > 0) && (sequenceLength(pos - 1, bytes.get(pos - 1)) == 4)) {
+          return pos + 3;
+        }
+        return pos + 1;
+    }
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    ByteBuffer slice = bytes.duplicate();
+    slice.limit(end);
+    slice.position(start);
+    return StandardCharsets.UTF_8.decode(slice);
+  }
+
+  // Length of the sequence started by the lead byte b, 0 if b is not a lead
+  // byte. C0 and C1 only start overlong sequences and F5 to FF ones above
+  // U+10FFFF.
+  private static int leadLength(int b) {
+    int lead = b & 0xFF;
+    if (lead < 0x80) {
+      return 1;
+    } else if ((lead >= 0xC2) && (lead <= 0xDF)) {
+      return 2;
+    } else if ((lead >= 0xE0) && (lead <= 0xEF)) {
+      return 3;
+    } else if ((lead >= 0xF0) && (lead <= 0xF4)) {
+      return 4;
+    }
+    return 0;
+  }
+
+  // Length of the well formed sequence starting with the lead byte b at pos,
+  // 0 if the sequence is malformed or truncated. The second byte is checked
+  // as in table 3-7 of the Unicode standard, so overlong sequences,
+  // surrogates and code points above U+10FFFF are malformed.
+  private int sequenceLength(int pos, int b) {
+    int length = Utf8Input.leadLength(b);
+    if ((length == 0) || ((pos + length) > limit)) {
+      return 0;
+    }
+    int second = bytes.get(pos + 1) & 0xFF;
+    switch (b & 0xFF) {
+      case 0xE0:
+        if (second < 0xA0) {
+          return 0;
+        }
+        break;
+      case 0xED:
+        if (second > 0x9F) {
+          return 0;
+        }
+        break;
+      case 0xF0:
+        if (second < 0x90) {
+          return 0;
+        }
+        break;
+      case 0xF4:
+        if (second > 0x8F) {
+          return 0;
+        }
+        break;
+      default:
+        break;
+    }
+    for (int i = 1; i < length; i++) {
+      if ((bytes.get(pos + i) & 0xC0) != 0x80) {
+        return 0;
+      }
+    }
+    return length;
+  }
+
+  private int codePoint(int pos, int b) {
+    return ((b & 0x07) << 18) | ((bytes.get(pos + 1) & 0x3F) << 12) | ((bytes.get(pos + 2) & 0x3F) << 6)
+        | (bytes.get(pos + 3) & 0x3F);
+  }
+}
@@ -0,0 +1,46 @@
+package org.javacc;
+
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.javacc.parser.Context;
+import org.javacc.parser.JavaCCParser;
+import org.javacc.parser.LexGen;
+import org.javacc.parser.Main;
+import org.javacc.parser.Options;
+import org.javacc.parser.Semanticize;
+import org.javacc.parser.TokenizerData;
+
+/**
+ * Builds the tokenizer data of grammars given as strings for the tests of the
+ * interpreter.
+ */
+public final class GrammarFixture {
+
+  private GrammarFixture() {}
+
+  /**
+   * Parses the grammar in interpreter mode.
+   */
+  public static Context parseGrammar(String grammar) throws Exception {
+    Context context = Main.reInitAll();
+    Options.set(Options.NONUSER_OPTION__INTERPRETER, true);
+    new JavaCCParser(new StringReader(grammar)).javacc_input(context);
+    return context;
+  }
+
+  /**
+   * Builds the tokenizer data of a grammar parsed by parseGrammar.
+   */
+  public static TokenizerData buildTokenizerData(Context context) throws Exception {
+    Semanticize.start(context);
+    TokenizerData tokenizerData = new LexGen(context).generateTokenizerData(true, false);
+    Assert.assertEquals(0, context.errors().get_error_count());
+    return tokenizerData;
+  }
+
+  public static TokenizerData buildTokenizerData(String grammar) throws Exception {
+    return GrammarFixture.buildTokenizerData(GrammarFixture.parseGrammar(grammar));
+  }
+}
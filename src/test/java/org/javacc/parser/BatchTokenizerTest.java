@@ -0,0 +1,93 @@
+package org.javacc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class BatchTokenizerTest extends TestCase {
+
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ > }\n"
+    + "MORE : { \"/*\" : IN_COMMENT }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n";
+
+  private static List<String> matches(TokenBuffer tokens) {
+    List<String> matches = new ArrayList<String>();
+    for (int i = 0; i < tokens.size(); i++) {
+      matches.add(tokens.getKind(i) + " " + tokens.getStart(i) + " " + tokens.getEnd(i) + " "
+          + tokens.getLexState(i));
+    }
+    return matches;
+  }
+
+  public void testAgreesWithTokenizer() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    List<String> documents = new ArrayList<String>();
+    for (int i = 0; i < 500; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < i % 40; j++) {
+        sb.append("abc ").append(i * j).append((j % 5) == 0 ? " /* x\n*/ " : " ").append((j % 7) == 0 ? "? " : "");
+      }
+      documents.add(sb.toString());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<TokenBuffer> results = new BatchTokenizer(tokenizerData, executor).tokenizeAll(documents);
+      assertEquals(documents.size(), results.size());
+      Tokenizer tokenizer = new Tokenizer(tokenizerData);
+      for (int i = 0; i < documents.size(); i++) {
+        TokenBuffer expected = new TokenBuffer(tokenizerData);
+        tokenizer.tokenize(documents.get(i), expected);
+        assertEquals(matches(expected), matches(results.get(i)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testFrozen() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerSnapshot snapshot = tokenizerData.freeze();
+    assertSame(tokenizerData.getTables(), snapshot.getTables());
+    assertEquals(tokenizerData.labels, snapshot.getLabels());
+    assertEquals(Arrays.asList(tokenizerData.lexStateNames), snapshot.getLexStateNames());
+    try {
+      snapshot.getMatches().remove(0);
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // Expected.
+    }
+    try {
+      snapshot.getLabels().put(0, "X");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // Expected.
+    }
+    try {
+      snapshot.getLexStateNames().set(0, "X");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // Expected.
+    }
+    // Changing the original does not affect the snapshot.
+    String image = snapshot.getImage(1);
+    tokenizerData.allMatches.remove(0);
+    tokenizerData.lexStateNames[0] = "X";
+    tokenizerData.images[1] = "X";
+    tokenizerData.setDefaultLexState(1);
+    assertTrue(snapshot.getMatches().containsKey(0));
+    assertFalse(snapshot.getLexStateNames().contains("X"));
+    assertEquals(image, snapshot.getImage(1));
+    assertEquals(0, snapshot.getDefaultLexState());
+  }
+}
@@ -0,0 +1,107 @@
+package org.javacc.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class CodePointTest extends TestCase {
+
+  // Identifiers of latin letters, emoticons and CJK Extension B ideographs.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\",\"\\uD83D\\uDE00\"-\"\\uD83D\\uDE4F\",\"\\uD840\\uDC00\"-\"\\uD869\\uDEDF\"])+ > }\n";
+
+  // Anything but a letter, one code point at a time.
+  private static final String NEGATED_GRAMMAR =
+      "options { CODE_POINTS = true; }\n"
+    + "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < OTHER: ~[\"a\"-\"z\"] > }\n";
+
+  private static List<String> tokenize(TokenizerData tokenizerData, TokenizerInput input) throws Exception {
+    final List<String> matches = new ArrayList<String>();
+    new Tokenizer(tokenizerData, false, 0).tokenize(input, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        matches.add(kind + " " + start + " " + end);
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        matches.add("error " + start + " " + end);
+        return true;
+      }
+    });
+    return matches;
+  }
+
+  private static List<String> tokenize(TokenizerData tokenizerData, String input) throws Exception {
+    return tokenize(tokenizerData, new CharWindow(input));
+  }
+
+  public void testSet() {
+    CodePointSet set = CodePointSet.of(0x61, 0x7A, 0x1F600, 0x1F64F, 0x30, 0x39, 0x5F, 0x60);
+    assertEquals(3, set.getRangeCount());
+    assertEquals("[30-39,5f-7a,1f600-1f64f]", set.toString());
+    assertTrue(set.contains('_'));
+    assertTrue(set.contains(0x1F600));
+    assertFalse(set.contains(0x1F650));
+    assertFalse(set.contains('A'));
+    assertEquals(CodePointSet.ALL, set.union(set.complement()));
+    assertEquals(set, set.complement().complement());
+    assertTrue(CodePointSet.ALL.complement().isEmpty());
+    assertEquals("[5f-7a]", set.intersect(0x40, 0xFFFF).toString());
+  }
+
+  public void testSurrogatePairs() {
+    assertEquals("\uD83D\uD83D\uDE00\uDE4F", new String(CodePointSet.of(0x1F600, 0x1F64F).getSurrogatePairs()));
+    assertEquals("\uD800\uDBFF\uDC00\uDFFF",
+        new String(CodePointSet.of(0, Character.MAX_CODE_POINT).getSurrogatePairs()));
+    // A partial block of low surrogates at each end.
+    assertEquals("\uD800\uD800\uDFFF\uDFFF\uD801\uD801\uDC00\uDFFF\uD802\uD802\uDC00\uDC00",
+        new String(CodePointSet.of(0x103FF, 0x10800).getSurrogatePairs()));
+    assertEquals(0, CodePointSet.of(0, 0xFFFF).getSurrogatePairs().length);
+  }
+
+  public void testSupplementaryRanges() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    // Offsets are in chars, so a code point outside the BMP takes two.
+    assertEquals(Arrays.asList("2 0 5", "1 5 6", "2 6 10"),
+        tokenize(tokenizerData, "ab\uD83D\uDE00c \uD840\uDC00\uD869\uDEDF"));
+    // Not in the ranges: a lone high surrogate and another emoji.
+    assertEquals(Arrays.asList("2 0 1", "error 1 2", "error 2 3", "error 3 4", "2 4 5"),
+        tokenize(tokenizerData, "a\uD83D\uD83D\uDE80b"));
+    MinimalDfa.build(tokenizerData);
+    assertEquals(Arrays.asList("2 0 5", "1 5 6", "2 6 10"),
+        tokenize(tokenizerData, "ab\uD83D\uDE00c \uD840\uDC00\uD869\uDEDF"));
+  }
+
+  public void testUtf8() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    // Offsets are in bytes, the emoji takes four.
+    Utf8Input input = new Utf8Input(ByteBuffer.wrap("a\uD83D\uDE00b c".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(Arrays.asList("2 0 6", "1 6 7", "2 7 8"), tokenize(tokenizerData, input));
+  }
+
+  public void testNegated() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(NEGATED_GRAMMAR);
+    assertTrue(tokenizerData.isCodePoints());
+    assertEquals(Arrays.asList("1 0 2", "2 2 4", "2 4 5", "2 5 6", "1 6 7"),
+        tokenize(tokenizerData, "ab\uD83D\uDE00-\uD83Dc"));
+  }
+
+  public void testErrorsSkipPairs() throws Exception {
+    String grammar = "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+        + "TOKEN : { < A: \"a\" > }\n";
+    assertEquals(Arrays.asList("error 0 1", "error 1 2", "1 2 3"),
+        tokenize(GrammarFixture.buildTokenizerData(grammar), "\uD83D\uDE00a"));
+    assertEquals(Arrays.asList("error 0 2", "1 2 3"),
+        tokenize(GrammarFixture.buildTokenizerData("options { CODE_POINTS = true; }\n" + grammar), "\uD83D\uDE00a"));
+  }
+}
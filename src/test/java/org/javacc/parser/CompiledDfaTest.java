@@ -0,0 +1,85 @@
+package org.javacc.parser;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class CompiledDfaTest extends TestCase {
+
+  // Non-ASCII letters, so both the range checks and the class lookups run.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN [IGNORE_CASE] : { < SELECT: \"select\" > }\n"
+    + "TOKEN : { < IF: \"if\" > | < DOT: \".\" > }\n"
+    + "TOKEN : { < ID: [\"a\"-\"z\",\"_\",\"\\u00e0\"-\"\\u00ff\"] ([\"a\"-\"z\",\"_\",\"0\"-\"9\",\"\\u00e0\"-\"\\u00ff\"])* >\n"
+    + "        | < NUM: ([\"0\"-\"9\"])+ (\".\" ([\"0\"-\"9\"])+)? ([\"e\",\"E\"] ([\"0\"-\"9\"])+)? >\n"
+    + "        | < HEX: \"0x\" ([\"0\"-\"9\",\"a\"-\"f\"])+ > }\n";
+
+  private static final String INPUT =
+      "SeLeCt if ifx x_1 12 12.5 12.5e3 12. 0x1f 0xg . d\u00e9j\u00e0 \u0100 select_ ? 1e 0x\n";
+
+  public void testAgreesWithDfaMatcher() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerTables tables = tokenizerData.getTables();
+    MinimalDfa.build(tokenizerData);
+    MinimalDfa dfa = tokenizerData.getMinimalDfa(tokenizerData.defaultLexState);
+    CompiledDfa compiled = CompiledDfa.compile(tables, dfa);
+    assertNotNull(compiled);
+    assertSame(dfa, compiled.getDfa());
+    DfaMatcher matcher = new DfaMatcher(tables);
+    CharWindow input = new CharWindow(INPUT);
+    for (int state = 0; state < tables.getStateCount(); state++) {
+      if (dfa.getStartState(state) == MinimalDfa.DEAD) {
+        continue;
+      }
+      for (int pos = 0; pos < input.limit(); pos++) {
+        matcher.match(dfa, input, pos, input.limit(), state);
+        compiled.match(input, pos, input.limit(), state);
+        assertEquals(matcher.getMatchedKind(), compiled.getMatchedKind());
+        assertEquals(matcher.getMatchedEnd(), compiled.getMatchedEnd());
+        assertEquals(matcher.getScannedEnd(), compiled.getScannedEnd());
+      }
+    }
+  }
+
+  public void testClassDefinedOnce() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    MinimalDfa.build(tokenizerData);
+    MinimalDfa dfa = tokenizerData.getMinimalDfa(tokenizerData.defaultLexState);
+    CompiledDfa first = CompiledDfa.compile(tokenizerData.getTables(), dfa);
+    CompiledDfa second = CompiledDfa.compile(tokenizerData.getTables(), dfa);
+    assertNotSame(first, second);
+    assertSame(first.getClass(), second.getClass());
+  }
+
+  public void testTokenizer() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    MinimalDfa.build(tokenizerData);
+    final StringBuilder expected = new StringBuilder();
+    final StringBuilder matches = new StringBuilder();
+    new Tokenizer(tokenizerData, false, 0, false).tokenize(INPUT, new Sink(expected));
+    new Tokenizer(tokenizerData, false, 0, true).tokenize(INPUT, new Sink(matches));
+    assertEquals(expected.toString(), matches.toString());
+  }
+
+  private static final class Sink implements TokenSink {
+
+    private final StringBuilder sb;
+
+    Sink(StringBuilder sb) {
+      this.sb = sb;
+    }
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      sb.append(kind).append(' ').append(start).append(' ').append(end).append('\n');
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      sb.append("error ").append(start).append('\n');
+      return true;
+    }
+  }
+}
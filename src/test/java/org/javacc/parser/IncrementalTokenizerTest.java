@@ -0,0 +1,93 @@
+package org.javacc.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class IncrementalTokenizerTest extends TestCase {
+
+  // Comments and strings look far ahead and switch lexical states, and "<<="
+  // needs lookahead past the end of shorter literals.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ (\".\" ([\"0\"-\"9\"])+)? >\n"
+    + "  | < STRING: \"\\\"\" (~[\"\\\"\",\"\\n\"])* \"\\\"\" > | < QUOTE: \"\\\"\" >\n"
+    + "  | \"<\" | \"<<\" | \"<<=\" }\n"
+    + "MORE : { \"/*\" : IN_COMMENT }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n";
+
+  private static final String ALPHABET = "ab1. \n\"</*=?";
+
+  // The matches as "kind start end lexState".
+  private static List<String> matches(IncrementalTokenizer tokenizer) {
+    List<String> matches = new ArrayList<String>();
+    for (int i = 0; i < tokenizer.getMatchCount(); i++) {
+      matches.add(tokenizer.getKind(i) + " " + tokenizer.getStart(i) + " " + tokenizer.getEnd(i) + " "
+          + tokenizer.getLexState(i));
+    }
+    return matches;
+  }
+
+  private static List<String> tokenize(TokenizerData tokenizerData, String text) {
+    IncrementalTokenizer tokenizer = new IncrementalTokenizer(tokenizerData);
+    tokenizer.tokenize(text);
+    return matches(tokenizer);
+  }
+
+  public void testAgreesWithTokenizingAfresh() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    IncrementalTokenizer tokenizer = new IncrementalTokenizer(tokenizerData);
+    Random random = new Random(42);
+    StringBuilder text = new StringBuilder();
+    tokenizer.tokenize(text.toString());
+    for (int n = 0; n < 2000; n++) {
+      int start = random.nextInt(text.length() + 1);
+      int oldEnd = Math.min(start + random.nextInt(4), text.length());
+      StringBuilder inserted = new StringBuilder();
+      for (int k = random.nextInt(n < 500 ? 8 : 3); k > 0; k--) {
+        inserted.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      }
+      text.replace(start, oldEnd, inserted.toString());
+      tokenizer.edit(text.toString(), start, oldEnd, start + inserted.length());
+      assertEquals("edit " + n, tokenize(tokenizerData, text.toString()), matches(tokenizer));
+    }
+  }
+
+  public void testDamageIsLocal() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      text.append("abc ").append(i).append(" << \"s\"\n");
+    }
+    IncrementalTokenizer tokenizer = new IncrementalTokenizer(tokenizerData);
+    tokenizer.tokenize(text.toString());
+    int count = tokenizer.getMatchCount();
+
+    // Turning "abc" into "ab1c" re-lexes the identifier and the matches next to it.
+    int start = text.indexOf("abc 5000") + 2;
+    text.insert(start, "1");
+    tokenizer.edit(text.toString(), start, start, start + 1);
+    assertEquals(tokenize(tokenizerData, text.toString()), matches(tokenizer));
+    assertTrue(tokenizer.getDamageEnd() - tokenizer.getDamageStart() <= 3);
+    assertEquals(count + 2, tokenizer.getMatchCount());
+
+    // A comment re-lexes its chars, which are matched one at a time.
+    text.insert(start, "/* xy */");
+    tokenizer.edit(text.toString(), start, start, start + 8);
+    assertEquals(tokenize(tokenizerData, text.toString()), matches(tokenizer));
+    assertTrue(tokenizer.getDamageEnd() - tokenizer.getDamageStart() <= 10);
+
+    // Opening one at the start re-lexes up to where the old one opened, from
+    // where on the old matches were in the comment already.
+    text.insert(0, "/*");
+    tokenizer.edit(text.toString(), 0, 0, 2);
+    assertEquals(tokenize(tokenizerData, text.toString()), matches(tokenizer));
+    assertEquals(text.indexOf("/* xy") + 2, tokenizer.getEnd(tokenizer.getDamageEnd() - 1));
+  }
+}
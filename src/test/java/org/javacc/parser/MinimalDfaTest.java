@@ -0,0 +1,121 @@
+package org.javacc.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class MinimalDfaTest extends TestCase {
+
+  // Literals that are prefixes of the other tokens, with and without
+  // IGNORE_CASE, and a comment state reached by MORE.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN [IGNORE_CASE] : { < SELECT: \"select\" > }\n"
+    + "TOKEN : { < IF: \"if\" > | < DOT: \".\" > }\n"
+    + "TOKEN : { < ID: [\"a\"-\"z\",\"_\"] ([\"a\"-\"z\",\"_\",\"0\"-\"9\"])* >\n"
+    + "        | < NUM: ([\"0\"-\"9\"])+ (\".\" ([\"0\"-\"9\"])+)? ([\"e\",\"E\"] ([\"0\"-\"9\"])+)? >\n"
+    + "        | < HEX: \"0x\" ([\"0\"-\"9\",\"a\"-\"f\"])+ > }\n"
+    + "MORE : { \"/*\" : IN_COMMENT }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n";
+
+  private static final String INPUT =
+      "SeLeCt if ifx x_1 12 12.5 12.5e3 12. 0x1f 0xg . /* a * b */ select_ ? 1e 0x\n";
+
+  private static List<String> tokenize(TokenizerData tokenizerData, String input) {
+    final List<String> matches = new ArrayList<String>();
+    new Tokenizer(tokenizerData, false, 0).tokenize(input, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        matches.add(kind + " " + start + " " + end + " " + lexState);
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        matches.add("error " + start + " " + end + " " + lexState);
+        return true;
+      }
+    });
+    return matches;
+  }
+
+  public void testAgreesWithNfa() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerTables tables = tokenizerData.getTables();
+    MinimalDfa.build(tokenizerData);
+    NfaMatcher nfa = new NfaMatcher(tables);
+    DfaMatcher dfa = new DfaMatcher(tables);
+    CharWindow input = new CharWindow(INPUT);
+    for (int state = 0; state < tables.getStateCount(); state++) {
+      MinimalDfa minimalDfa = tokenizerData.getMinimalDfa(tables.getLexState(state));
+      if ((minimalDfa == null) || (minimalDfa.getStartState(state) == MinimalDfa.DEAD)) {
+        continue;
+      }
+      for (int pos = 0; pos < input.limit(); pos++) {
+        nfa.match(input, pos, input.limit(), state);
+        dfa.match(minimalDfa, input, pos, input.limit(), state);
+        assertEquals(nfa.getMatchedKind(), dfa.getMatchedKind());
+        assertEquals(nfa.getMatchedEnd(), dfa.getMatchedEnd());
+        // The dead state stops the DFA as soon as nothing can match anymore.
+        assertTrue(dfa.getScannedEnd() <= nfa.getScannedEnd());
+        assertTrue(dfa.getScannedEnd() >= Math.max(dfa.getMatchedEnd(), pos + 1));
+      }
+    }
+  }
+
+  public void testTokenizesAsWithout() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    List<String> expected = tokenize(tokenizerData, INPUT);
+    MinimalDfa.build(tokenizerData);
+    assertEquals(expected, tokenize(tokenizerData, INPUT));
+  }
+
+  public void testMinimizes() throws Exception {
+    // Bits separated by single underscores.
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "TOKEN : { < BITS: ([\"0\"] | [\"1\"]) ((\"0\" | \"1\") | \"_\" (\"0\" | \"1\"))* > }\n");
+    MinimalDfa dfa = MinimalDfa.build(tokenizerData.getTables(), tokenizerData.defaultLexState, MinimalDfa.MAX_BYTES);
+    // After a bit, and before one: the start and after an underscore, which
+    // both match BITS on a bit only.
+    assertEquals(2, dfa.getStateCount());
+    int start = dfa.getStartState(tokenizerData.getTables().getInitialState(tokenizerData.defaultLexState));
+    assertEquals(0, start);
+    int bit = tokenizerData.getTables().getCharClass(tokenizerData.defaultLexState, '0');
+    assertEquals(bit, tokenizerData.getTables().getCharClass(tokenizerData.defaultLexState, '1'));
+    int underscore = tokenizerData.getTables().getCharClass(tokenizerData.defaultLexState, '_');
+    int afterBit = dfa.getNext(start, bit);
+    assertEquals(afterBit, dfa.getNext(afterBit, bit));
+    assertEquals(start, dfa.getNext(afterBit, underscore));
+    assertEquals(MinimalDfa.DEAD, dfa.getNext(start, underscore));
+  }
+
+  public void testTooBig() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    assertNull(MinimalDfa.build(tokenizerData.getTables(), tokenizerData.defaultLexState, 1));
+  }
+
+  public void testCached() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    MinimalDfa.build(tokenizerData);
+    File file = File.createTempFile("tokenizer", ".tokenizer");
+    try {
+      TokenizerDataCache.write(tokenizerData, file);
+      TokenizerData read = TokenizerDataCache.read(file);
+      // IN_COMMENT only has the wildcard, so it has no DFA.
+      for (int l = 0; l < tokenizerData.getTables().getLexStateCount(); l++) {
+        MinimalDfa dfa = tokenizerData.getMinimalDfa(l);
+        assertEquals((dfa == null) ? -1 : dfa.getStateCount(),
+            (read.getMinimalDfa(l) == null) ? -1 : read.getMinimalDfa(l).getStateCount());
+      }
+      assertEquals(tokenize(tokenizerData, INPUT), tokenize(read, INPUT));
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package org.javacc.parser;
+
+import java.lang.management.ManagementFactory;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class NfaMatcherTest extends TestCase {
+
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\t\" | \"\\n\" | \"\\r\" }\n"
+    + "TOKEN : { < ID: [\"a\"-\"z\",\"A\"-\"Z\",\"_\"] ([\"a\"-\"z\",\"A\"-\"Z\",\"_\",\"0\"-\"9\"])* >\n"
+    + "        | < NUM: ([\"0\"-\"9\"])+ (\".\" ([\"0\"-\"9\"])+)? > }\n";
+
+  private static String input() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      sb.append("abc").append(i).append(" 42.5 _x").append(i % 7).append('\n');
+    }
+    return sb.toString();
+  }
+
+  // Runs the matcher over the whole input and returns the number of matches.
+  private static int matchAll(NfaMatcher nfa, TokenizerTables tables, int lexState, TokenizerInput input) {
+    int matches = 0;
+    int pos = 0;
+    while (pos < input.limit()) {
+      nfa.match(input, pos, input.limit(), tables.getInitialState(lexState));
+      if (nfa.getMatchedKind() != Integer.MAX_VALUE) {
+        matches++;
+        pos = nfa.getMatchedEnd();
+      } else {
+        pos++;
+      }
+    }
+    return matches;
+  }
+
+  public void testMatchesLongest() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerTables tables = tokenizerData.getTables();
+    NfaMatcher nfa = new NfaMatcher(tables);
+    CharWindow input = new CharWindow("foo_12+3.25");
+    nfa.match(input, 0, input.limit(), tables.getInitialState(tokenizerData.defaultLexState));
+    assertEquals("ID", tokenizerData.labels.get(nfa.getMatchedKind()));
+    assertEquals(6, nfa.getMatchedEnd());
+    assertEquals(7, nfa.getScannedEnd());
+    nfa.match(input, 7, input.limit(), tables.getInitialState(tokenizerData.defaultLexState));
+    assertEquals("NUM", tokenizerData.labels.get(nfa.getMatchedKind()));
+    assertEquals(11, nfa.getMatchedEnd());
+  }
+
+  public void testLazyDfaAgreesWithNfa() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerTables tables = tokenizerData.getTables();
+    NfaMatcher nfa = new NfaMatcher(tables);
+    // A single state fits in the second cache, so it thrashes and gives up.
+    int lexState = tokenizerData.defaultLexState;
+    LazyDfa[] dfas = { new LazyDfa(tables, lexState, 1L << 20), new LazyDfa(tables, lexState, 1) };
+    CharWindow input = new CharWindow(input());
+    int start = tables.getInitialState(tokenizerData.defaultLexState);
+    for (int pos = 0; pos < 500; pos++) {
+      nfa.match(input, pos, input.limit(), start);
+      for (LazyDfa dfa : dfas) {
+        if (dfa.match(input, pos, input.limit(), start)) {
+          assertEquals(nfa.getMatchedKind(), dfa.getMatchedKind());
+          assertEquals(nfa.getMatchedEnd(), dfa.getMatchedEnd());
+          assertEquals(nfa.getScannedEnd(), dfa.getScannedEnd());
+        }
+      }
+    }
+    assertFalse(dfas[0].isThrashing());
+    assertTrue(dfas[1].isThrashing());
+  }
+
+  public void testLazyDfaRetriesOnNextInput() throws Exception {
+    // Runs of "a" and "b" need a DFA state for each of the last six chars,
+    // which do not fit in the cache of a few states, while "c" needs one.
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "SKIP : { \" \" }\n"
+      + "TOKEN : { < AB: ([\"a\",\"b\"])* \"a\" ([\"a\",\"b\"]) ([\"a\",\"b\"]) ([\"a\",\"b\"]) ([\"a\",\"b\"]) > "
+      + "| < C: (\"c\")+ > }\n");
+    Tokenizer tokenizer = new Tokenizer(tokenizerData, true, 256);
+    LazyDfa dfa = tokenizer.getLazyDfa(tokenizerData.defaultLexState);
+    StringBuilder ab = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      ab.append(((i * 7) % 3) == 0 ? 'a' : 'b');
+    }
+    ab.append("abbbb");
+    assertTrue(tokenizer.tokenize(ab, new CountingSink()));
+    assertTrue(dfa.isThrashing());
+
+    CountingSink sink = new CountingSink();
+    assertTrue(tokenizer.tokenize("cc c ccc", sink));
+    assertEquals(5, sink.matches);
+    assertFalse(dfa.isThrashing());
+    assertTrue(dfa.getStateCount() > 0);
+  }
+
+  public void testCharClasses() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "TOKEN : { < ID: [\"a\"-\"z\",\"\\u0100\"-\"\\u017f\"] ([\"a\"-\"z\",\"0\"-\"9\",\"\\u0100\"-\"\\u01ff\"])* >\n"
+      + "        | < NUM: ([\"0\"-\"9\"])+ > }\n");
+    TokenizerTables tables = tokenizerData.getTables();
+    int lexState = tokenizerData.defaultLexState;
+    // Letters along with the chars they are interchangeable with, digits, the
+    // chars that can only follow and everything else.
+    assertEquals(4, tables.getCharClassCount(lexState));
+    for (int state = 0; state < tables.getStateCount(); state++) {
+      for (int c = 0; c <= 0xFFFF; c++) {
+        assertEquals(tables.canMove(state, (char) c),
+            tables.canMoveOnClass(state, tables.getCharClass(lexState, (char) c)));
+      }
+    }
+  }
+
+  // The runs before the allocations of a tokenizer are measured.
+  private static final int WARM_UP_RUNS = 50;
+
+  // The bean that counts the bytes allocated by a thread, null if there is
+  // none.
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+      return null;
+    }
+    return bean;
+  }
+
+  // Counts the matches.
+  private static final class CountingSink implements TokenSink {
+
+    int matches;
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      matches++;
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      fail();
+      return false;
+    }
+  }
+
+  public void testMatchDoesNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean bean = NfaMatcherTest.allocationBean();
+    if (bean == null) {
+      return;
+    }
+
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerTables tables = tokenizerData.getTables();
+    NfaMatcher nfa = new NfaMatcher(tables);
+    CharWindow input = new CharWindow(input());
+    long thread = Thread.currentThread().getId();
+
+    int expected = matchAll(nfa, tables, tokenizerData.defaultLexState, input);
+    // The cost of reading the counter itself.
+    long before = bean.getThreadAllocatedBytes(thread);
+    long overhead = bean.getThreadAllocatedBytes(thread) - before;
+
+    before = bean.getThreadAllocatedBytes(thread);
+    int matches = matchAll(nfa, tables, tokenizerData.defaultLexState, input);
+    long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+
+    assertEquals(expected, matches);
+    // The single char SKIPs are literals, the NFA only matches the other three.
+    assertEquals(6000, matches);
+    assertEquals(0, allocated);
+  }
+
+  public void testTokenizeDoesNotAllocate() throws Exception {
+    com.sun.management.ThreadMXBean bean = NfaMatcherTest.allocationBean();
+    if (bean == null) {
+      return;
+    }
+
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    CharWindow input = new CharWindow(input());
+    long thread = Thread.currentThread().getId();
+    // With the NFA, and with the lazy DFA once its states are built.
+    Tokenizer[] tokenizers = { new Tokenizer(tokenizerData, false, 0), new Tokenizer(tokenizerData, true, 1L << 20) };
+    for (Tokenizer tokenizer : tokenizers) {
+      CountingSink sink = new CountingSink();
+      // Warm up until the JIT has compiled the loop, so the measured run does
+      // not allocate for a deoptimization.
+      for (int run = 0; run < WARM_UP_RUNS; run++) {
+        assertTrue(tokenizer.tokenize(input, sink));
+      }
+      long before = bean.getThreadAllocatedBytes(thread);
+      long overhead = bean.getThreadAllocatedBytes(thread) - before;
+
+      sink.matches = 0;
+      before = bean.getThreadAllocatedBytes(thread);
+      boolean done = tokenizer.tokenize(input, sink);
+      long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+      assertTrue(done);
+      // The three tokens and two blanks of each line and its end.
+      assertEquals(12000, sink.matches);
+      assertEquals(0, allocated);
+    }
+  }
+}
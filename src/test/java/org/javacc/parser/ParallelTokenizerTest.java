@@ -0,0 +1,138 @@
+package org.javacc.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class ParallelTokenizerTest extends TestCase {
+
+  // Comments switch to another lexical state, so chunks starting inside one
+  // are mispredicted.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ > }\n"
+    + "MORE : { \"/*\" : IN_COMMENT }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n";
+
+  // Records the matches as "kind start end lexState".
+  private static final class RecordingSink implements TokenSink {
+
+    final List<String> matches = new ArrayList<String>();
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      matches.add(kind + " " + start + " " + end + " " + lexState);
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      matches.add("error " + start + " " + end + " " + lexState);
+      return true;
+    }
+  }
+
+  private static String input() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      sb.append("abc ").append(i).append(i % 5 == 0 ? " /* x 1 y\n*/" : "").append(i % 7 == 0 ? " ?" : "")
+          .append(" z\n");
+    }
+    return sb.toString();
+  }
+
+  public void testAgreesWithTokenizer() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    String input = input();
+    RecordingSink expected = new RecordingSink();
+    new Tokenizer(tokenizerData).tokenize(input, expected);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int chunkSize : new int[] { 16, 37, 100, 1 << 20 }) {
+        RecordingSink sink = new RecordingSink();
+        assertTrue(new ParallelTokenizer(tokenizerData, pool, chunkSize).tokenize(input, sink));
+        assertEquals(expected.matches, sink.matches);
+      }
+
+      File file = File.createTempFile("parallel", ".txt");
+      try {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+          out.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+          RecordingSink sink = new RecordingSink();
+          assertTrue(new ParallelTokenizer(tokenizerData, pool, 50).tokenize(channel, sink));
+          assertEquals(expected.matches, sink.matches);
+        }
+      } finally {
+        file.delete();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testSinkStopsAtError() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    final List<Long> errors = new ArrayList<Long>();
+    boolean done = new ParallelTokenizer(tokenizerData, ForkJoinPool.commonPool(), 16).tokenize(input(),
+        new TokenSink() {
+          @Override
+          public void token(int kind, long start, long end, int lexState) {}
+
+          @Override
+          public boolean error(long start, long end, int lexState) {
+            errors.add(start);
+            return false;
+          }
+        });
+    assertFalse(done);
+    assertEquals(1, errors.size());
+    assertEquals(input().indexOf('?'), errors.get(0).longValue());
+  }
+
+  public void testLineMap() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    // Line ends of all kinds, some at the chunk boundaries.
+    String input = input().replace(" z\n", " z\r\n").replace("abc 1", "abc\r1") + "\n";
+    final LineMap expected = LineMap.of(input);
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      for (int chunkSize : new int[] { 16, 37, 1 << 20 }) {
+        ParallelTokenizer tokenizer = new ParallelTokenizer(tokenizerData, pool, chunkSize);
+        final LineMap lineMap = new LineMap();
+        tokenizer.setLineMap(lineMap);
+        // The lines of a match are known when it gets to the sink.
+        assertTrue(tokenizer.tokenize(input, new TokenSink() {
+          @Override
+          public void token(int kind, long start, long end, int lexState) {
+            assertEquals(expected.getLine(start), lineMap.getLine(start));
+            assertEquals(expected.getColumn(start), lineMap.getColumn(start));
+          }
+
+          @Override
+          public boolean error(long start, long end, int lexState) {
+            return true;
+          }
+        }));
+        assertEquals(expected.getLineCount(), lineMap.getLineCount());
+        for (int line = 1; line <= expected.getLineCount(); line++) {
+          assertEquals(expected.getLineStart(line), lineMap.getLineStart(line));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package org.javacc.parser;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class ParserInterpreterTest extends TestCase {
+
+  // Statements are told apart by LOOKAHEAD(2) and by a syntactic lookahead
+  // that scans a whole call.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ > }\n"
+    + "void Input() : {} { ( Statement() )* <EOF> }\n"
+    + "void Statement() : {} {\n"
+    + "    LOOKAHEAD(2) <ID> \"=\" Expr() \";\"\n"
+    + "  | LOOKAHEAD(Call() \";\") Call() \";\"\n"
+    + "  | <ID> \"(\" \")\" \"!\"\n"
+    + "  | \";\"\n"
+    + "}\n"
+    + "void Call() : {} { <ID> \"(\" [ Expr() ( \",\" Expr() )* ] \")\" }\n"
+    + "void Expr() : {} { Term() ( \"+\" Term() )* }\n"
+    + "void Term() : {} { <NUM> | LOOKAHEAD(2) Call() | <ID> }\n";
+
+  private static ParserInterpreter buildParserInterpreter(String grammar) throws Exception {
+    Context context = GrammarFixture.parseGrammar(grammar);
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(context);
+    return new ParserInterpreter(Main.createParserData(context), tokenizerData);
+  }
+
+  // Records the productions as "Name(...)" and the tokens by their image.
+  private static final class RecordingListener implements ParseListener {
+
+    final StringBuilder  tree = new StringBuilder();
+    private final String input;
+
+    RecordingListener(String input) {
+      this.input = input;
+    }
+
+    @Override
+    public void enterProduction(String name) {
+      tree.append(name).append('(');
+    }
+
+    @Override
+    public void token(int kind, long start, long end) {
+      tree.append(input, (int) start, (int) end).append(' ');
+    }
+
+    @Override
+    public void exitProduction(String name) {
+      tree.append(')');
+    }
+  }
+
+  public void testParse() throws Exception {
+    ParserInterpreter interpreter = buildParserInterpreter(GRAMMAR);
+    String input = "a = 1 + f(b, 2); g(); h() !;";
+    RecordingListener listener = new RecordingListener(input);
+    interpreter.parse("Input", input, listener);
+    assertEquals("Input(Statement(a = Expr(Term(1 )+ Term(Call(f ( Expr(Term(b )), Expr(Term(2 ))) ))); )"
+        + "Statement(Call(g ( ) ); )Statement(h ( ) ! )Statement(; ) )", listener.tree.toString());
+  }
+
+  public void testSyntaxError() throws Exception {
+    ParserInterpreter interpreter = buildParserInterpreter(GRAMMAR);
+    try {
+      interpreter.parse("Input", "a = 1;\nb = ;", null);
+      fail();
+    } catch (ParseException e) {
+      assertEquals("Encountered \";\" at line 2, column 5. Was expecting one of: <ID>, <NUM>", e.getMessage());
+    }
+    try {
+      interpreter.parse("Input", "a = 1 $", null);
+      fail();
+    } catch (ParseException e) {
+      assertEquals("Lexical error at line 1, column 7. Encountered: \"$\"", e.getMessage());
+    }
+  }
+
+  public void testRejectsUnsupportedGrammar() throws Exception {
+    try {
+      // Semantic lookahead is rejected even if no input would reach it.
+      buildParserInterpreter(
+          "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+        + "TOKEN : { < A: \"a\" > | < B: \"b\" > }\n"
+        + "void Input() : {} { ( <A> | Other() )* <EOF> }\n"
+        + "void Other() : {} { <B> ( LOOKAHEAD({ true }) <A> )* Skip() }\n"
+        + "JAVACODE void Skip() { getNextToken(); }\n");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Semantic lookahead and JAVACODE productions can not be interpreted, used by: "
+          + "Other (semantic lookahead at line 4, column 37, JAVACODE production Skip)", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package org.javacc.parser;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class TokenAssemblerTest extends TestCase {
+
+  // Comments are MORE matches ending in a SPECIAL_TOKEN, strings MORE matches
+  // ending in a TOKEN.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > }\n"
+    + "MORE : { \"/*\" : IN_COMMENT | \"'\" : IN_STRING }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n"
+    + "<IN_STRING> TOKEN : { < STRING: \"'\" > : DEFAULT }\n"
+    + "<IN_STRING> MORE : { < ~[] > }\n";
+
+  private static final String INPUT = "ab /* x\ny */ 'cd ef' /* z */ gh";
+
+  private static TokenizerData tokenizerData;
+
+  @Override
+  protected void setUp() throws Exception {
+    if (tokenizerData == null) {
+      tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    }
+  }
+
+  private static int kind(String label) {
+    for (int kind : tokenizerData.labels.keySet()) {
+      if (label.equals(tokenizerData.labels.get(kind))) {
+        return kind;
+      }
+    }
+    throw new IllegalArgumentException(label);
+  }
+
+  public void testAssemblesMoreMatches() {
+    TokenBuffer tokens = new TokenBuffer(tokenizerData, 0, true);
+    tokens.setInput(INPUT);
+    TokenAssembler assembler = new TokenAssembler(tokenizerData, tokens);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(INPUT, assembler));
+    assertTrue(assembler.finish());
+
+    List<String> images = new ArrayList<String>();
+    for (int i = 0; i < tokens.size(); i++) {
+      if (tokenizerData.allMatches.get(tokens.getKind(i)).matchType != TokenizerData.MatchType.SKIP) {
+        images.add(tokens.getImage(i).toString());
+      }
+    }
+    assertEquals("[ab, /* x\ny */, 'cd ef', /* z */, gh]", images.toString());
+
+    int string = tokens.indexOf(INPUT.indexOf("'cd"));
+    assertEquals(kind("STRING"), tokens.getKind(string));
+    assertEquals(tokens.indexOf(INPUT.indexOf("/* x")), tokens.getSpecialToken(string));
+    int gh = tokens.indexOf(INPUT.indexOf("gh"));
+    assertEquals(tokens.indexOf(INPUT.indexOf("/* z")), tokens.getSpecialToken(gh));
+    assertEquals(-1, tokens.getSpecialToken(tokens.indexOf(0)));
+  }
+
+  public void testActions() {
+    final List<String> runs = new ArrayList<String>();
+    TokenAssembler assembler = new TokenAssembler(tokenizerData, new TokenBuffer(tokenizerData));
+    assembler.setAction(kind("STRING"), new LexicalAction() {
+      @Override
+      public void run(int kind, long imageStart, long start, long end, int lexState) {
+        runs.add(INPUT.substring((int) imageStart, (int) end) + " " + INPUT.substring((int) start, (int) end) + " "
+            + tokenizerData.lexStateNames[lexState]);
+      }
+    });
+    new Tokenizer(tokenizerData).tokenize(INPUT, assembler);
+    assertEquals("['cd ef' ' IN_STRING]", runs.toString());
+  }
+
+  public void testInputEndingInMore() {
+    String input = "ab 'cd";
+    final List<String> errors = new ArrayList<String>();
+    TokenAssembler assembler = new TokenAssembler(tokenizerData, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {}
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        errors.add(start + " " + end);
+        return false;
+      }
+    });
+    assertTrue(new Tokenizer(tokenizerData).tokenize(input, assembler));
+    assertFalse(assembler.finish());
+    assertEquals("[3 6]", errors.toString());
+  }
+
+  // The input window keeps the MORE matches before a token, so its image and
+  // position can be taken from the tokenizer even for a small window.
+  public void testImagesFromReader() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append("ab /* ").append(i).append(" xxxxxxxxxx\nyyyyyyyyyy */ 'cd ").append(i).append("'\n");
+    }
+    final String input = sb.toString();
+    final Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    final List<String> images = new ArrayList<String>();
+    final List<String> expected = new ArrayList<String>();
+    final LineMap lineMap = LineMap.of(input);
+    TokenAssembler assembler = new TokenAssembler(tokenizerData, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        assertEquals(start, tokenizer.getImageStart());
+        images.add(tokenizer.getImage(start, end) + "@" + tokenizer.getImageLine() + ":"
+            + tokenizer.getImageColumn());
+        expected.add(input.substring((int) start, (int) end) + "@" + lineMap.getLine(start) + ":"
+            + lineMap.getColumn(start));
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        fail();
+        return false;
+      }
+    });
+    tokenizer.tokenize(new CharWindow(new StringReader(input), 16), assembler);
+    assertEquals(expected, images);
+    assertTrue(images.contains("/* 199 xxxxxxxxxx\nyyyyyyyyyy */@399:4"));
+  }
+}
@@ -0,0 +1,93 @@
+package org.javacc.parser;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class TokenBufferTest extends TestCase {
+
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" }\n"
+    + "SPECIAL_TOKEN : { < COMMENT: \"#\" ([\"a\"-\"z\"])* > }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ > }\n"
+    + "void Input() : {} { ( <ID> | <NUM> )* <EOF> }\n";
+
+  private static TokenizerData tokenizerData;
+
+  @Override
+  protected void setUp() throws Exception {
+    if (tokenizerData == null) {
+      tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    }
+  }
+
+  public void testColumns() {
+    String input = "ab 12 ? cd";
+    TokenBuffer tokens = new TokenBuffer(tokenizerData);
+    tokens.setInput(input);
+    new Tokenizer(tokenizerData).tokenize(input, tokens);
+
+    // ab, " ", 12, " ", ?, " ", cd
+    assertEquals(7, tokens.size());
+    assertEquals("ID", tokens.getLabel(0));
+    assertEquals("ab", tokens.getImage(0).toString());
+    assertEquals(3, tokens.getStart(2));
+    assertEquals(5, tokens.getEnd(2));
+    assertEquals("NUM", tokens.getLabel(2));
+    assertEquals(TokenBuffer.ERROR, tokens.getKind(4));
+    assertNull(tokens.getLabel(4));
+    assertEquals("?", tokens.getImage(4).toString());
+    assertEquals("cd", tokens.getImage(6).toString());
+    assertEquals(tokenizerData.defaultLexState, tokens.getLexState(6));
+
+    assertEquals(6, tokens.indexOf(8));
+    assertEquals(-1, tokens.indexOf(9));
+    assertEquals(-1, tokens.getSpecialToken(6));
+
+    tokens.clear();
+    assertEquals(0, tokens.size());
+  }
+
+  public void testSpecialTokens() {
+    String input = "#x #y ab #z 12 cd";
+    TokenBuffer tokens = new TokenBuffer(tokenizerData, 0, true);
+    new Tokenizer(tokenizerData).tokenize(input, tokens);
+
+    int x = tokens.indexOf(0);
+    int y = tokens.indexOf(3);
+    int ab = tokens.indexOf(6);
+    int z = tokens.indexOf(9);
+    int num = tokens.indexOf(12);
+    int cd = tokens.indexOf(15);
+    assertEquals(-1, tokens.getSpecialToken(x));
+    assertEquals(x, tokens.getSpecialToken(y));
+    assertEquals(y, tokens.getSpecialToken(ab));
+    assertEquals(-1, tokens.getSpecialToken(z));
+    assertEquals(z, tokens.getSpecialToken(num));
+    assertEquals(-1, tokens.getSpecialToken(cd));
+    // SKIP matches are not linked.
+    assertEquals(-1, tokens.getSpecialToken(tokens.indexOf(2)));
+  }
+
+  public void testGrowsAndKeepsOffsetsPastBase() {
+    long base = 3L << 32;
+    TokenBuffer tokens = new TokenBuffer(tokenizerData, base, false);
+    for (int i = 0; i < 10000; i++) {
+      tokens.add(i % 3, base + 2 * i, base + 2 * i + 1, 0);
+    }
+    assertEquals(10000, tokens.size());
+    assertEquals(base + 19998, tokens.getStart(9999));
+    assertEquals(base + 19999, tokens.getEnd(9999));
+    assertEquals(9999 % 3, tokens.getKind(9999));
+    assertEquals(5000, tokens.indexOf(base + 10000));
+    assertEquals(-1, tokens.indexOf(base + 10001));
+    assertEquals(-1, tokens.indexOf(0));
+    try {
+      tokens.add(0, 0, 1, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Before the base.
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package org.javacc.parser;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class TokenizerDataCacheTest extends TestCase {
+
+  // Literals with and without IGNORE_CASE, an inline literal and a comment
+  // state reached by MORE.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN [IGNORE_CASE] : { < SELECT: \"select\" > }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\",\"\\u00e0\"-\"\\u00ff\"])+ > | < NUM: ([\"0\"-\"9\"])+ > }\n"
+    + "MORE : { \"/*\" : IN_COMMENT }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n"
+    + "void Input() : {} { ( <ID> | <NUM> | \";\" )* <EOF> }\n";
+
+  private static final String INPUT = "SeLeCt abc 12; /* x */ d\u00e9j\u00e0 ?";
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = File.createTempFile("tokenizer", "");
+    dir.delete();
+  }
+
+  @Override
+  protected void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  // Parses the grammar and returns the digest of its tokenizer data.
+  private static String digest(String grammar) throws Exception {
+    return TokenizerDataCache.digest(GrammarFixture.parseGrammar(grammar));
+  }
+
+  private static List<String> tokenize(TokenizerData tokenizerData) {
+    final List<String> matches = new ArrayList<String>();
+    new Tokenizer(tokenizerData).tokenize(INPUT, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        matches.add(kind + " " + start + " " + end + " " + lexState);
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        matches.add("error " + start + " " + end + " " + lexState);
+        return true;
+      }
+    });
+    return matches;
+  }
+
+  public void testRoundTrip() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerDataCache cache = new TokenizerDataCache(dir);
+    assertNull(cache.get("x"));
+    cache.put("x", tokenizerData);
+    TokenizerData cached = cache.get("x");
+
+    assertEquals(tokenize(tokenizerData), tokenize(cached));
+    assertEquals(tokenizerData.labels, cached.labels);
+    assertEquals(";", cached.images[cached.images.length - 1]);
+    assertEquals("IN_COMMENT", cached.lexStateNames[1]);
+    assertEquals(tokenizerData.defaultLexState, cached.defaultLexState);
+    assertEquals(tokenizerData.allMatches.size(), cached.allMatches.size());
+    for (int kind : tokenizerData.allMatches.keySet()) {
+      assertEquals(tokenizerData.allMatches.get(kind).matchType, cached.allMatches.get(kind).matchType);
+      assertEquals(tokenizerData.allMatches.get(kind).newLexState, cached.allMatches.get(kind).newLexState);
+    }
+  }
+
+  public void testDigest() throws Exception {
+    String digest = digest(GRAMMAR);
+    assertEquals(64, digest.length());
+    assertEquals(digest, digest(GRAMMAR));
+    // Comments, layout and the BNF around the literals do not change the tokens.
+    assertEquals(digest, digest(GRAMMAR.replace("SKIP : {", "/* blanks */\nSKIP :\n{")
+        + "void Other() : {} { <ID> }\n"));
+    assertFalse(digest.equals(digest(GRAMMAR.replace("\"select\"", "\"selec\""))));
+    assertFalse(digest.equals(digest(GRAMMAR.replace("\";\"", "\",\""))));
+    assertFalse(digest.equals(digest("options { IGNORE_CASE = true; }\n" + GRAMMAR)));
+  }
+
+  public void testRejectsOtherVersions() throws Exception {
+    TokenizerDataCache cache = new TokenizerDataCache(dir);
+    cache.put("x", GrammarFixture.buildTokenizerData(GRAMMAR));
+    File file = new File(dir, "x.tokenizer");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(4);
+      raf.writeInt(TokenizerDataCache.VERSION + 1);
+    }
+    assertNull(cache.get("x"));
+
+    cache.put("x", GrammarFixture.buildTokenizerData(GRAMMAR));
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() / 2);
+    }
+    assertNull(cache.get("x"));
+  }
+}
@@ -0,0 +1,88 @@
+package org.javacc.parser;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class TokenizerMetricsTest extends TestCase {
+
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" }\n"
+    + "TOKEN : { < IF: \"if\" > | < ID: ([\"a\"-\"z\"])+ > | < NUM: ([\"0\"-\"9\"])+ (\".\" ([\"0\"-\"9\"])+)? > }\n";
+
+  private static final TokenSink IGNORE = new TokenSink() {
+    @Override
+    public void token(int kind, long start, long end, int lexState) {}
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      return true;
+    }
+  };
+
+  private static int kind(TokenizerData tokenizerData, String label) {
+    for (int kind : tokenizerData.labels.keySet()) {
+      if (label.equals(tokenizerData.labels.get(kind))) {
+        return kind;
+      }
+    }
+    throw new IllegalArgumentException(label);
+  }
+
+  public void testCounts() throws Exception {
+    for (boolean lazyDfa : new boolean[] { true, false }) {
+      TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+      Tokenizer tokenizer = new Tokenizer(tokenizerData, lazyDfa, 1 << 20);
+      TokenizerMetrics metrics = new TokenizerMetrics(tokenizerData);
+      tokenizer.setMetrics(metrics);
+      // "." and "?" are errors.
+      String input = "if ifs 1. ? 12";
+      tokenizer.tokenize(input, IGNORE);
+
+      assertEquals(8, metrics.getMatches());
+      assertEquals(2, metrics.getErrors());
+      assertEquals(input.length(), metrics.getChars());
+      assertEquals(1, metrics.getKindCount(kind(tokenizerData, "IF")));
+      assertEquals(1, metrics.getKindCount(kind(tokenizerData, "ID")));
+      assertEquals(2, metrics.getKindCount(kind(tokenizerData, "NUM")));
+      assertEquals(Long.valueOf(2), metrics.getKindCounts().get("NUM"));
+      // The blanks and "if" are decided by the literal trie, the rest by the
+      // automaton.
+      assertEquals(5, metrics.getLiteralMatches());
+      assertEquals(3, metrics.getAutomatonMatches());
+      // "1. " is read up to the blank that ends the NUM automaton.
+      assertEquals(2, metrics.getMaxOvershoot());
+      assertTrue(metrics.getNanos() > 0);
+
+      long chars = 0;
+      for (long count : metrics.getActiveStates(tokenizerData.defaultLexState)) {
+        chars += count;
+      }
+      assertTrue(chars > 0);
+      assertTrue(metrics.toJson().contains("\"NUM\": 2"));
+
+      metrics.reset();
+      assertEquals(0, metrics.getMatches());
+      assertEquals(0, metrics.getChars());
+    }
+  }
+
+  public void testMBean() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    TokenizerMetrics metrics = new TokenizerMetrics(tokenizerData);
+    tokenizer.setMetrics(metrics);
+    tokenizer.tokenize("ab cd", IGNORE);
+    ObjectName name = metrics.register("test");
+    try {
+      assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Matches"));
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+  }
+}
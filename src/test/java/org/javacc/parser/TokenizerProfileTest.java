@@ -0,0 +1,137 @@
+package org.javacc.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class TokenizerProfileTest extends TestCase {
+
+  // Literals extending each other, and a comment state reached by MORE.
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" }\n"
+    + "TOKEN : { < IN: \"in\" > | < INT: \"int\" > | < INTERFACE: \"interface\" > | < IF: \"if\" > }\n"
+    + "TOKEN : { < ID: [\"a\"-\"z\",\"_\"] ([\"a\"-\"z\",\"_\",\"0\"-\"9\"])* >\n"
+    + "        | < NUM: ([\"0\"-\"9\"])+ (\".\" ([\"0\"-\"9\"])+)? > }\n"
+    + "MORE : { \"/*\" : IN_COMMENT }\n"
+    + "<IN_COMMENT> SPECIAL_TOKEN : { < COMMENT: \"*/\" > : DEFAULT }\n"
+    + "<IN_COMMENT> MORE : { < ~[] > }\n";
+
+  // Mostly ifs and numbers.
+  private static final String INPUT =
+      "if if if 1.5 2.25 if 42 in int x_1 if 7.0 /* a * b */ if interface 3 if\n";
+
+  private static List<String> tokenize(TokenizerData tokenizerData, TokenizerProfile profile, String input) {
+    final List<String> matches = new ArrayList<String>();
+    Tokenizer tokenizer = new Tokenizer(tokenizerData, false, 0);
+    tokenizer.setProfile(profile);
+    tokenizer.tokenize(input, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        matches.add(kind + " " + start + " " + end + " " + lexState);
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        matches.add("error " + start + " " + end + " " + lexState);
+        return true;
+      }
+    });
+    return matches;
+  }
+
+  // The grammar built with the profile, written to a file.
+  private static TokenizerData buildWithProfile(TokenizerProfile profile) throws Exception {
+    File file = File.createTempFile("tokenizer", ".profile");
+    try {
+      profile.write(file);
+      return GrammarFixture.buildTokenizerData(
+          "options { TOKENIZER_PROFILE = \"" + file.getAbsolutePath().replace('\\', '/') + "\"; }\n" + GRAMMAR);
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static TokenizerProfile record(TokenizerData tokenizerData) {
+    TokenizerProfile profile = new TokenizerProfile(tokenizerData);
+    tokenize(tokenizerData, profile, INPUT);
+    return profile;
+  }
+
+  public void testRecordsAndReads() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerProfile profile = record(tokenizerData);
+    assertEquals(7, profile.getKindHits(6));
+    assertEquals(1, profile.getKindHits(7));
+    assertEquals(5, profile.getKindHits(8));
+    assertTrue(profile.getStateHits(tokenizerData.getTables().getInitialState(tokenizerData.defaultLexState)) > 0);
+    File file = File.createTempFile("tokenizer", ".profile");
+    try {
+      profile.write(file);
+      TokenizerProfile read = TokenizerProfile.read(file);
+      assertTrue(profile.matches(read));
+      for (int kind = 0; kind < profile.getKindCount(); kind++) {
+        assertEquals(profile.getKindHits(kind), read.getKindHits(kind));
+      }
+      for (int state = 0; state < profile.getStateCount(); state++) {
+        assertEquals(profile.getStateHits(state), read.getStateHits(state));
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testOrdersLiterals() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    int key = (tokenizerData.defaultLexState << 16) | 'i';
+    assertEquals(Arrays.asList("interface", "int", "if", "in"), tokenizerData.literalSequence.get(key));
+    TokenizerData profiled = buildWithProfile(record(tokenizerData));
+    // "if" is hot, and the literals it is not a prefix of may come after it.
+    assertEquals(Arrays.asList("if", "interface", "int", "in"), profiled.literalSequence.get(key));
+    assertEquals(Arrays.asList(6, 5, 4, 3), profiled.literalKinds.get(key));
+  }
+
+  public void testLaysOutStates() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    TokenizerProfile profile = record(tokenizerData);
+    TokenizerData profiled = buildWithProfile(profile);
+    TokenizerTables tables = profiled.getTables();
+    boolean moved = false;
+    for (int state = 0; state < tables.getStateCount(); state++) {
+      moved |= profiled.getSourceState(state) != state;
+      if ((state > 0) && (tables.getLexState(state - 1) == tables.getLexState(state))) {
+        assertTrue(profile.getStateHits(profiled.getSourceState(state - 1))
+            >= profile.getStateHits(profiled.getSourceState(state)));
+      }
+    }
+    assertTrue(moved);
+    List<String> expected = tokenize(tokenizerData, null, INPUT);
+    assertEquals(expected, tokenize(profiled, null, INPUT));
+    MinimalDfa.build(profiled);
+    assertEquals(expected, tokenize(profiled, null, INPUT));
+
+    // Recording with the laid out states counts the same.
+    TokenizerProfile again = record(profiled);
+    assertTrue(profile.matches(again));
+    for (int state = 0; state < profile.getStateCount(); state++) {
+      assertEquals(profile.getStateHits(state), again.getStateHits(state));
+    }
+    again.add(profile);
+    assertEquals(2 * profile.getStateHits(0), again.getStateHits(0));
+  }
+
+  public void testIgnoresOtherGrammar() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Other) public class Other {} PARSER_END(Other)\n" + GRAMMAR.substring(GRAMMAR.indexOf('\n') + 1));
+    TokenizerData profiled = buildWithProfile(record(tokenizerData));
+    for (int state = 0; state < profiled.getTables().getStateCount(); state++) {
+      assertEquals(state, profiled.getSourceState(state));
+    }
+    assertEquals(tokenize(GrammarFixture.buildTokenizerData(GRAMMAR), null, INPUT), tokenize(profiled, null, INPUT));
+  }
+}
@@ -0,0 +1,282 @@
+package org.javacc.parser;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.javacc.GrammarFixture;
+
+import junit.framework.TestCase;
+
+public final class TokenizerTest extends TestCase {
+
+  private static final String GRAMMAR =
+      "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+    + "SKIP : { \" \" | \"\\n\" | \"\\r\" }\n"
+    + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < PLUS: \"+\" > }\n";
+
+  // Records the matches as "kind start end" and the errors as "error start end".
+  private static final class RecordingSink implements TokenSink {
+
+    final List<String> matches = new ArrayList<String>();
+    final boolean      stopAtError;
+
+    RecordingSink(boolean stopAtError) {
+      this.stopAtError = stopAtError;
+    }
+
+    @Override
+    public void token(int kind, long start, long end, int lexState) {
+      matches.add(kind + " " + start + " " + end);
+    }
+
+    @Override
+    public boolean error(long start, long end, int lexState) {
+      matches.add("error " + start + " " + end);
+      return !stopAtError;
+    }
+  }
+
+  public void testPushesMatchesToSink() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    // Kinds are numbered in declaration order after EOF.
+    assertEquals("ID", tokenizerData.labels.get(4));
+    assertEquals("PLUS", tokenizerData.labels.get(5));
+    RecordingSink sink = new RecordingSink(false);
+    assertTrue(new Tokenizer(tokenizerData).tokenize("ab+c", sink));
+    assertEquals("[4 0 2, 5 2 3, 4 3 4]", sink.matches.toString());
+  }
+
+  public void testErrors() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    Tokenizer tokenizer = new Tokenizer(tokenizerData);
+
+    RecordingSink sink = new RecordingSink(false);
+    assertTrue(tokenizer.tokenize("a 1 b", sink));
+    assertEquals(5, sink.matches.size());
+    assertEquals("error 2 3", sink.matches.get(2));
+
+    sink = new RecordingSink(true);
+    assertFalse(tokenizer.tokenize("a 1 b", sink));
+    assertEquals("error 2 3", sink.matches.get(sink.matches.size() - 1));
+  }
+
+  public void testLongestLiteral() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "SKIP : { \" \" }\n"
+      + "TOKEN : { < EQ: \"=\" > | < EQEQ: \"==\" > | < EQEQEQ: \"===\" > | < IF: \"if\" > }\n"
+      + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > }\n");
+    String input = "a===b==c=d if iff ====";
+    RecordingSink expected = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(input, expected));
+    assertEquals("[6 0 1, 4 1 4, 6 4 5, 3 5 7, 6 7 8, 2 8 9, 6 9 10, 1 10 11, 5 11 13, 1 13 14, 6 14 17, 1 17 18, "
+        + "4 18 21, 2 21 22]", expected.matches.toString());
+
+    // Literals that run into the end of a small window are matched again.
+    RecordingSink sink = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(new CharWindow(new StringReader(input), 2), sink));
+    assertEquals(expected.matches, sink.matches);
+  }
+
+  public void testIgnoreCase() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "SKIP : { \" \" }\n"
+      + "TOKEN [IGNORE_CASE] : { < SELECT: \"select\" > | < SELECTED: \"selected\" > }\n"
+      + "TOKEN : { < FROM: \"From\" > | < ID: ([\"a\"-\"z\",\"A\"-\"Z\"])+ > }\n");
+    RecordingSink sink = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize("SeLeCt SELECTED From from FROM selectx", sink));
+    assertEquals("[2 0 6, 1 6 7, 3 7 15, 1 15 16, 4 16 20, 1 20 21, 5 21 25, 1 25 26, 5 26 30, 1 30 31, 5 31 38]",
+        sink.matches.toString());
+
+    tokenizerData = GrammarFixture.buildTokenizerData(
+        "options { IGNORE_CASE = true; }\n"
+      + "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "SKIP : { \" \" }\n"
+      + "TOKEN : { < FROM: \"From\" > | < ID: ([\"a\"-\"z\"])+ > }\n");
+    sink = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize("FROM from fRoMx X", sink));
+    assertEquals("[2 0 4, 1 4 5, 2 5 9, 1 9 10, 3 10 15, 1 15 16, 3 16 17]", sink.matches.toString());
+  }
+
+  public void testLineAndColumn() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    final Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      sb.append("ab + c").append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\n" : "\r").append(" d\n\n");
+    }
+    final String input = sb.toString();
+    final LineMap expected = LineMap.of(input);
+    LineMap lineMap = new LineMap();
+    tokenizer.setLineMap(lineMap);
+    final List<Long> starts = new ArrayList<Long>();
+    // A small buffer, so that the window slides many times.
+    assertTrue(tokenizer.tokenize(new CharWindow(new StringReader(input), 16), new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        assertEquals(expected.getLine(start), tokenizer.getLine());
+        assertEquals(expected.getColumn(start), tokenizer.getColumn());
+        starts.add(start);
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        fail();
+        return false;
+      }
+    }));
+    assertEquals(900, expected.getLineCount());
+    assertEquals(expected.getLineCount(), lineMap.getLineCount());
+    for (long start : starts) {
+      assertEquals(expected.getLine(start), lineMap.getLine(start));
+    }
+    assertEquals(2, expected.getLine(input.indexOf(" d")));
+    assertEquals(1, expected.getLine(input.indexOf("\n")));
+  }
+
+  public void testSkipRuns() throws Exception {
+    // Only " " always matches alone: "-" starts "--", "\t" starts INDENT and
+    // "\n" switches lexical states.
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "SKIP : { \" \" | \"\\t\" | \"-\" | \"\\n\" : NL }\n"
+      + "TOKEN : { < DASHES: \"--\" > | < INDENT: (\"\\t\")+ > | < ID: ([\"a\"-\"z\"])+ > }\n"
+      + "<NL> SKIP : { \" \" : DEFAULT }\n");
+    long[] skipChars = tokenizerData.getSkipChars();
+    assertEquals(1L << ' ', skipChars[2 * tokenizerData.defaultLexState]);
+    assertEquals(0, skipChars[(2 * tokenizerData.defaultLexState) + 1]);
+
+    String input = "a   b\t\tc\t-d--e\n f  ";
+    RecordingSink expected = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(input, expected));
+    assertEquals("[7 0 1, 1 1 2, 1 2 3, 1 3 4, 7 4 5, 6 5 7, 7 7 8, 2 8 9, 3 9 10, 7 10 11, 5 11 13, 7 13 14, "
+        + "4 14 15, 8 15 16, 7 16 17, 1 17 18, 1 18 19]", expected.matches.toString());
+
+    // Runs that reach the end of a small window go on in the next one.
+    RecordingSink sink = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(new CharWindow(new StringReader(input), 2), sink));
+    assertEquals(expected.matches, sink.matches);
+
+    // The lookahead of a blank is the char after it, as for other literals,
+    // and the run ends when the tokenizer is stopped.
+    final Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    final List<Long> lookaheadEnds = new ArrayList<Long>();
+    assertFalse(tokenizer.tokenize(input, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        lookaheadEnds.add(tokenizer.getLookaheadEnd());
+        if (start == 2) {
+          tokenizer.stop();
+        }
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        fail();
+        return false;
+      }
+    }));
+    assertEquals("[2, 3, 4]", lookaheadEnds.toString());
+  }
+
+  public void testSkipClassRuns() throws Exception {
+    // Blanks loop over a char class and line ends are a lone char class, "#"
+    // goes on with "!" and "%" starts a longer TOKEN while "&" does not.
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "SKIP : { < (\" \"|\"\\t\")+ > | < [\"\\r\",\"\\n\"] > | < (\"#\")+ \"!\" > | < [\"%\",\"&\"] > }\n"
+      + "TOKEN : { < ID: ([\"a\"-\"z\"])+ > | < PERCENTS: \"%%\" > }\n");
+    int lexState = tokenizerData.defaultLexState;
+    TokenizerSnapshot snapshot = tokenizerData.freeze();
+    long[] skipChars = snapshot.getSkipChars();
+    assertEquals((1L << ' ') | (1L << '\t') | (1L << '\r') | (1L << '\n') | (1L << '&'), skipChars[2 * lexState]);
+    assertEquals(0, skipChars[(2 * lexState) + 1]);
+    assertEquals("[9,20]", snapshot.getSkipLoop(lexState, ' ').toString());
+    assertTrue(snapshot.getSkipLoop(lexState, '\n').isEmpty());
+
+    String input = "a \t b\n\nc##!%&d  ";
+    RecordingSink expected = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(input, expected));
+    assertEquals("[5 0 1, 1 1 4, 5 4 5, 2 5 6, 2 6 7, 5 7 8, 3 8 11, 4 11 12, 4 12 13, 5 13 14, 1 14 16]",
+        expected.matches.toString());
+
+    // Runs that reach the end of a small window are matched again with more
+    // chars.
+    RecordingSink sink = new RecordingSink(true);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(new CharWindow(new StringReader(input), 2), sink));
+    assertEquals(expected.matches, sink.matches);
+
+    // The lookahead of a run is the char after it, that of a lone char class
+    // the char itself.
+    final Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    final List<Long> lookaheadEnds = new ArrayList<Long>();
+    assertTrue(tokenizer.tokenize(input, new TokenSink() {
+      @Override
+      public void token(int kind, long start, long end, int lexState) {
+        lookaheadEnds.add(tokenizer.getLookaheadEnd());
+      }
+
+      @Override
+      public boolean error(long start, long end, int lexState) {
+        fail();
+        return false;
+      }
+    }));
+    assertEquals("[2, 5, 6, 6, 7, 9, 11, 13, 13, 15, 17]", lookaheadEnds.toString());
+  }
+
+  public void testStartChars() throws Exception {
+    TokenizerSnapshot snapshot = GrammarFixture.buildTokenizerData(GRAMMAR).freeze();
+    int lexState = snapshot.getDefaultLexState();
+    assertEquals("[a,d,20,2b,61-7a]", snapshot.getStartChars(lexState).toString());
+    assertTrue(snapshot.canStart(lexState, '+'));
+    assertFalse(snapshot.canStart(lexState, '1'));
+    assertFalse(snapshot.canStart(lexState, '\u00e9'));
+
+    // Other chars come from the ranges, and a wildcard starts with any.
+    snapshot = GrammarFixture.buildTokenizerData(
+        "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n"
+      + "TOKEN : { < W: ([\"\\u00e0\"-\"\\u00ff\"])+ > | < X: \"\\u0100\" > }\n"
+      + "<ANY> TOKEN : { < C: ~[] > }\n").freeze();
+    assertEquals("[e0-100]", snapshot.getStartChars(lexState).toString());
+    assertTrue(snapshot.canStart(lexState, '\u00e9'));
+    assertFalse(snapshot.canStart(lexState, '\u0101'));
+    assertTrue(snapshot.canStart(1 - lexState, '\u0101'));
+    assertEquals(CodePointSet.of(0, Character.MAX_VALUE), snapshot.getStartChars(1 - lexState));
+  }
+
+  public void testErrorRecovery() throws Exception {
+    TokenizerData tokenizerData = GrammarFixture.buildTokenizerData(GRAMMAR);
+    String input = "a 12+\u00e9\u00e9 b1";
+    RecordingSink sink = new RecordingSink(false);
+    assertTrue(new Tokenizer(tokenizerData).tokenize(input, sink));
+    assertEquals("[4 0 1, 1 1 2, error 2 3, error 3 4, 5 4 5, error 5 6, error 6 7, 1 7 8, 4 8 9, error 9 10]",
+        sink.matches.toString());
+
+    // A run of chars no token starts with is one error.
+    Tokenizer tokenizer = new Tokenizer(tokenizerData);
+    tokenizer.setErrorRecovery(true);
+    sink = new RecordingSink(false);
+    assertTrue(tokenizer.tokenize(input, sink));
+    assertEquals("[4 0 1, 1 1 2, error 2 4, 5 4 5, error 5 7, 1 7 8, 4 8 9, error 9 10]", sink.matches.toString());
+
+    // A run is cut where the input window ends.
+    StringBuilder garbage = new StringBuilder("a");
+    for (int i = 0; i < 40; i++) {
+      garbage.append('1');
+    }
+    sink = new RecordingSink(false);
+    assertTrue(tokenizer.tokenize(new CharWindow(new StringReader(garbage.append("+b").toString()), 16), sink));
+    assertEquals("4 0 1", sink.matches.get(0));
+    assertEquals("[5 41 42, 4 42 43]", sink.matches.subList(sink.matches.size() - 2, sink.matches.size()).toString());
+    long end = 1;
+    for (String match : sink.matches.subList(1, sink.matches.size() - 2)) {
+      assertTrue(match.startsWith("error " + end + " "));
+      end = Long.parseLong(match.substring(match.lastIndexOf(' ') + 1));
+    }
+    assertEquals(41, end);
+    assertTrue(sink.matches.size() < 10);
+  }
+}
@@ -0,0 +1,91 @@
+package org.javacc.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import junit.framework.TestCase;
+
+public final class Utf8InputTest extends TestCase {
+
+  private static final String TEXT = "ab\u00E9c \u20AC1 \uD83D\uDE00x \u00FF\u0800";
+
+  // Decodes the whole input by stepping from char to char.
+  private static String decode(TokenizerInput input) {
+    StringBuilder sb = new StringBuilder();
+    for (int pos = 0; pos < input.limit(); pos = input.next(pos)) {
+      sb.append(input.charAt(pos));
+    }
+    return sb.toString();
+  }
+
+  public void testDecodesLikeString() {
+    Utf8Input input = new Utf8Input(ByteBuffer.wrap(TEXT.getBytes(StandardCharsets.UTF_8)));
+    assertEquals(TEXT, decode(input));
+    assertEquals(TEXT, input.subSequence(0, input.limit()).toString());
+    // Positions are byte offsets.
+    assertEquals(2, input.next(1));
+    assertEquals(4, input.next(2));
+    assertEquals('\u00E9', input.charAt(2));
+  }
+
+  public void testMalformedBytes() {
+    byte[] bytes = { 'a', (byte) 0x80, (byte) 0xC3, 'b', (byte) 0xE2, (byte) 0x82 };
+    assertEquals("a\uFFFD\uFFFDb\uFFFD\uFFFD", decode(new Utf8Input(ByteBuffer.wrap(bytes))));
+  }
+
+  public void testIllFormedSequences() {
+    // Overlong sequences, among them a "/" of two and of three bytes, a
+    // surrogate and code points above U+10FFFF are a replacement char per
+    // byte. The image has replacement chars as well, though the decoder of
+    // String may take several bytes together.
+    byte[][] sequences = {
+      { (byte) 0xC0, (byte) 0xAF },
+      { (byte) 0xC1, (byte) 0xBF },
+      { (byte) 0xE0, (byte) 0x80, (byte) 0xAF },
+      { (byte) 0xED, (byte) 0xA0, (byte) 0x80 },
+      { (byte) 0xF0, (byte) 0x80, (byte) 0x80, (byte) 0xAF },
+      { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 },
+      { (byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80 },
+      { (byte) 0xFF },
+    };
+    for (byte[] sequence : sequences) {
+      Utf8Input input = new Utf8Input(ByteBuffer.wrap(sequence));
+      String replaced = decode(input);
+      assertEquals(sequence.length, replaced.length());
+      assertEquals("", replaced.replace("\uFFFD", ""));
+      assertEquals("", input.subSequence(0, input.limit()).toString().replace("\uFFFD", ""));
+    }
+    // The bounds of the second byte are well formed.
+    String text = "\u0080\u0800\uD7FF\uE000\uFFFF\uD800\uDC00\uDBFF\uDFFF";
+    assertEquals(text, decode(new Utf8Input(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)))));
+  }
+
+  public void testMappedWindowsEndOnCharBoundaries() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append(TEXT);
+    }
+    String text = sb.toString();
+    File file = File.createTempFile("utf8", ".txt");
+    try {
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+      }
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        Utf8Input input = new Utf8Input(channel, 37);
+        StringBuilder decoded = new StringBuilder();
+        while (input.fill(input.limit())) {
+          decoded.append(decode(input));
+        }
+        assertTrue(input.isEof());
+        assertEquals(text, decoded.toString());
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}